@@ -25,9 +25,14 @@ public class AppConstants {
 
     public static final int DEFAULT_FLOW_RULE_PRIORITY = 10;
     public static final int INITIAL_SETUP_DELAY = 2; // Seconds.
+    public static final int RESYNC_DELAY = 5; // Seconds.
     public static final int CLEAN_UP_DELAY = 2000; // milliseconds
     public static final int DEFAULT_CLEAN_UP_RETRY_TIMES = 10;
 
     public static final int CPU_PORT_ID = 255;
     public static final int CPU_CLONE_SESSION_ID = 99;
+
+    // Must match SRV6_MAX_HOPS and the srv6_t_insert_N actions in main.p4.
+    public static final int SRV6_MIN_SEGMENTS = 2;
+    public static final int SRV6_MAX_SEGMENTS = 6;
 }
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.onlab.util.SharedScheduledExecutors;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.group.Group;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupEvent;
+import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupListener;
+import org.onosproject.net.group.GroupService;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Component tracing the convergence of the data plane after a topology event,
+ * i.e. the time from when the event is received by a component, to when all
+ * the flow rules and groups programmed in response are confirmed by the
+ * devices (ADDED state).
+ * <p>
+ * Components start a trace when receiving an event with {@link #begin}, and
+ * wrap the task processing the event with {@link #wrap}. Flow rules and groups
+ * submitted while the wrapped task is executing must be registered with
+ * {@link #trackFlowRules} and {@link #trackGroup}. Traces are completed when
+ * all tracked rules are confirmed, or after a timeout, and kept in a ring
+ * buffer of the most recent ones.
+ */
+@Component(immediate = true, service = ConvergenceTracer.class)
+public class ConvergenceTracer {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(ConvergenceTracer.class);
+
+    private static final int RING_BUFFER_SIZE = 1024;
+    private static final long TRACE_TIMEOUT_SECONDS = 30;
+    private static final long PURGE_PERIOD_SECONDS = 5;
+    private static final String CONVERGENCE_METRIC = "convergence.latency";
+
+    private final FlowRuleListener flowRuleListener = new InternalFlowRuleListener();
+    private final GroupListener groupListener = new InternalGroupListener();
+
+    // Trace of the task currently executing on this thread, if any.
+    private final ThreadLocal<Trace> currentTrace = new ThreadLocal<>();
+
+    // Traces waiting for confirmation of flow rules and groups. Guarded by
+    // this object.
+    private final SetMultimap<FlowId, Trace> pendingFlows = HashMultimap.create();
+    private final SetMultimap<Map.Entry<DeviceId, GroupKey>, Trace> pendingGroups =
+            HashMultimap.create();
+    private final Set<Trace> pendingTraces = Sets.newHashSet();
+
+    // Ring buffer of completed traces. Guarded by itself.
+    private final Trace[] completed = new Trace[RING_BUFFER_SIZE];
+    private long completedCount = 0;
+
+    private final AtomicLong traceIds = new AtomicLong();
+    private ScheduledFuture<?> purgeTask;
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FlowRuleService flowRuleService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private GroupService groupService;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate() {
+        flowRuleService.addListener(flowRuleListener);
+        groupService.addListener(groupListener);
+        purgeTask = SharedScheduledExecutors.scheduleAtFixedRate(
+                this::purgeExpiredTraces, PURGE_PERIOD_SECONDS,
+                PURGE_PERIOD_SECONDS, TimeUnit.SECONDS);
+
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        purgeTask.cancel(false);
+        flowRuleService.removeListener(flowRuleListener);
+        groupService.removeListener(groupListener);
+
+        log.info("Stopped");
+    }
+
+    /**
+     * Starts a new trace for the given event.
+     *
+     * @param event description of the event, e.g. type and subject
+     * @return new trace
+     */
+    public Trace begin(String event) {
+        return new Trace(traceIds.incrementAndGet(), checkNotNull(event));
+    }
+
+    /**
+     * Returns a task that executes the given one, associating to the given
+     * trace all flow rules and groups tracked during its execution.
+     *
+     * @param trace trace
+     * @param task  task processing the traced event
+     * @return wrapped task
+     */
+    public Runnable wrap(Trace trace, Runnable task) {
+        checkNotNull(trace);
+        checkNotNull(task);
+        return () -> {
+            trace.taskStartNanos = System.nanoTime();
+            currentTrace.set(trace);
+            try {
+                task.run();
+            } finally {
+                currentTrace.remove();
+                trace.taskEndNanos = System.nanoTime();
+                taskCompleted(trace);
+            }
+        };
+    }
+
+    /**
+     * Starts a new trace for the given event and wraps the given task with it.
+     * Equivalent to {@code wrap(begin(event), task)}.
+     *
+     * @param event description of the event, e.g. type and subject
+     * @param task  task processing the event
+     * @return wrapped task
+     */
+    public Runnable traced(String event, Runnable task) {
+        return wrap(begin(event), task);
+    }
+
+    /**
+     * Associates the given flow rules to the trace of the task currently
+     * executing on this thread, if any.
+     *
+     * @param flowRules flow rules submitted to the flow rule service
+     */
+    public void trackFlowRules(Collection<FlowRule> flowRules) {
+        final Trace trace = currentTrace.get();
+        if (trace == null) {
+            return;
+        }
+        synchronized (this) {
+            if (trace.firstFlowNanos == 0) {
+                trace.firstFlowNanos = System.nanoTime();
+            }
+            flowRules.forEach(r -> {
+                if (trace.flowIds.add(r.id())) {
+                    pendingFlows.put(r.id(), trace);
+                }
+            });
+        }
+    }
+
+    /**
+     * Same as {@link #trackFlowRules(Collection)}, for the given flow rules.
+     *
+     * @param flowRules flow rules submitted to the flow rule service
+     */
+    public void trackFlowRules(FlowRule... flowRules) {
+        trackFlowRules(Arrays.asList(flowRules));
+    }
+
+    /**
+     * Associates the given group to the trace of the task currently executing
+     * on this thread, if any.
+     *
+     * @param group group submitted to the group service
+     */
+    public void trackGroup(GroupDescription group) {
+        final Trace trace = currentTrace.get();
+        if (trace == null) {
+            return;
+        }
+        final Map.Entry<DeviceId, GroupKey> key = groupRef(group);
+        synchronized (this) {
+            if (trace.firstGroupNanos == 0) {
+                trace.firstGroupNanos = System.nanoTime();
+            }
+            if (trace.groupRefs.add(key)) {
+                pendingGroups.put(key, trace);
+            }
+        }
+    }
+
+    /**
+     * Returns the completed traces with the highest convergence time among
+     * the most recent ones, slowest first.
+     *
+     * @param count maximum number of traces
+     * @return list of traces
+     */
+    public List<Trace> slowestTraces(int count) {
+        final List<Trace> traces = Lists.newArrayList();
+        synchronized (completed) {
+            for (Trace t : completed) {
+                if (t != null) {
+                    traces.add(t);
+                }
+            }
+        }
+        traces.sort(Comparator.comparingLong(Trace::totalMicros).reversed());
+        return ImmutableList.copyOf(traces.subList(0, Math.min(count, traces.size())));
+    }
+
+    /**
+     * Returns the number of traces waiting for confirmation from devices.
+     *
+     * @return number of pending traces
+     */
+    public synchronized int pendingCount() {
+        return pendingTraces.size();
+    }
+
+    private void taskCompleted(Trace trace) {
+        synchronized (this) {
+            if (trace.isConfirmed()) {
+                // Nothing was programmed or everything was already confirmed.
+                trace.confirmedNanos = trace.taskEndNanos;
+            } else {
+                pendingTraces.add(trace);
+                return;
+            }
+        }
+        record(trace);
+    }
+
+    private void flowConfirmed(FlowId flowId) {
+        final List<Trace> done = Lists.newArrayList();
+        final long now = System.nanoTime();
+        synchronized (this) {
+            for (Trace trace : pendingFlows.removeAll(flowId)) {
+                trace.flowIds.remove(flowId);
+                trace.lastFlowNanos = now;
+                checkDone(trace, now, done);
+            }
+        }
+        done.forEach(this::record);
+    }
+
+    private void groupConfirmed(Map.Entry<DeviceId, GroupKey> key) {
+        final List<Trace> done = Lists.newArrayList();
+        final long now = System.nanoTime();
+        synchronized (this) {
+            for (Trace trace : pendingGroups.removeAll(key)) {
+                trace.groupRefs.remove(key);
+                trace.lastGroupNanos = now;
+                checkDone(trace, now, done);
+            }
+        }
+        done.forEach(this::record);
+    }
+
+    private void checkDone(Trace trace, long now, List<Trace> done) {
+        // Traces of tasks still executing are completed by taskCompleted().
+        if (trace.isConfirmed() && pendingTraces.remove(trace)) {
+            trace.confirmedNanos = now;
+            done.add(trace);
+        }
+    }
+
+    private void purgeExpiredTraces() {
+        final long deadline = System.nanoTime() -
+                TimeUnit.SECONDS.toNanos(TRACE_TIMEOUT_SECONDS);
+        final List<Trace> expired = Lists.newArrayList();
+        synchronized (this) {
+            pendingTraces.removeIf(trace -> {
+                if (trace.taskEndNanos > deadline) {
+                    return false;
+                }
+                trace.flowIds.forEach(id -> pendingFlows.remove(id, trace));
+                trace.groupRefs.forEach(ref -> pendingGroups.remove(ref, trace));
+                trace.timedOut = true;
+                trace.confirmedNanos = System.nanoTime();
+                expired.add(trace);
+                return true;
+            });
+        }
+        if (!expired.isEmpty()) {
+            log.warn("{} traces timed out waiting for flow rules or groups",
+                     expired.size());
+        }
+        expired.forEach(this::record);
+    }
+
+    private void record(Trace trace) {
+        if (!trace.timedOut) {
+            AppMetrics.latency(CONVERGENCE_METRIC).record(
+                    trace.totalMicros(), TimeUnit.MICROSECONDS);
+        }
+        synchronized (completed) {
+            completed[(int) (completedCount++ % RING_BUFFER_SIZE)] = trace;
+        }
+    }
+
+    private static Map.Entry<DeviceId, GroupKey> groupRef(GroupDescription group) {
+        return Maps.immutableEntry(group.deviceId(), group.appCookie());
+    }
+
+    /**
+     * Convergence trace of a single event.
+     */
+    public static final class Trace {
+
+        private final long id;
+        private final String event;
+        private final long startNanos = System.nanoTime();
+
+        // Guarded by the tracer.
+        private final Set<FlowId> flowIds = Sets.newHashSet();
+        private final Set<Map.Entry<DeviceId, GroupKey>> groupRefs = Sets.newHashSet();
+
+        private volatile long taskStartNanos;
+        private volatile long taskEndNanos;
+        private volatile long firstFlowNanos;
+        private volatile long lastFlowNanos;
+        private volatile long firstGroupNanos;
+        private volatile long lastGroupNanos;
+        private volatile long confirmedNanos;
+        private volatile boolean timedOut;
+
+        private Trace(long id, String event) {
+            this.id = id;
+            this.event = event;
+        }
+
+        private boolean isConfirmed() {
+            return flowIds.isEmpty() && groupRefs.isEmpty();
+        }
+
+        /**
+         * Returns the trace ID.
+         *
+         * @return trace ID
+         */
+        public long id() {
+            return id;
+        }
+
+        /**
+         * Returns the description of the traced event.
+         *
+         * @return event description
+         */
+        public String event() {
+            return event;
+        }
+
+        /**
+         * Returns true if the trace was completed without receiving
+         * confirmation of all flow rules and groups.
+         *
+         * @return true if timed out
+         */
+        public boolean timedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Returns the time from the event to the confirmation of all flow
+         * rules and groups.
+         *
+         * @return convergence time in microseconds
+         */
+        public long totalMicros() {
+            return micros(startNanos, confirmedNanos);
+        }
+
+        /**
+         * Returns the time from the event to the start of the task processing
+         * it.
+         *
+         * @return queue wait in microseconds
+         */
+        public long queueWaitMicros() {
+            return micros(startNanos, taskStartNanos);
+        }
+
+        /**
+         * Returns the execution time of the task processing the event,
+         * including the time spent submitting flow rules and groups.
+         *
+         * @return compute time in microseconds
+         */
+        public long computeMicros() {
+            return micros(taskStartNanos, taskEndNanos);
+        }
+
+        /**
+         * Returns the time from the first group submitted to the last group
+         * confirmed, 0 if no group was submitted.
+         *
+         * @return group wait in microseconds
+         */
+        public long groupWaitMicros() {
+            return micros(firstGroupNanos, lastGroupNanos);
+        }
+
+        /**
+         * Returns the time from the first flow rule submitted to the last flow
+         * rule confirmed, 0 if no flow rule was submitted.
+         *
+         * @return flow install time in microseconds
+         */
+        public long flowInstallMicros() {
+            return micros(firstFlowNanos, lastFlowNanos);
+        }
+
+        private static long micros(long fromNanos, long toNanos) {
+            if (fromNanos == 0 || toNanos < fromNanos) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMicros(toNanos - fromNanos);
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // EVENT LISTENERS
+    //
+    // Events are processed only if isRelevant() returns true.
+    //--------------------------------------------------------------------------
+
+    /**
+     * Listener of flow rule events which confirms tracked flow rules.
+     */
+    class InternalFlowRuleListener implements FlowRuleListener {
+
+        @Override
+        public boolean isRelevant(FlowRuleEvent event) {
+            switch (event.type()) {
+                case RULE_ADDED:
+                    return true;
+                case RULE_UPDATED:
+                    // Rules already installed are updated, not added.
+                    return event.subject() instanceof FlowEntry &&
+                            ((FlowEntry) event.subject()).state() ==
+                                    FlowEntry.FlowEntryState.ADDED;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void event(FlowRuleEvent event) {
+            flowConfirmed(event.subject().id());
+        }
+    }
+
+    /**
+     * Listener of group events which confirms tracked groups.
+     */
+    class InternalGroupListener implements GroupListener {
+
+        @Override
+        public boolean isRelevant(GroupEvent event) {
+            switch (event.type()) {
+                case GROUP_ADDED:
+                case GROUP_UPDATED:
+                    return event.subject().state() == Group.GroupState.ADDED;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void event(GroupEvent event) {
+            groupConfirmed(groupRef(event.subject()));
+        }
+    }
+}
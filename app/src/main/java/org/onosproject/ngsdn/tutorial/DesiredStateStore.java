@@ -0,0 +1,452 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.onlab.util.Tools;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.group.DefaultGroupBucket;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.DefaultGroupKey;
+import org.onosproject.net.group.GroupBuckets;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupService;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DesiredEntryKey;
+import org.onosproject.ngsdn.tutorial.common.DeviceDesiredState;
+import org.onosproject.ngsdn.tutorial.common.Utils;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.CommitStatus;
+import org.onosproject.store.service.ConsistentMap;
+import org.onosproject.store.service.ConsistentMultimap;
+import org.onosproject.store.service.Serializer;
+import org.onosproject.store.service.StorageException;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.TransactionContext;
+import org.onosproject.store.service.TransactionalMap;
+import org.onosproject.store.service.Versioned;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cluster-wide store of the desired state of fabric devices, i.e. the groups
+ * and flow rules computed for them by the app components.
+ * <p>
+ * Components record here the groups and flow rules they write, such that when
+ * an instance takes over a device, it can write the stored state straight
+ * away, before components recompute (and reconcile) it. Since entries are
+ * updated only by the master of the device, but read by any instance (e.g. to
+ * answer CLI queries without reaching the device), the state is kept in
+ * partitioned consistent maps.
+ * <p>
+ * Groups and flow rules are stored as one entry each, keyed by device ID and
+ * group ID or flow ID, such that recording one of them doesn't rewrite the
+ * rest of the device state. The entries recorded or forgotten by a single
+ * call are written with one transaction. Group and key classes are
+ * registered with the serializer, on top of the ONOS API namespace, such that
+ * entries are encoded with class IDs rather than class names.
+ * <p>
+ * Transactions are prepared and committed in call order by a dedicated
+ * thread, one at a time, such that callers (e.g. the configuration task
+ * worker) are not blocked by the commit latency. Failed writes are logged.
+ * <p>
+ * A multimap per entry type indexes the keys of each device, such that the
+ * state of a device is read without scanning the entries of other devices.
+ * The index is updated before recording and after forgetting entries, i.e.
+ * it might list keys of entries no longer stored, which are skipped when
+ * reading.
+ */
+@Component(immediate = true, service = DesiredStateStore.class)
+public class DesiredStateStore {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(DesiredStateStore.class);
+
+    private static final String GROUPS_MAP_NAME = "ngsdn-tutorial-desired-groups";
+    private static final String FLOW_RULES_MAP_NAME = "ngsdn-tutorial-desired-flow-rules";
+    private static final String GROUPS_INDEX_NAME = "ngsdn-tutorial-desired-groups-index";
+    private static final String FLOW_RULES_INDEX_NAME = "ngsdn-tutorial-desired-flow-rules-index";
+    private static final String RESTORE_METRIC = "desired-state.restore.latency";
+    private static final long GROUP_INSERT_DELAY_MILLIS = 200;
+
+    private static final Serializer SERIALIZER = Serializer.using(
+            KryoNamespaces.API,
+            DesiredEntryKey.class,
+            DefaultGroupDescription.class,
+            DefaultGroupKey.class,
+            GroupBuckets.class,
+            DefaultGroupBucket.class,
+            GroupDescription.Type.class);
+
+    private ConsistentMap<DesiredEntryKey, GroupDescription> groups;
+    private ConsistentMap<DesiredEntryKey, FlowRule> flowRules;
+    private ConsistentMultimap<DeviceId, DesiredEntryKey> groupsIndex;
+    private ConsistentMultimap<DeviceId, DesiredEntryKey> flowRulesIndex;
+
+    // Writes of the stored state, executed in call order, each one starting
+    // once the previous one is committed.
+    private ExecutorService writer;
+    private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private StorageService storageService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FlowRuleService flowRuleService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private GroupService groupService;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate() {
+        groups = storageService.<DesiredEntryKey, GroupDescription>consistentMapBuilder()
+                .withName(GROUPS_MAP_NAME)
+                .withSerializer(SERIALIZER)
+                .build();
+        flowRules = storageService.<DesiredEntryKey, FlowRule>consistentMapBuilder()
+                .withName(FLOW_RULES_MAP_NAME)
+                .withSerializer(SERIALIZER)
+                .build();
+        groupsIndex = storageService.<DeviceId, DesiredEntryKey>consistentMultimapBuilder()
+                .withName(GROUPS_INDEX_NAME)
+                .withSerializer(SERIALIZER)
+                .build();
+        flowRulesIndex = storageService.<DeviceId, DesiredEntryKey>consistentMultimapBuilder()
+                .withName(FLOW_RULES_INDEX_NAME)
+                .withSerializer(SERIALIZER)
+                .build();
+        writer = Executors.newSingleThreadExecutor(Tools.groupedThreads(
+                "onos/ngsdn-tutorial", "desired-state-%d", log));
+
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        writer.shutdown();
+        log.info("Stopped");
+    }
+
+    /**
+     * Records the given groups and flow rules as part of the desired state of
+     * their devices, replacing those with the same group ID or flow ID.
+     * Should be called by the master of the devices, after writing them.
+     * Callers setting up a device should record all its groups and flow rules
+     * with a single call. Returns without waiting for them to be stored.
+     *
+     * @param newGroups    groups
+     * @param newFlowRules flow rules
+     */
+    public void record(Collection<GroupDescription> newGroups,
+                       Collection<FlowRule> newFlowRules) {
+        if (newGroups.isEmpty() && newFlowRules.isEmpty()) {
+            return;
+        }
+        final Map<DesiredEntryKey, GroupDescription> groupEntries = Maps.newHashMap();
+        newGroups.forEach(g -> groupEntries.put(DesiredEntryKey.of(g), g));
+        final Map<DesiredEntryKey, FlowRule> flowRuleEntries = Maps.newHashMap();
+        newFlowRules.forEach(r -> flowRuleEntries.put(DesiredEntryKey.of(r), r));
+        write("record", () -> {
+            updateIndex(groupsIndex, groupEntries.keySet(), ConsistentMultimap::putAll);
+            updateIndex(flowRulesIndex, flowRuleEntries.keySet(), ConsistentMultimap::putAll);
+            return commit("record", (txGroups, txFlowRules) -> {
+                groupEntries.forEach(txGroups::put);
+                flowRuleEntries.forEach(txFlowRules::put);
+            });
+        });
+    }
+
+    /**
+     * Records the given flow rules as part of the desired state of their
+     * devices.
+     *
+     * @param newFlowRules flow rules
+     */
+    public void recordFlowRules(Collection<FlowRule> newFlowRules) {
+        record(Collections.emptyList(), newFlowRules);
+    }
+
+    /**
+     * Removes the given flow rules from the desired state of their devices.
+     * Should be called by the master of the devices, after removing them.
+     *
+     * @param oldFlowRules flow rules
+     */
+    public void forget(Collection<FlowRule> oldFlowRules) {
+        if (oldFlowRules.isEmpty()) {
+            return;
+        }
+        final Set<DesiredEntryKey> keys = oldFlowRules.stream()
+                .map(DesiredEntryKey::of)
+                .collect(Collectors.toSet());
+        write("forget", () -> commit(
+                "forget", (txGroups, txFlowRules) -> keys.forEach(txFlowRules::remove))
+                .thenApplyAsync(committed -> {
+                    if (committed) {
+                        updateIndex(flowRulesIndex, keys, ConsistentMultimap::removeAll);
+                    }
+                    return committed;
+                }, writer));
+    }
+
+    /**
+     * Removes the groups with the given IDs from the desired state of the
+     * given device. Should be called by the master of the device, when the
+     * groups are no longer needed.
+     *
+     * @param deviceId device ID
+     * @param groupIds group IDs
+     */
+    public void forgetGroups(DeviceId deviceId, Collection<Integer> groupIds) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        final Set<DesiredEntryKey> keys = groupIds.stream()
+                .map(id -> DesiredEntryKey.ofGroup(deviceId, id))
+                .collect(Collectors.toSet());
+        write("forget", () -> commit(
+                "forget", (txGroups, txFlowRules) -> keys.forEach(txGroups::remove))
+                .thenApplyAsync(committed -> {
+                    if (committed) {
+                        updateIndex(groupsIndex, keys, ConsistentMultimap::removeAll);
+                    }
+                    return committed;
+                }, writer));
+    }
+
+    /**
+     * Returns the desired state of the given device. Can be called by any
+     * instance of the cluster.
+     *
+     * @param deviceId device ID
+     * @return desired state, empty if nothing was recorded for the device
+     */
+    public DeviceDesiredState get(DeviceId deviceId) {
+        return DeviceDesiredState.of(deviceId, entries(groups, groupsIndex, deviceId),
+                                     entries(flowRules, flowRulesIndex, deviceId));
+    }
+
+    /**
+     * Returns the IDs of devices with a recorded desired state.
+     *
+     * @return immutable set of device IDs
+     */
+    public Set<DeviceId> deviceIds() {
+        return ImmutableSet.<DeviceId>builder()
+                .addAll(groupsIndex.keySet())
+                .addAll(flowRulesIndex.keySet())
+                .build();
+    }
+
+    /**
+     * Writes the stored desired state of the given device: all groups first,
+     * then, once groups are inserted, all flow rules with a single batch of
+     * flow rule operations. Should be called by the new master of the device.
+     *
+     * @param deviceId device ID
+     * @return false if there was no state to write, true otherwise
+     */
+    public boolean restore(DeviceId deviceId) {
+        final DeviceDesiredState state = get(deviceId);
+        if (state.groups().isEmpty() && state.flowRules().isEmpty()) {
+            return false;
+        }
+        final long startNanos = System.nanoTime();
+        // Groups might still be in the store, with buckets from before the
+        // mastership change.
+        final long writtenGroups = state.groups().stream()
+                .filter(g -> Utils.writeGroup(groupService, g))
+                .count();
+        if (writtenGroups > 0) {
+            try {
+                // Wait for groups to be inserted.
+                Thread.sleep(GROUP_INSERT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                log.error("Interrupted!", e);
+                Thread.currentThread().interrupt();
+                return true;
+            }
+        }
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        state.flowRules().forEach(ops::add);
+        flowRuleService.apply(ops.build());
+        AppMetrics.latency(RESTORE_METRIC).recordSince(startNanos);
+        log.info("Restored desired state of {}: {} groups, {} flow rules",
+                 deviceId, state.groups().size(), state.flowRules().size());
+        return true;
+    }
+
+    /**
+     * Removes the desired state of all devices, e.g. because flows and groups
+     * of the app are being removed from them. Returns once the state is
+     * removed, after any pending write.
+     */
+    public void clearAll() {
+        write("clear", () -> {
+            groups.clear();
+            flowRules.clear();
+            groupsIndex.clear();
+            flowRulesIndex.clear();
+            return CompletableFuture.completedFuture(true);
+        }).join();
+    }
+
+    /**
+     * Returns the entries of the given map for the given device, as listed
+     * by the given index, sorted by group ID or flow ID.
+     *
+     * @param map      group or flow rule map
+     * @param index    index of the map
+     * @param deviceId device ID
+     * @param <T>      type of entries
+     * @return list of entries
+     */
+    private static <T> List<T> entries(ConsistentMap<DesiredEntryKey, T> map,
+                                       ConsistentMultimap<DeviceId, DesiredEntryKey> index,
+                                       DeviceId deviceId) {
+        final Versioned<Collection<? extends DesiredEntryKey>> keys = index.get(deviceId);
+        if (keys == null || keys.value().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return map.getAllPresent(ImmutableSet.copyOf(keys.value())).entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getKey().id()))
+                .map(e -> e.getValue().value())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Adds or removes the given keys to or from the given index, grouped by
+     * device.
+     *
+     * @param index     group or flow rule index
+     * @param keys      keys of entries
+     * @param operation putAll or removeAll
+     */
+    private void updateIndex(ConsistentMultimap<DeviceId, DesiredEntryKey> index,
+                             Collection<DesiredEntryKey> keys,
+                             IndexOperation operation) {
+        keys.stream()
+                .collect(Collectors.groupingBy(DesiredEntryKey::deviceId))
+                .forEach((deviceId, deviceKeys) -> {
+                    try {
+                        operation.apply(index, deviceId, deviceKeys);
+                    } catch (StorageException e) {
+                        log.warn("Unable to update desired state index of {}: {}",
+                                 deviceId, e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Queues the given write after the previous ones. Failures are logged.
+     *
+     * @param operation operation name, for logging
+     * @param write     write, executed by the writer thread, returning a
+     *                  future completed when the write is committed
+     * @return future completed when the write is done
+     */
+    private synchronized CompletableFuture<Void> write(
+            String operation, Supplier<CompletableFuture<Boolean>> write) {
+        lastWrite = lastWrite
+                .thenComposeAsync(v -> write.get(), writer)
+                .handle((committed, e) -> {
+                    if (e != null) {
+                        log.warn("Unable to {} desired state: {}", operation,
+                                 Throwables.getRootCause(e).getMessage());
+                    }
+                    return null;
+                });
+        return lastWrite;
+    }
+
+    /**
+     * Applies the given updates to the group and flow rule maps with a single
+     * transaction, committed asynchronously.
+     *
+     * @param operation operation name, for logging
+     * @param updates   updates of the group and flow rule maps
+     * @return future completed with true if the transaction was committed
+     */
+    private CompletableFuture<Boolean> commit(
+            String operation,
+            BiConsumer<TransactionalMap<DesiredEntryKey, GroupDescription>,
+                    TransactionalMap<DesiredEntryKey, FlowRule>> updates) {
+        final TransactionContext tx = storageService.transactionContextBuilder().build();
+        tx.begin();
+        try {
+            updates.accept(tx.getTransactionalMap(GROUPS_MAP_NAME, SERIALIZER),
+                           tx.getTransactionalMap(FLOW_RULES_MAP_NAME, SERIALIZER));
+        } catch (RuntimeException e) {
+            tx.abort();
+            return Tools.exceptionalFuture(e);
+        }
+        return tx.commit().thenApply(status -> {
+            if (status != CommitStatus.SUCCESS) {
+                log.warn("Unable to {} desired state: transaction {}",
+                         operation, status);
+                return false;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Operation of a desired state index, i.e. putAll or removeAll.
+     */
+    @FunctionalInterface
+    private interface IndexOperation {
+        boolean apply(ConsistentMultimap<DeviceId, DesiredEntryKey> index,
+                      DeviceId deviceId, Collection<DesiredEntryKey> keys);
+    }
+}
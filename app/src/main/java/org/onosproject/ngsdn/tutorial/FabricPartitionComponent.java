@@ -0,0 +1,348 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.onlab.util.SharedScheduledExecutors;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cluster.ClusterService;
+import org.onosproject.cluster.NodeId;
+import org.onosproject.mastership.MastershipEvent;
+import org.onosproject.mastership.MastershipListener;
+import org.onosproject.mastership.MastershipService;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceHandoffListener;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TAKEOVER_PARALLELISM;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TAKEOVER_PARALLELISM_DEFAULT;
+
+/**
+ * Component partitioning the work of computing and programming the desired
+ * state of fabric devices among the ONOS instances of the cluster.
+ * <p>
+ * Each instance is responsible only for the devices it masters. When the
+ * mastership of a device changes, only listeners of the instances gaining or
+ * losing it are notified, and only for that device, such that the new master
+ * can take over without recomputing the state of all its devices.
+ * <p>
+ * Devices acquired within a short window are taken over as a batch. The
+ * desired state recorded by the previous master in the
+ * {@link DesiredStateStore} is restored in parallel, bypassing the
+ * configuration task queue, such that the state of the devices of a failed
+ * instance is written without waiting for unrelated events or for tasks
+ * queued before the failure. Listeners are then notified by a
+ * {@link Priority#REPAIR} device task, such that they recompute the state of
+ * the device ahead of other queued tasks, but never concurrently with them.
+ */
+@Component(
+        immediate = true,
+        service = FabricPartitionComponent.class,
+        property = {
+                TAKEOVER_PARALLELISM + ":Integer=" + TAKEOVER_PARALLELISM_DEFAULT,
+        }
+)
+public class FabricPartitionComponent {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(FabricPartitionComponent.class);
+
+    private static final long TAKEOVER_BATCH_WINDOW_MILLIS = 100;
+    private static final String TAKEOVER_METRIC = "partition.takeover.latency";
+    private static final String TAKEOVER_TASK = "partition-takeover";
+
+    private final MastershipListener mastershipListener = new InternalMastershipListener();
+    private final Set<DeviceHandoffListener> listeners = Sets.newCopyOnWriteArraySet();
+
+    // Devices mastered by this instance, as last notified to listeners.
+    private final Set<DeviceId> ownedDevices = Sets.newConcurrentHashSet();
+
+    // Devices acquired but not yet taken over, and whether a take-over of
+    // the pending ones is already scheduled.
+    private final Set<DeviceId> pendingTakeovers = Sets.newConcurrentHashSet();
+    private final AtomicBoolean takeoverScheduled = new AtomicBoolean();
+
+    /** Maximum number of devices taken over in parallel. */
+    private int takeoverParallelism = TAKEOVER_PARALLELISM_DEFAULT;
+
+    private volatile ExecutorService takeoverExecutor;
+
+    private NodeId localNodeId;
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ClusterService clusterService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private MastershipService mastershipService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DeviceService deviceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ComponentConfigService compCfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private MainComponent mainComponent;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate(ComponentContext context) {
+        localNodeId = clusterService.getLocalNode().id();
+
+        compCfgService.registerProperties(getClass());
+        takeoverExecutor = newTakeoverExecutor(takeoverParallelism);
+        modified(context);
+
+        // Devices mastered at activation are set up by each component with
+        // its initial set up, only later changes are handed off.
+        mastershipService.addListener(mastershipListener);
+        ownedDevices.addAll(mastershipService.getDevicesOf(localNodeId));
+
+        log.info("Started");
+    }
+
+    @Modified
+    protected void modified(ComponentContext context) {
+        if (context == null) {
+            return;
+        }
+        final Dictionary<?, ?> properties = context.getProperties();
+        final Integer parallelism = Tools.getIntegerProperty(
+                properties, TAKEOVER_PARALLELISM);
+        if (parallelism != null && parallelism > 0
+                && parallelism != takeoverParallelism) {
+            takeoverParallelism = parallelism;
+            // Take-overs already submitted complete on the old executor.
+            final ExecutorService oldExecutor = takeoverExecutor;
+            takeoverExecutor = newTakeoverExecutor(takeoverParallelism);
+            oldExecutor.shutdown();
+            log.info("Configured. {} is {}", TAKEOVER_PARALLELISM,
+                     takeoverParallelism);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        compCfgService.unregisterProperties(getClass(), false);
+        mastershipService.removeListener(mastershipListener);
+        takeoverExecutor.shutdownNow();
+        listeners.clear();
+        ownedDevices.clear();
+        pendingTakeovers.clear();
+
+        log.info("Stopped");
+    }
+
+    /**
+     * Returns true if the desired state of the given device must be computed
+     * by this instance.
+     *
+     * @param deviceId device ID
+     * @return true if the device is mastered by this instance
+     */
+    public boolean isLocal(DeviceId deviceId) {
+        return mastershipService.isLocalMaster(deviceId);
+    }
+
+    /**
+     * Returns the devices for which this instance must compute the desired
+     * state.
+     *
+     * @return immutable set of device IDs
+     */
+    public Set<DeviceId> localDevices() {
+        return ImmutableSet.copyOf(mastershipService.getDevicesOf(localNodeId));
+    }
+
+    /**
+     * Adds a listener of device handoffs.
+     *
+     * @param listener listener
+     */
+    public void addListener(DeviceHandoffListener listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * Removes a listener of device handoffs.
+     *
+     * @param listener listener
+     */
+    public void removeListener(DeviceHandoffListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void updateOwnership(DeviceId deviceId) {
+        if (isLocal(deviceId)) {
+            if (ownedDevices.add(deviceId)) {
+                scheduleTakeover(deviceId);
+            }
+        } else if (ownedDevices.remove(deviceId)) {
+            log.info("Handing off {}", deviceId);
+            pendingTakeovers.remove(deviceId);
+            listeners.forEach(l -> l.released(deviceId));
+        }
+    }
+
+    private void scheduleTakeover(DeviceId deviceId) {
+        pendingTakeovers.add(deviceId);
+        if (takeoverScheduled.compareAndSet(false, true)) {
+            // Mastership of the devices of a failed instance changes in a
+            // burst, wait for it to take them over as a batch.
+            SharedScheduledExecutors.newTimeout(
+                    this::takeOverPending, TAKEOVER_BATCH_WINDOW_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void takeOverPending() {
+        takeoverScheduled.set(false);
+        final List<DeviceId> batch = Lists.newArrayList();
+        for (DeviceId deviceId : ImmutableSet.copyOf(pendingTakeovers)) {
+            if (pendingTakeovers.remove(deviceId)) {
+                batch.add(deviceId);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.info("Taking over {} devices: {}", batch.size(), batch);
+        final ExecutorService executor = takeoverExecutor;
+        batch.forEach(deviceId -> executor.execute(() -> takeOver(deviceId)));
+    }
+
+    private void takeOver(DeviceId deviceId) {
+        if (!isLocal(deviceId) || !deviceService.isAvailable(deviceId)) {
+            // Handed off again in the meantime, or not connected. In the
+            // latter case, it will be set up on the next device event.
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        // Write the state computed by the previous master first, then let
+        // listeners recompute it, which also reconciles changes the previous
+        // master didn't get to write. Listeners update the same state as the
+        // tasks of the configuration queue, notify them from the queue.
+        try {
+            desiredStateStore.restore(deviceId);
+        } catch (RuntimeException e) {
+            log.warn("Unable to restore desired state of {}: {}", deviceId,
+                     e.getMessage());
+        }
+        mainComponent.submitDeviceTask(deviceId, TAKEOVER_TASK, Priority.REPAIR,
+                                       () -> notifyAcquired(deviceId, startNanos));
+    }
+
+    private void notifyAcquired(DeviceId deviceId, long startNanos) {
+        if (!isLocal(deviceId)) {
+            // Handed off while waiting in queue.
+            return;
+        }
+        for (DeviceHandoffListener listener : listeners) {
+            try {
+                listener.acquired(deviceId);
+            } catch (RuntimeException e) {
+                log.warn("Unable to take over {} in {}: {}", deviceId,
+                         listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+        AppMetrics.latency(TAKEOVER_METRIC).recordSince(startNanos);
+        log.info("Took over {} in {} ms", deviceId,
+                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private ExecutorService newTakeoverExecutor(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, Tools.groupedThreads(
+                "onos/ngsdn-tutorial", "takeover-%d", log));
+    }
+
+    //--------------------------------------------------------------------------
+    // EVENT LISTENERS
+    //
+    // Events are processed only if isRelevant() returns true.
+    //--------------------------------------------------------------------------
+
+    /**
+     * Listener of mastership events which notifies handoffs of the affected
+     * device.
+     */
+    class InternalMastershipListener implements MastershipListener {
+
+        @Override
+        public boolean isRelevant(MastershipEvent event) {
+            switch (event.type()) {
+                case MASTER_CHANGED:
+                case SUSPENDED:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void event(MastershipEvent event) {
+            if (event.type() == MastershipEvent.Type.SUSPENDED) {
+                // This instance lost connectivity with the cluster, it can no
+                // longer act as master of any device.
+                ImmutableSet.copyOf(ownedDevices).forEach(deviceId -> {
+                    ownedDevices.remove(deviceId);
+                    pendingTakeovers.remove(deviceId);
+                    listeners.forEach(l -> l.released(deviceId));
+                });
+                return;
+            }
+            updateOwnership(event.subject());
+        }
+    }
+}
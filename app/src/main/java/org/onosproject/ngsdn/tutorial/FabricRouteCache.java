@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.common.FabricRouteInfo;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.EventuallyConsistentMap;
+import org.onosproject.store.service.EventuallyConsistentMapEvent;
+import org.onosproject.store.service.EventuallyConsistentMapListener;
+import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.WallClockTimestamp;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cluster-wide cache of the route information of fabric devices.
+ * <p>
+ * The route information of a device (MAC address, subnets and SIDs) is
+ * computed and published only by the ONOS instance mastering it, while other
+ * instances read it from the local replica of the cache when computing routes
+ * towards that device, instead of reading the configuration of devices they
+ * don't master. Each entry has a single writer, hence an eventually
+ * consistent map with wall clock timestamps is enough.
+ */
+@Component(immediate = true, service = FabricRouteCache.class)
+public class FabricRouteCache {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(FabricRouteCache.class);
+
+    private static final String MAP_NAME = "ngsdn-tutorial-fabric-routes";
+
+    private final EventuallyConsistentMapListener<DeviceId, FabricRouteInfo> mapListener =
+            new InternalMapListener();
+    private final Set<Consumer<DeviceId>> listeners = Sets.newCopyOnWriteArraySet();
+
+    private EventuallyConsistentMap<DeviceId, FabricRouteInfo> routes;
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private StorageService storageService;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate() {
+        final KryoNamespace.Builder serializer = KryoNamespace.newBuilder()
+                .register(KryoNamespaces.API)
+                .register(FabricRouteInfo.class);
+        routes = storageService.<DeviceId, FabricRouteInfo>eventuallyConsistentMapBuilder()
+                .withName(MAP_NAME)
+                .withSerializer(serializer)
+                .withTimestampProvider((k, v) -> new WallClockTimestamp())
+                .build();
+        routes.addListener(mapListener);
+
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        routes.removeListener(mapListener);
+        routes.destroy();
+        listeners.clear();
+
+        log.info("Stopped");
+    }
+
+    /**
+     * Publishes the route information of a device. Should be called only by
+     * the master of the device. Information equal to the cached one is not
+     * published again, such that listeners are notified only of changes.
+     *
+     * @param info route information
+     * @return true if the cache was updated, false otherwise
+     */
+    public boolean publish(FabricRouteInfo info) {
+        if (info.equals(routes.get(info.deviceId()))) {
+            return false;
+        }
+        routes.put(info.deviceId(), info);
+        return true;
+    }
+
+    /**
+     * Returns the route information of the given device.
+     *
+     * @param deviceId device ID
+     * @return route information, or null if not yet published
+     */
+    public FabricRouteInfo get(DeviceId deviceId) {
+        return routes.get(deviceId);
+    }
+
+    /**
+     * Returns the route information of all devices.
+     *
+     * @return immutable collection of route information
+     */
+    public Collection<FabricRouteInfo> all() {
+        return ImmutableList.copyOf(routes.values());
+    }
+
+    /**
+     * Adds a listener notified with the ID of devices whose route information
+     * changed, on any instance of the cluster.
+     *
+     * @param listener listener
+     */
+    public void addListener(Consumer<DeviceId> listener) {
+        listeners.add(checkNotNull(listener));
+    }
+
+    /**
+     * Removes a listener of route information changes.
+     *
+     * @param listener listener
+     */
+    public void removeListener(Consumer<DeviceId> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Listener of updates of the distributed map, local or remote.
+     */
+    class InternalMapListener implements EventuallyConsistentMapListener<DeviceId, FabricRouteInfo> {
+
+        @Override
+        public void event(EventuallyConsistentMapEvent<DeviceId, FabricRouteInfo> event) {
+            listeners.forEach(l -> l.accept(event.key()));
+        }
+    }
+}
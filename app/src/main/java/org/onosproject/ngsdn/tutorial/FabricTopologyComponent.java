@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial;
+
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.link.LinkListener;
+import org.onosproject.net.link.LinkService;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.TopologyGraph;
+import org.onosproject.ngsdn.tutorial.common.TopologySnapshot;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Component that maintains a compact in-memory snapshot of the fabric
+ * topology, updated incrementally from device and link events.
+ * <p>
+ * Other components should depend on this one (with a mandatory reference) to
+ * make sure its listeners are registered first, and hence that the snapshot
+ * is updated before their own listeners are notified of the same event.
+ */
+@Component(immediate = true, service = FabricTopologyComponent.class)
+public class FabricTopologyComponent {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(FabricTopologyComponent.class);
+
+    private static final String DEVICE_EVENT_METRIC = "topology.device-event.latency";
+    private static final String LINK_EVENT_METRIC = "topology.link-event.latency";
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final LinkListener linkListener = new InternalLinkListener();
+
+    private TopologyGraph graph;
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DeviceService deviceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private LinkService linkService;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate() {
+        graph = new TopologyGraph();
+
+        // Register listeners first, then seed the graph with the current
+        // state. Updates are idempotent, so processing the same device or
+        // link twice is harmless.
+        deviceService.addListener(deviceListener);
+        linkService.addListener(linkListener);
+        deviceService.getDevices().forEach(d -> graph.addDevice(d.id()));
+        linkService.getLinks().forEach(graph::addLink);
+
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        deviceService.removeListener(deviceListener);
+        linkService.removeListener(linkListener);
+
+        log.info("Stopped");
+    }
+
+    /**
+     * Returns the latest topology snapshot. The returned object is immutable
+     * and can be used without locking.
+     *
+     * @return topology snapshot
+     */
+    public TopologySnapshot snapshot() {
+        return graph.snapshot();
+    }
+
+    //--------------------------------------------------------------------------
+    // EVENT LISTENERS
+    //
+    // Events are processed only if isRelevant() returns true.
+    //--------------------------------------------------------------------------
+
+    /**
+     * Listener of device events which updates the set of devices in the
+     * topology graph.
+     */
+    class InternalDeviceListener implements DeviceListener {
+
+        @Override
+        public boolean isRelevant(DeviceEvent event) {
+            switch (event.type()) {
+                case DEVICE_ADDED:
+                case DEVICE_REMOVED:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void event(DeviceEvent event) {
+            final long startNanos = System.nanoTime();
+            if (event.type() == DeviceEvent.Type.DEVICE_ADDED) {
+                graph.addDevice(event.subject().id());
+            } else {
+                graph.removeDevice(event.subject().id());
+            }
+            AppMetrics.latency(DEVICE_EVENT_METRIC).recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Listener of link events which updates the adjacency of the topology
+     * graph.
+     */
+    class InternalLinkListener implements LinkListener {
+
+        @Override
+        public void event(LinkEvent event) {
+            final long startNanos = System.nanoTime();
+            switch (event.type()) {
+                case LINK_ADDED:
+                case LINK_UPDATED:
+                    graph.addLink(event.subject());
+                    break;
+                case LINK_REMOVED:
+                    graph.removeLink(event.subject());
+                    break;
+                default:
+                    break;
+            }
+            AppMetrics.latency(LINK_EVENT_METRIC).recordSince(startNanos);
+        }
+    }
+}
@@ -47,15 +47,22 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceHandoffListener;
 import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
 import org.onosproject.ngsdn.tutorial.common.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.onosproject.ngsdn.tutorial.AppConstants.INITIAL_SETUP_DELAY;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.FLOW_RULES_INSTALLED;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.GROUPS_INSTALLED;
 
 /**
  * App component that configures devices to provide L2 bridging capabilities.
@@ -71,9 +78,12 @@ public class L2BridgingComponent {
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private static final int DEFAULT_BROADCAST_GROUP_ID = 255;
+    private static final String SET_UP_DEVICE_TASK = "l2-bridging/set-up-device";
+    private static final String LEARN_HOST_TASK = "l2-bridging/learn-host";
 
     private final DeviceListener deviceListener = new InternalDeviceListener();
     private final HostListener hostListener = new InternalHostListener();
+    private final DeviceHandoffListener handoffListener = new InternalHandoffListener();
 
     private ApplicationId appId;
 
@@ -108,6 +118,15 @@ public class L2BridgingComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private MainComponent mainComponent;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ConvergenceTracer tracer;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricPartitionComponent partitionComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
     //--------------------------------------------------------------------------
     // COMPONENT ACTIVATION.
     //
@@ -122,6 +141,7 @@ public class L2BridgingComponent {
         // Register listeners to be informed about device and host events.
         deviceService.addListener(deviceListener);
         hostService.addListener(hostListener);
+        partitionComponent.addListener(handoffListener);
         // Schedule set up of existing devices. Needed when reloading the app.
         mainComponent.scheduleTask(this::setUpAllDevices, INITIAL_SETUP_DELAY);
 
@@ -132,6 +152,7 @@ public class L2BridgingComponent {
     protected void deactivate() {
         deviceService.removeListener(deviceListener);
         hostService.removeListener(hostListener);
+        partitionComponent.removeListener(handoffListener);
 
         log.info("Stopped");
     }
@@ -185,8 +206,12 @@ public class L2BridgingComponent {
         final GroupDescription multicastGroup = Utils.buildMulticastGroup(
                 appId, deviceId, DEFAULT_BROADCAST_GROUP_ID, ports);
 
-        // Insert.
-        groupService.addGroup(multicastGroup);
+        // Insert, or update the ports of the existing group.
+        if (Utils.writeGroup(groupService, multicastGroup, tracer::trackGroup)) {
+            AppMetrics.counter(GROUPS_INSTALLED).increment();
+        }
+        desiredStateStore.record(Collections.singleton(multicastGroup),
+                                 Collections.emptyList());
     }
 
     /**
@@ -245,7 +270,10 @@ public class L2BridgingComponent {
                 ipv6MulticastCriterion, setMcastGroupAction);
 
         // Insert rules.
+        tracer.trackFlowRules(rule1, rule2);
         flowRuleService.applyFlowRules(rule1, rule2);
+        desiredStateStore.recordFlowRules(Arrays.asList(rule1, rule2));
+        AppMetrics.counter(FLOW_RULES_INSTALLED).add(2);
     }
 
     /**
@@ -293,7 +321,10 @@ public class L2BridgingComponent {
                 unmatchedTrafficCriterion, setMcastGroupAction);
 
         // Insert rules.
+        tracer.trackFlowRules(rule);
         flowRuleService.applyFlowRules(rule);
+        desiredStateStore.recordFlowRules(Collections.singleton(rule));
+        AppMetrics.counter(FLOW_RULES_INSTALLED).increment();
     }
 
     /**
@@ -338,7 +369,10 @@ public class L2BridgingComponent {
                 deviceId, appId, tableId, hostMacCriterion, l2UnicastAction);
 
         // Insert.
+        tracer.trackFlowRules(rule);
         flowRuleService.applyFlowRules(rule);
+        desiredStateStore.recordFlowRules(Collections.singleton(rule));
+        AppMetrics.counter(FLOW_RULES_INSTALLED).increment();
     }
 
     //--------------------------------------------------------------------------
@@ -376,12 +410,14 @@ public class L2BridgingComponent {
                 // configuration has been set.
 
                 // Events are processed using a thread pool defined in the
-                // MainComponent.
-                mainComponent.getExecutorService().execute(() -> {
+                // MainComponent, coalescing bursts of events for the same
+                // device.
+                mainComponent.submitDeviceTask(deviceId, SET_UP_DEVICE_TASK, tracer.traced(
+                        event.type() + " " + deviceId, () -> {
                     log.info("{} event! deviceId={}", event.type(), deviceId);
 
                     setUpDevice(deviceId);
-                });
+                }));
             }
         }
     }
@@ -420,12 +456,36 @@ public class L2BridgingComponent {
             final DeviceId deviceId = host.location().deviceId();
             final PortNumber port = host.location().port();
 
-            mainComponent.getExecutorService().execute(() -> {
+            // Hosts dropped under load are recovered by setting up all
+            // devices again.
+            mainComponent.executeTask(Priority.BULK, LEARN_HOST_TASK, tracer.traced(
+                    event.type() + " " + host.id(), () -> {
                 log.info("{} event! host={}, deviceId={}, port={}",
                         event.type(), host.id(), deviceId, port);
 
                 learnHost(host, deviceId, port);
-            });
+            }), () -> mainComponent.scheduleResync(
+                    LEARN_HOST_TASK, L2BridgingComponent.this::setUpAllDevices));
+        }
+    }
+
+    /**
+     * Listener of mastership handoffs, which sets up the devices taken over by
+     * this instance.
+     */
+    public class InternalHandoffListener implements DeviceHandoffListener {
+
+        @Override
+        public void acquired(DeviceId deviceId) {
+            tracer.traced("MASTER_CHANGED " + deviceId, () -> {
+                log.info("Taking over L2 bridging of {}...", deviceId);
+                setUpDeviceAndHosts(deviceId);
+            }).run();
+        }
+
+        @Override
+        public void released(DeviceId deviceId) {
+            // No state kept per device.
         }
     }
 
@@ -493,12 +553,22 @@ public class L2BridgingComponent {
         deviceService.getAvailableDevices().forEach(device -> {
             if (mastershipService.isLocalMaster(device.id())) {
                 log.info("*** L2 BRIDGING - Starting initial set up for {}...", device.id());
-                setUpDevice(device.id());
-                // For all hosts connected to this device...
-                hostService.getConnectedHosts(device.id()).forEach(
-                        host -> learnHost(host, host.location().deviceId(),
-                                host.location().port()));
+                setUpDeviceAndHosts(device.id());
             }
         });
     }
+
+    /**
+     * Sets up L2 bridging on the given device, including bridging rules for
+     * the hosts already connected to it.
+     *
+     * @param deviceId device ID
+     */
+    private void setUpDeviceAndHosts(DeviceId deviceId) {
+        setUpDevice(deviceId);
+        // For all hosts connected to this device...
+        hostService.getConnectedHosts(deviceId).forEach(
+                host -> learnHost(host, host.location().deviceId(),
+                        host.location().port()));
+    }
 }
@@ -1,7 +1,9 @@
 package org.onosproject.ngsdn.tutorial;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.onlab.util.SharedScheduledExecutors;
+import org.onlab.util.Tools;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
@@ -15,36 +17,61 @@ import org.onosproject.net.flow.FlowRule;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.group.Group;
 import org.onosproject.net.group.GroupService;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceTaskCoalescer;
 import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
+import org.onosproject.ngsdn.tutorial.common.Srv6PolicyConfig;
 import org.onosproject.ngsdn.tutorial.pipeconf.PipeconfLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.onosproject.ngsdn.tutorial.AppConstants.APP_NAME;
 import static org.onosproject.ngsdn.tutorial.AppConstants.CLEAN_UP_DELAY;
 import static org.onosproject.ngsdn.tutorial.AppConstants.DEFAULT_CLEAN_UP_RETRY_TIMES;
+import static org.onosproject.ngsdn.tutorial.AppConstants.RESYNC_DELAY;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_COALESCE_WINDOW_MS;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_COALESCE_WINDOW_MS_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_QUEUE_CAPACITY;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_QUEUE_CAPACITY_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_QUEUE_OFFER_TIMEOUT_MS;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.TASK_QUEUE_OFFER_TIMEOUT_MS_DEFAULT;
 import static org.onosproject.ngsdn.tutorial.common.Utils.sleep;
 
 /**
- * A component which among other things registers the fabricDeviceConfig to the
- * netcfg subsystem.
+ * A component which among other things registers the fabricDeviceConfig and
+ * srv6Policies configs to the netcfg subsystem.
  */
-@Component(immediate = true, service = MainComponent.class)
+@Component(
+        immediate = true,
+        service = MainComponent.class,
+        property = {
+                TASK_COALESCE_WINDOW_MS + ":Integer=" + TASK_COALESCE_WINDOW_MS_DEFAULT,
+                TASK_QUEUE_CAPACITY + ":Integer=" + TASK_QUEUE_CAPACITY_DEFAULT,
+                TASK_QUEUE_OFFER_TIMEOUT_MS + ":Integer=" + TASK_QUEUE_OFFER_TIMEOUT_MS_DEFAULT,
+        }
+)
 public class MainComponent {
 
     private static final Logger log =
             LoggerFactory.getLogger(MainComponent.class.getName());
 
+    private static final String SCHEDULED_TASK = "scheduled";
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private CoreService coreService;
 
@@ -68,6 +95,9 @@ public class MainComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private ComponentConfigService compCfgService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
     private final ConfigFactory<DeviceId, FabricDeviceConfig> fabricConfigFactory =
             new ConfigFactory<DeviceId, FabricDeviceConfig>(
                     SubjectFactories.DEVICE_SUBJECT_FACTORY, FabricDeviceConfig.class, FabricDeviceConfig.CONFIG_KEY) {
@@ -77,16 +107,48 @@ public class MainComponent {
                 }
             };
 
+    private final ConfigFactory<DeviceId, Srv6PolicyConfig> srv6PolicyConfigFactory =
+            new ConfigFactory<DeviceId, Srv6PolicyConfig>(
+                    SubjectFactories.DEVICE_SUBJECT_FACTORY, Srv6PolicyConfig.class, Srv6PolicyConfig.CONFIG_KEY) {
+                @Override
+                public Srv6PolicyConfig createConfig() {
+                    return new Srv6PolicyConfig();
+                }
+            };
+
     private ApplicationId appId;
 
+    /** Window in milliseconds during which per-device tasks are coalesced. */
+    private int taskCoalesceWindowMs = TASK_COALESCE_WINDOW_MS_DEFAULT;
+
+    /** Maximum number of configuration tasks waiting to be executed. */
+    private int taskQueueCapacity = TASK_QUEUE_CAPACITY_DEFAULT;
+
+    /** Maximum time in milliseconds a listener waits when the task queue is full. */
+    private int taskQueueOfferTimeoutMs = TASK_QUEUE_OFFER_TIMEOUT_MS_DEFAULT;
+
     // For the sake of simplicity and to facilitate reading logs, use a
-    // single-thread executor to serialize all configuration tasks.
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // single-thread executor to serialize all configuration tasks. Its queue
+    // is bounded and ordered by priority, such that failure repairs are not
+    // delayed by bulk provisioning.
+    private final PriorityTaskExecutor executorService = new PriorityTaskExecutor(
+            TASK_QUEUE_CAPACITY_DEFAULT, TASK_QUEUE_OFFER_TIMEOUT_MS_DEFAULT,
+            Tools.groupedThreads("onos/ngsdn-tutorial", "config-%d", log));
+
+    // Names of the resyncs scheduled but not started yet.
+    private final Set<String> pendingResyncs = Sets.newConcurrentHashSet();
+
+    // Merges redundant per-device tasks before they reach the executor.
+    private final DeviceTaskCoalescer taskCoalescer = new DeviceTaskCoalescer(
+            executorService, TASK_COALESCE_WINDOW_MS_DEFAULT);
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         appId = coreService.registerApplication(APP_NAME);
 
+        compCfgService.registerProperties(getClass());
+        modified(context);
+
         // Wait to remove flow and groups from previous executions.
         waitPreviousCleanup();
 
@@ -100,14 +162,50 @@ public class MainComponent {
                                       "useBddp", "false", false);
 
         configRegistry.registerConfigFactory(fabricConfigFactory);
+        configRegistry.registerConfigFactory(srv6PolicyConfigFactory);
         log.info("Started");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        if (context == null) {
+            return;
+        }
+        final Dictionary<?, ?> properties = context.getProperties();
+        final Integer windowMs = Tools.getIntegerProperty(
+                properties, TASK_COALESCE_WINDOW_MS);
+        if (windowMs != null && windowMs >= 0) {
+            taskCoalesceWindowMs = windowMs;
+            taskCoalescer.setWindowMillis(taskCoalesceWindowMs);
+            log.info("Configured. {} is {}", TASK_COALESCE_WINDOW_MS,
+                     taskCoalesceWindowMs);
+        }
+        final Integer capacity = Tools.getIntegerProperty(
+                properties, TASK_QUEUE_CAPACITY);
+        if (capacity != null && capacity > 0) {
+            taskQueueCapacity = capacity;
+            executorService.setCapacity(taskQueueCapacity);
+            log.info("Configured. {} is {}", TASK_QUEUE_CAPACITY,
+                     taskQueueCapacity);
+        }
+        final Integer offerTimeoutMs = Tools.getIntegerProperty(
+                properties, TASK_QUEUE_OFFER_TIMEOUT_MS);
+        if (offerTimeoutMs != null && offerTimeoutMs >= 0) {
+            taskQueueOfferTimeoutMs = offerTimeoutMs;
+            executorService.setOfferTimeoutMillis(taskQueueOfferTimeoutMs);
+            log.info("Configured. {} is {}", TASK_QUEUE_OFFER_TIMEOUT_MS,
+                     taskQueueOfferTimeoutMs);
+        }
+    }
+
     @Deactivate
     protected void deactivate() {
+        compCfgService.unregisterProperties(getClass(), false);
         configRegistry.unregisterConfigFactory(fabricConfigFactory);
+        configRegistry.unregisterConfigFactory(srv6PolicyConfigFactory);
 
         cleanUp();
+        executorService.shutdown();
 
         log.info("Stopped");
     }
@@ -122,7 +220,8 @@ public class MainComponent {
     }
 
     /**
-     * Returns the executor service managed by this component.
+     * Returns the executor service managed by this component. Tasks submitted
+     * directly to the executor service have {@link Priority#NORMAL} priority.
      *
      * @return executor service
      */
@@ -130,19 +229,143 @@ public class MainComponent {
         return executorService;
     }
 
+    /**
+     * Executes a task with the given priority using the executor service
+     * managed by this component. If the task queue is full, the caller might
+     * be blocked for a short time, after which the task is dropped. The
+     * latency from submission to completion of the task is recorded in
+     * {@link AppMetrics} using the task type as metric name.
+     *
+     * @param priority task priority
+     * @param taskType task type, used to aggregate queue wait statistics
+     * @param task     task runnable
+     * @return true if the task was queued, false if dropped
+     */
+    public boolean executeTask(Priority priority, String taskType, Runnable task) {
+        return executorService.execute(
+                priority, taskType, AppMetrics.trackEvent(taskType, task));
+    }
+
+    /**
+     * Same as {@link #executeTask(Priority, String, Runnable)}, but runs the
+     * given callback if the task is dropped, i.e. rejected because the queue
+     * is full, or later evicted in favor of a higher-priority task. Callers
+     * should use the callback to recover the work of the task, e.g. with
+     * {@link #scheduleResync(String, Runnable)}.
+     *
+     * @param priority task priority
+     * @param taskType task type, used to aggregate queue wait statistics
+     * @param task     task runnable
+     * @param onDrop   callback invoked if the task is dropped
+     * @return true if the task was queued, false if dropped
+     */
+    public boolean executeTask(Priority priority, String taskType, Runnable task,
+                               Runnable onDrop) {
+        if (executorService.execute(priority, taskType,
+                                    AppMetrics.trackEvent(taskType, task), onDrop)) {
+            return true;
+        }
+        onDrop.run();
+        return false;
+    }
+
+    /**
+     * Submits a task that recomputes state for the given device. Tasks with the
+     * same device and name submitted within a short window are coalesced, i.e.
+     * only the most recent one is executed. The latency from submission to
+     * completion is recorded like for {@link #executeTask}.
+     *
+     * @param deviceId device ID
+     * @param taskName task name, e.g. identifying the component and operation
+     * @param task     task runnable
+     */
+    public void submitDeviceTask(DeviceId deviceId, String taskName, Runnable task) {
+        submitDeviceTask(deviceId, taskName, Priority.NORMAL, task);
+    }
+
+    /**
+     * Same as {@link #submitDeviceTask(DeviceId, String, Runnable)}, but
+     * executes the task with the given priority.
+     *
+     * @param deviceId device ID
+     * @param taskName task name, e.g. identifying the component and operation
+     * @param priority task priority
+     * @param task     task runnable
+     */
+    public void submitDeviceTask(DeviceId deviceId, String taskName,
+                                 Priority priority, Runnable task) {
+        taskCoalescer.submit(deviceId, taskName, priority,
+                             AppMetrics.trackEvent(taskName, task));
+    }
+
+    /**
+     * Returns the executor service managed by this component, exposing queue
+     * statistics.
+     *
+     * @return priority task executor
+     */
+    public PriorityTaskExecutor getTaskExecutor() {
+        return executorService;
+    }
+
+    /**
+     * Returns the coalescing stage in front of the executor service.
+     *
+     * @return task coalescer
+     */
+    public DeviceTaskCoalescer getTaskCoalescer() {
+        return taskCoalescer;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the executor queue.
+     *
+     * @return queue depth
+     */
+    public int getExecutorQueueDepth() {
+        return executorService.queueSize();
+    }
+
     /**
      * Schedules a task for the future using the executor service managed by
-     * this component.
+     * this component. Scheduled tasks have {@link Priority#BULK} priority, but
+     * are not lost when the queue is full: if dropped, they are scheduled
+     * again, until the executor is shut down.
      *
      * @param task task runnable
      * @param delaySeconds delay in seconds
      */
     public void scheduleTask(Runnable task, int delaySeconds) {
         SharedScheduledExecutors.newTimeout(
-                () -> executorService.execute(task),
+                () -> executeTask(Priority.BULK, SCHEDULED_TASK, task, () -> {
+                    if (!executorService.isShutdown()) {
+                        log.warn("Scheduled task dropped, retrying in {} seconds",
+                                 RESYNC_DELAY);
+                        scheduleTask(task, RESYNC_DELAY);
+                    }
+                }),
                 delaySeconds, TimeUnit.SECONDS);
     }
 
+    /**
+     * Schedules a resync, i.e. a task recomputing the whole state of a
+     * component, to recover the work of dropped tasks. Resyncs with the same
+     * name are coalesced until the scheduled one starts.
+     *
+     * @param name resync name, e.g. identifying the component
+     * @param task task runnable
+     */
+    public void scheduleResync(String name, Runnable task) {
+        if (pendingResyncs.add(name)) {
+            log.warn("Tasks dropped, scheduling {} resync in {} seconds",
+                     name, RESYNC_DELAY);
+            scheduleTask(() -> {
+                pendingResyncs.remove(name);
+                task.run();
+            }, RESYNC_DELAY);
+        }
+    }
+
     /**
      * Triggers clean up of flows and groups from this app, returns false if no
      * flows or groups were found, true otherwise.
@@ -150,6 +373,9 @@ public class MainComponent {
      * @return false if no flows or groups were found, true otherwise
      */
     private boolean cleanUp() {
+        // Stored state must not be restored on devices after clean up.
+        desiredStateStore.clearAll();
+
         Collection<FlowRule> flows = Lists.newArrayList(
                 flowRuleService.getFlowEntriesById(appId).iterator());
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial;
+
+/**
+ * Constants for default values of configurable properties.
+ */
+public final class OsgiPropertyConstants {
+
+    private OsgiPropertyConstants() {
+    }
+
+    public static final String TASK_COALESCE_WINDOW_MS = "taskCoalesceWindowMs";
+    public static final int TASK_COALESCE_WINDOW_MS_DEFAULT = 50;
+
+    public static final String TASK_QUEUE_CAPACITY = "taskQueueCapacity";
+    public static final int TASK_QUEUE_CAPACITY_DEFAULT = 1024;
+
+    public static final String TASK_QUEUE_OFFER_TIMEOUT_MS = "taskQueueOfferTimeoutMs";
+    public static final int TASK_QUEUE_OFFER_TIMEOUT_MS_DEFAULT = 100;
+
+    public static final String SRV6_COMPRESS_SIDS = "srv6CompressSids";
+    public static final boolean SRV6_COMPRESS_SIDS_DEFAULT = false;
+
+    public static final String SRV6_STATS_POLL_INTERVAL_SEC = "srv6StatsPollIntervalSec";
+    public static final int SRV6_STATS_POLL_INTERVAL_SEC_DEFAULT = 10;
+
+    public static final String TAKEOVER_PARALLELISM = "takeoverParallelism";
+    public static final int TAKEOVER_PARALLELISM_DEFAULT = 4;
+
+    public static final String NEIGHBOR_TABLE_ENABLED = "neighborTableEnabled";
+    public static final boolean NEIGHBOR_TABLE_ENABLED_DEFAULT = false;
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onlab.packet.IpPrefix;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.config.NetworkConfigService;
+import org.onosproject.net.host.InterfaceIpAddress;
+import org.onosproject.net.intf.Interface;
+import org.onosproject.net.intf.InterfaceService;
+import org.onosproject.net.link.LinkEvent;
+import org.onosproject.net.link.LinkListener;
+import org.onosproject.net.link.LinkService;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
+import org.onosproject.ngsdn.tutorial.common.Srv6ImportReport;
+import org.onosproject.ngsdn.tutorial.common.Srv6PathConstraints;
+import org.onosproject.ngsdn.tutorial.common.Srv6PathRequest;
+import org.onosproject.ngsdn.tutorial.common.Srv6Policy;
+import org.onosproject.ngsdn.tutorial.common.TopologySnapshot;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Component that computes the segment list of SRv6 policies from the fabric
+ * topology and the SIDs in the network configuration, and keeps the policies
+ * it installed up to date when links change.
+ * <p>
+ * The segment list of a policy is made of the SIDs of all devices on the path
+ * from the source leaf to the leaf of the destination host, followed by the
+ * host address. Paths are cached by source leaf, destination leaf and
+ * constraints, such that policies towards hosts of the same leaf share the
+ * same computation.
+ */
+@Component(immediate = true, service = Srv6PathComponent.class)
+public class Srv6PathComponent {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(Srv6PathComponent.class);
+
+    private static final String RECOMPUTE_TASK = "srv6-path/recompute";
+    private static final String RECOMPUTE_METRIC = "srv6-path.recompute.latency";
+
+    private final LinkListener linkListener = new InternalLinkListener();
+
+    // Paths by source leaf, destination leaf and constraints, valid for the
+    // topology version they were computed on. Load-aware paths depend on the
+    // policies installed, hence they are never cached.
+    private final Map<PathKey, CachedPath> pathCache = Maps.newConcurrentMap();
+
+    // Policies installed by this component, by source leaf and prefix.
+    private final Map<PolicyKey, ManagedPolicy> managedPolicies =
+            Maps.newConcurrentMap();
+
+    // Policies traversing each device (except their source leaf), used to
+    // find the policies affected by a link failure, and as the load of the
+    // device for load-aware paths.
+    private final Map<DeviceId, Set<PolicyKey>> policiesByDevice =
+            Maps.newConcurrentMap();
+
+    // Policies to recompute by the next recompute task.
+    private final Set<PolicyKey> dirtyPolicies = Sets.newConcurrentHashSet();
+
+    //--------------------------------------------------------------------------
+    // ONOS CORE SERVICE BINDING
+    //
+    // These variables are set by the Karaf runtime environment before calling
+    // the activate() method.
+    //--------------------------------------------------------------------------
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private LinkService linkService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private InterfaceService interfaceService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private NetworkConfigService networkConfigService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private MainComponent mainComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricTopologyComponent topologyComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private Srv6Component srv6Component;
+
+    //--------------------------------------------------------------------------
+    // COMPONENT ACTIVATION.
+    //
+    // When loading/unloading the app the Karaf runtime environment will call
+    // activate()/deactivate().
+    //--------------------------------------------------------------------------
+
+    @Activate
+    protected void activate() {
+        linkService.addListener(linkListener);
+
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        linkService.removeListener(linkListener);
+        pathCache.clear();
+        managedPolicies.clear();
+        policiesByDevice.clear();
+        dirtyPolicies.clear();
+
+        log.info("Stopped");
+    }
+
+    /**
+     * Computes the segment list for the given request, without installing
+     * anything.
+     *
+     * @param request path request
+     * @return segment list, the last segment being the destination address
+     * @throws IllegalStateException if a path cannot be computed
+     */
+    public List<Ip6Address> computeSegments(Srv6PathRequest request) {
+        return compute(request, subnetLeaves()).segments;
+    }
+
+    /**
+     * Computes and installs the SRv6 policies for the given requests, with one
+     * batch of flow rule operations per source leaf. Installed policies are
+     * recomputed when links change, until removed.
+     * <p>
+     * Load-aware requests account for the policies installed before them,
+     * including earlier requests of the same call.
+     *
+     * @param requests path requests
+     * @return import report
+     */
+    public synchronized Srv6ImportReport installPolicies(
+            Collection<Srv6PathRequest> requests) {
+        final Srv6ImportReport.Builder report =
+                Srv6ImportReport.builder(requests.size());
+        final Map<IpPrefix, DeviceId> subnets = subnetLeaves();
+
+        final Map<DeviceId, List<ManagedPolicy>> policiesBySrc = Maps.newHashMap();
+        for (Srv6PathRequest request : requests) {
+            try {
+                final ManagedPolicy policy = compute(request, subnets);
+                track(policy);
+                policiesBySrc.computeIfAbsent(request.srcLeaf(), k -> Lists.newArrayList())
+                        .add(policy);
+            } catch (RuntimeException e) {
+                report.failed(request.srcLeaf(), request.prefix(), e.getMessage());
+            }
+        }
+
+        policiesBySrc.forEach((deviceId, policies) -> {
+            try {
+                final int changed = srv6Component.applyPolicies(
+                        deviceId, Lists.transform(policies, ManagedPolicy::toSrv6Policy));
+                report.applied(policies.size(), changed);
+            } catch (RuntimeException e) {
+                policies.forEach(p -> {
+                    untrack(p.key);
+                    report.failed(deviceId, p.key.prefix, e.getMessage());
+                });
+            }
+        });
+
+        return report.build();
+    }
+
+    /**
+     * Removes the SRv6 policy computed for the given source leaf and prefix.
+     *
+     * @param srcLeaf source leaf
+     * @param prefix  destination prefix
+     * @return true if the policy was found and removed
+     */
+    public synchronized boolean removePolicy(DeviceId srcLeaf, Ip6Prefix prefix) {
+        if (untrack(new PolicyKey(srcLeaf, prefix)) == null) {
+            return false;
+        }
+        srv6Component.removePolicies(srcLeaf, Collections.singleton(prefix));
+        return true;
+    }
+
+    /**
+     * Returns the number of policies installed by this component, including
+     * those currently without a path.
+     *
+     * @return number of policies
+     */
+    public int policyCount() {
+        return managedPolicies.size();
+    }
+
+    /**
+     * Returns the number of installed policies traversing the given device.
+     *
+     * @param deviceId device ID
+     * @return number of policies
+     */
+    public int load(DeviceId deviceId) {
+        final Set<PolicyKey> keys = policiesByDevice.get(deviceId);
+        return keys == null ? 0 : keys.size();
+    }
+
+    //--------------------------------------------------------------------------
+    // EVENT LISTENERS
+    //
+    // Events are processed only if isRelevant() returns true.
+    //--------------------------------------------------------------------------
+
+    /**
+     * Listener of link events that marks the policies affected by the change
+     * as dirty and triggers their recomputation.
+     */
+    class InternalLinkListener implements LinkListener {
+
+        @Override
+        public boolean isRelevant(LinkEvent event) {
+            switch (event.type()) {
+                case LINK_ADDED:
+                case LINK_REMOVED:
+                    return !managedPolicies.isEmpty();
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void event(LinkEvent event) {
+            pathCache.clear();
+            final Link link = event.subject();
+            final Priority priority;
+            if (event.type() == LinkEvent.Type.LINK_REMOVED) {
+                // Only policies whose path uses this link need a new one.
+                final Set<PolicyKey> keys = policiesByDevice.getOrDefault(
+                        link.dst().deviceId(), Collections.emptySet());
+                keys.stream()
+                        .filter(key -> usesLink(managedPolicies.get(key), link))
+                        .forEach(dirtyPolicies::add);
+                priority = Priority.REPAIR;
+            } else {
+                // Any policy can get a shorter path, or a path if it had none.
+                dirtyPolicies.addAll(managedPolicies.keySet());
+                priority = Priority.NORMAL;
+            }
+            if (!dirtyPolicies.isEmpty() && !mainComponent.executeTask(
+                    priority, RECOMPUTE_TASK, Srv6PathComponent.this::recomputeDirtyPolicies)) {
+                log.warn("Unable to schedule recomputation of {} SRv6 policies",
+                         dirtyPolicies.size());
+            }
+        }
+    }
+
+    //--------------------------------------------------------------------------
+    // UTILITY METHODS
+    //--------------------------------------------------------------------------
+
+    /**
+     * Recomputes the dirty policies, and updates those whose segment list
+     * changed with one batch of flow rule operations per source leaf. Policies
+     * without a path are removed from the device, and re-installed when a
+     * path becomes available again.
+     */
+    private synchronized void recomputeDirtyPolicies() {
+        if (dirtyPolicies.isEmpty()) {
+            // Already processed by a previous task.
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        final Map<IpPrefix, DeviceId> subnets = subnetLeaves();
+        final Map<DeviceId, List<Srv6Policy>> toApply = Maps.newHashMap();
+        final Map<DeviceId, List<Ip6Prefix>> toRemove = Maps.newHashMap();
+        int count = 0;
+
+        final Iterator<PolicyKey> it = dirtyPolicies.iterator();
+        while (it.hasNext()) {
+            final PolicyKey key = it.next();
+            it.remove();
+            final ManagedPolicy current = managedPolicies.get(key);
+            if (current == null) {
+                continue;
+            }
+            count++;
+            ManagedPolicy updated;
+            try {
+                updated = compute(current.request, subnets);
+            } catch (RuntimeException e) {
+                log.warn("No path for SRv6 policy {} {}: {}",
+                         key.srcLeaf, key.prefix, e.getMessage());
+                updated = new ManagedPolicy(current.request, null, null);
+            }
+            if (Objects.equals(current.segments, updated.segments)) {
+                continue;
+            }
+            track(updated);
+            if (updated.segments == null) {
+                toRemove.computeIfAbsent(key.srcLeaf, k -> Lists.newArrayList())
+                        .add(key.prefix);
+            } else {
+                toApply.computeIfAbsent(key.srcLeaf, k -> Lists.newArrayList())
+                        .add(updated.toSrv6Policy());
+            }
+        }
+
+        toApply.forEach((deviceId, policies) -> {
+            try {
+                srv6Component.applyPolicies(deviceId, policies);
+            } catch (RuntimeException e) {
+                log.warn("Unable to update SRv6 policies on {}: {}",
+                         deviceId, e.getMessage());
+            }
+        });
+        toRemove.forEach(srv6Component::removePolicies);
+
+        log.info("Recomputed {} SRv6 policies, updated {} and removed {}",
+                 count, toApply.values().stream().mapToInt(List::size).sum(),
+                 toRemove.values().stream().mapToInt(List::size).sum());
+        AppMetrics.latency(RECOMPUTE_METRIC).recordSince(startNanos);
+    }
+
+    private ManagedPolicy compute(Srv6PathRequest request,
+                                  Map<IpPrefix, DeviceId> subnets) {
+        final Ip6Address destination = request.prefix().address();
+        final DeviceId dstLeaf = subnets.entrySet().stream()
+                .filter(e -> e.getKey().contains(destination))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                        "No leaf with a subnet containing " + destination));
+        if (dstLeaf.equals(request.srcLeaf())) {
+            throw new IllegalStateException(
+                    destination + " is attached to " + dstLeaf);
+        }
+        final List<DeviceId> path = computePath(
+                request.srcLeaf(), dstLeaf, request.constraints());
+        if (path == null) {
+            throw new IllegalStateException(
+                    "No path from " + request.srcLeaf() + " to " + dstLeaf +
+                            " satisfying " + request.constraints());
+        }
+        final List<Ip6Address> segments = Lists.newArrayList();
+        for (DeviceId deviceId : path.subList(1, path.size())) {
+            segments.add(getMySid(deviceId));
+        }
+        segments.add(destination);
+        return new ManagedPolicy(request, path, segments);
+    }
+
+    private List<DeviceId> computePath(DeviceId src, DeviceId dst,
+                                       Srv6PathConstraints constraints) {
+        final TopologySnapshot topo = topologyComponent.snapshot();
+        if (constraints.loadAware()) {
+            return shortestPath(topo, src, dst, constraints);
+        }
+        final PathKey key = new PathKey(src, dst, constraints);
+        final CachedPath cached = pathCache.get(key);
+        if (cached != null && cached.version == topo.version()) {
+            return cached.path;
+        }
+        final List<DeviceId> path = shortestPath(topo, src, dst, constraints);
+        pathCache.put(key, new CachedPath(topo.version(), path));
+        return path;
+    }
+
+    private List<DeviceId> shortestPath(TopologySnapshot topo, DeviceId src,
+                                        DeviceId dst,
+                                        Srv6PathConstraints constraints) {
+        final int srcIndex = topo.indexOf(src);
+        final int dstIndex = topo.indexOf(dst);
+        if (srcIndex < 0 || dstIndex < 0) {
+            return null;
+        }
+        final IntPredicate excluded = index -> constraints.avoidDevices()
+                .contains(topo.deviceId(index));
+        final IntUnaryOperator cost = constraints.loadAware()
+                ? index -> load(topo.deviceId(index))
+                : index -> 0;
+        final int[] path = topo.shortestPath(srcIndex, dstIndex, excluded, cost);
+        if (path == null || (constraints.maxHops() > 0
+                && path.length - 1 > constraints.maxHops())) {
+            return null;
+        }
+        return Arrays.stream(path)
+                .mapToObj(topo::deviceId)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Records the given policy as managed, replacing the previous one with
+     * the same key, and updates the index of policies by device.
+     *
+     * @param policy managed policy
+     */
+    private void track(ManagedPolicy policy) {
+        final ManagedPolicy previous = managedPolicies.put(policy.key, policy);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (policy.path != null) {
+            policy.path.subList(1, policy.path.size()).forEach(
+                    deviceId -> policiesByDevice.computeIfAbsent(
+                            deviceId, k -> Sets.newConcurrentHashSet())
+                            .add(policy.key));
+        }
+    }
+
+    private ManagedPolicy untrack(PolicyKey key) {
+        final ManagedPolicy previous = managedPolicies.remove(key);
+        if (previous != null) {
+            unindex(previous);
+        }
+        dirtyPolicies.remove(key);
+        return previous;
+    }
+
+    private void unindex(ManagedPolicy policy) {
+        if (policy.path == null) {
+            return;
+        }
+        policy.path.subList(1, policy.path.size()).forEach(deviceId -> {
+            final Set<PolicyKey> keys = policiesByDevice.get(deviceId);
+            if (keys != null) {
+                keys.remove(policy.key);
+            }
+        });
+    }
+
+    private static boolean usesLink(ManagedPolicy policy, Link link) {
+        if (policy == null || policy.path == null) {
+            return false;
+        }
+        for (int i = 1; i < policy.path.size(); i++) {
+            if (policy.path.get(i - 1).equals(link.src().deviceId()) &&
+                    policy.path.get(i).equals(link.dst().deviceId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the leaf of each IPv6 subnet configured on interfaces.
+     *
+     * @return map of subnets to device IDs
+     */
+    private Map<IpPrefix, DeviceId> subnetLeaves() {
+        final Map<IpPrefix, DeviceId> subnets = Maps.newHashMap();
+        for (Interface iface : interfaceService.getInterfaces()) {
+            iface.ipAddressesList().stream()
+                    .map(InterfaceIpAddress::subnetAddress)
+                    .filter(IpPrefix::isIp6)
+                    .forEach(subnet -> subnets.put(
+                            subnet, iface.connectPoint().deviceId()));
+        }
+        return subnets;
+    }
+
+    /**
+     * Returns Srv6 SID for the given device.
+     *
+     * @param deviceId the device ID
+     * @return SID for the device
+     */
+    private Ip6Address getMySid(DeviceId deviceId) {
+        final FabricDeviceConfig config = networkConfigService.getConfig(
+                deviceId, FabricDeviceConfig.class);
+        if (config == null || config.mySid() == null) {
+            throw new IllegalStateException("Missing mySid config for " + deviceId);
+        }
+        return config.mySid();
+    }
+
+    /**
+     * Key of a managed policy.
+     */
+    private static final class PolicyKey {
+        private final DeviceId srcLeaf;
+        private final Ip6Prefix prefix;
+
+        private PolicyKey(DeviceId srcLeaf, Ip6Prefix prefix) {
+            this.srcLeaf = srcLeaf;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PolicyKey)) {
+                return false;
+            }
+            final PolicyKey other = (PolicyKey) o;
+            return srcLeaf.equals(other.srcLeaf) && prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(srcLeaf, prefix);
+        }
+    }
+
+    /**
+     * Policy computed for a request, with the path and segment list, both
+     * null if there is currently no path satisfying the request.
+     */
+    private static final class ManagedPolicy {
+        private final PolicyKey key;
+        private final Srv6PathRequest request;
+        private final List<DeviceId> path;
+        private final List<Ip6Address> segments;
+
+        private ManagedPolicy(Srv6PathRequest request, List<DeviceId> path,
+                              List<Ip6Address> segments) {
+            this.key = new PolicyKey(request.srcLeaf(), request.prefix());
+            this.request = request;
+            this.path = path;
+            this.segments = segments;
+        }
+
+        private Srv6Policy toSrv6Policy() {
+            return new Srv6Policy(key.srcLeaf, key.prefix, segments);
+        }
+    }
+
+    /**
+     * Key of a cached path.
+     */
+    private static final class PathKey {
+        private final DeviceId src;
+        private final DeviceId dst;
+        private final Srv6PathConstraints constraints;
+
+        private PathKey(DeviceId src, DeviceId dst,
+                        Srv6PathConstraints constraints) {
+            this.src = src;
+            this.dst = dst;
+            this.constraints = constraints;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PathKey)) {
+                return false;
+            }
+            final PathKey other = (PathKey) o;
+            return src.equals(other.src) && dst.equals(other.dst) &&
+                    constraints.equals(other.constraints);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(src, dst, constraints);
+        }
+    }
+
+    /**
+     * Path computed on a given topology version, null if none.
+     */
+    private static final class CachedPath {
+        private final long version;
+        private final List<DeviceId> path;
+
+        private CachedPath(long version, List<DeviceId> path) {
+            this.version = version;
+            this.path = path;
+        }
+    }
+}
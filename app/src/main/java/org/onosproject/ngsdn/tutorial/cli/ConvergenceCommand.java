@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ngsdn.tutorial.ConvergenceTracer;
+
+/**
+ * Convergence Command
+ */
+@Service
+@Command(scope = "onos", name = "ngsdn-convergence",
+         description = "Prints the slowest recent convergences from event " +
+                 "to flow rules and groups confirmed by devices")
+public class ConvergenceCommand extends AbstractShellCommand {
+
+    private static final int DEFAULT_COUNT = 10;
+
+    @Argument(index = 0, name = "count",
+              description = "Number of convergences to print (default 10)",
+              required = false, multiValued = false)
+    int count = DEFAULT_COUNT;
+
+    @Override
+    protected void doExecute() {
+        ConvergenceTracer tracer = get(ConvergenceTracer.class);
+
+        print("pending=%d", tracer.pendingCount());
+        tracer.slowestTraces(count).forEach(t -> print(
+                "id=%d, total=%dus%s, queueWait=%dus, compute=%dus, " +
+                        "groupWait=%dus, flowInstall=%dus, event=%s",
+                t.id(), t.totalMicros(), t.timedOut() ? " (timed out)" : "",
+                t.queueWaitMicros(), t.computeMicros(), t.groupWaitMicros(),
+                t.flowInstallMicros(), t.event()));
+    }
+
+}
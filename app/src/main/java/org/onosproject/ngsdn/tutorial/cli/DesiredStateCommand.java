@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.cli.net.DeviceIdCompleter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.DesiredStateStore;
+import org.onosproject.ngsdn.tutorial.common.DeviceDesiredState;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Desired State Command
+ */
+@Service
+@Command(scope = "onos", name = "ngsdn-desired-state",
+         description = "Prints the desired state of devices, as recorded " +
+                 "in the cluster-wide store by their master")
+public class DesiredStateCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "uri", description = "Device ID",
+              required = false, multiValued = false)
+    @Completion(DeviceIdCompleter.class)
+    String uri = null;
+
+    @Option(name = "-v", aliases = "--verbose",
+            description = "Print groups and flow rules",
+            required = false, multiValued = false)
+    boolean verbose = false;
+
+    @Override
+    protected void doExecute() {
+        DesiredStateStore store = get(DesiredStateStore.class);
+
+        Collection<DeviceId> deviceIds = uri != null
+                ? Collections.singleton(DeviceId.deviceId(uri))
+                : store.deviceIds();
+
+        if (deviceIds.isEmpty()) {
+            print("No desired state recorded");
+            return;
+        }
+        for (DeviceId deviceId : deviceIds) {
+            DeviceDesiredState state = store.get(deviceId);
+            print("deviceId=%s, groups=%d, flowRules=%d", deviceId,
+                  state.groups().size(), state.flowRules().size());
+            if (!verbose) {
+                continue;
+            }
+            state.groups().forEach(g -> print(
+                    "    group: id=%s, type=%s, buckets=%d",
+                    g.givenGroupId(), g.type(),
+                    g.buckets().buckets().size()));
+            state.flowRules().forEach(r -> print(
+                    "    flow: id=%s, table=%s, priority=%d, selector=%s, treatment=%s",
+                    r.id(), r.table(), r.priority(), r.selector().criteria(),
+                    r.treatment().allInstructions()));
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+
+/**
+ * Metrics Command
+ */
+@Service
+@Command(scope = "onos", name = "ngsdn-metrics",
+         description = "Prints latency histograms and counters of the app")
+public class MetricsCommand extends AbstractShellCommand {
+
+    @Option(name = "-r", aliases = "--reset",
+            description = "Reset all metrics after printing them",
+            required = false, multiValued = false)
+    boolean reset = false;
+
+    @Override
+    protected void doExecute() {
+        print("Latencies (us):");
+        AppMetrics.latencies().forEach((name, h) -> print(
+                "  %s: count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d",
+                name, h.count(), h.meanMicros(), h.percentileMicros(50),
+                h.percentileMicros(90), h.percentileMicros(99),
+                h.maxMicros()));
+        print("Counters:");
+        AppMetrics.counters().forEach((name, value) -> print(
+                "  %s: %d", name, value));
+
+        if (reset) {
+            AppMetrics.reset();
+        }
+    }
+
+}
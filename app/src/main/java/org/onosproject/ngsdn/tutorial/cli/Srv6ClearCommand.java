@@ -18,6 +18,7 @@ package org.onosproject.ngsdn.tutorial.cli;
 import org.apache.karaf.shell.api.action.Argument;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.cli.net.DeviceIdCompleter;
@@ -26,6 +27,11 @@ import org.onosproject.net.DeviceId;
 import org.onosproject.net.device.DeviceService;
 import org.onosproject.ngsdn.tutorial.Srv6Component;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * SRv6 Transit Clear Command
  */
@@ -39,6 +45,12 @@ public class Srv6ClearCommand extends AbstractShellCommand {
     @Completion(DeviceIdCompleter.class)
     String uri = null;
 
+    @Option(name = "-t", aliases = "--timeout",
+            description = "Seconds to wait for the device to acknowledge " +
+                    "the change (0 to return immediately)",
+            required = false, multiValued = false)
+    int timeout = 5;
+
     @Override
     protected void doExecute() {
         DeviceService deviceService = get(DeviceService.class);
@@ -49,7 +61,23 @@ public class Srv6ClearCommand extends AbstractShellCommand {
             print("Device \"%s\" is not found", uri);
             return;
         }
-        app.clearSrv6InsertRules(device.id());
+        await(app.clearSrv6InsertRulesAsync(device.id()));
+    }
+
+    private void await(CompletableFuture<Integer> future) {
+        if (timeout <= 0) {
+            return;
+        }
+        try {
+            print("Done: %d policies changed",
+                  future.get(timeout, TimeUnit.SECONDS));
+        } catch (ExecutionException e) {
+            print("Failed: %s", e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            print("Not acknowledged by the device after %d seconds", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
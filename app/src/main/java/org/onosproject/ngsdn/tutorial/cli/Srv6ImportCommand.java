@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.apache.karaf.shell.support.completers.FileCompleter;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.Srv6Component;
+import org.onosproject.ngsdn.tutorial.common.Srv6ImportReport;
+import org.onosproject.ngsdn.tutorial.common.Srv6Policy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SRv6 Policy Import Command
+ */
+@Service
+@Command(scope = "onos", name = "srv6-import",
+         description = "Imports SRv6 transit policies from a file, one per line: " +
+                 "<device ID> <IPv6 prefix>[/<prefix length>] <segment> <segment> ...")
+public class Srv6ImportCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "file", description = "Path of the policy file",
+              required = true, multiValued = false)
+    @Completion(FileCompleter.class)
+    String file = null;
+
+    @Option(name = "-r", aliases = "--replace",
+            description = "Replace all policies of the devices found in the file",
+            required = false, multiValued = false)
+    boolean replace = false;
+
+    @Override
+    protected void doExecute() {
+        Srv6Component app = get(Srv6Component.class);
+
+        List<Srv6Policy> policies = new ArrayList<>();
+        int lineNumber = 0;
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(
+                Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    policies.add(parsePolicy(line));
+                } catch (IllegalArgumentException e) {
+                    print("Line %d: %s", lineNumber, e.getMessage());
+                    malformed++;
+                }
+            }
+        } catch (IOException e) {
+            print("Unable to read \"%s\": %s", file, e.getMessage());
+            return;
+        }
+
+        Srv6ImportReport report = app.importPolicies(policies, replace);
+        report.failures().forEach(f -> print("Failed: %s", f));
+        print("Imported %d policies: %d applied (%d changed), %d duplicates, " +
+                      "%d failed, %d malformed lines",
+              report.total(), report.applied(), report.changed(),
+              report.duplicates(), report.failures().size(), malformed);
+    }
+
+    private static Srv6Policy parsePolicy(String line) {
+        String[] fields = line.split("\\s+");
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("Expected device ID, prefix and segments");
+        }
+        DeviceId deviceId = DeviceId.deviceId(fields[0]);
+        Ip6Prefix prefix = fields[1].contains("/")
+                ? Ip6Prefix.valueOf(fields[1])
+                : Ip6Prefix.valueOf(Ip6Address.valueOf(fields[1]), Ip6Address.BIT_LENGTH);
+        List<Ip6Address> segments = Arrays.stream(fields, 2, fields.length)
+                .map(Ip6Address::valueOf)
+                .collect(Collectors.toList());
+        return new Srv6Policy(deviceId, prefix, segments);
+    }
+
+}
@@ -18,6 +18,7 @@ package org.onosproject.ngsdn.tutorial.cli;
 import org.apache.karaf.shell.api.action.Argument;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.onlab.packet.Ip6Address;
 import org.onlab.packet.IpAddress;
@@ -29,6 +30,10 @@ import org.onosproject.net.device.DeviceService;
 import org.onosproject.ngsdn.tutorial.Srv6Component;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +55,12 @@ public class Srv6InsertCommand extends AbstractShellCommand {
     @Completion(Srv6SidCompleter.class)
     List<String> segments = null;
 
+    @Option(name = "-t", aliases = "--timeout",
+            description = "Seconds to wait for the device to acknowledge " +
+                    "the change (0 to return immediately)",
+            required = false, multiValued = false)
+    int timeout = 5;
+
     @Override
     protected void doExecute() {
         DeviceService deviceService = get(DeviceService.class);
@@ -73,8 +84,23 @@ public class Srv6InsertCommand extends AbstractShellCommand {
                 uri, sids.stream()
                          .map(IpAddress::toString)
                          .collect(Collectors.joining(", ")));
-        app.insertSrv6InsertRule(device.id(), destIp, 128, sids);
+        await(app.insertSrv6InsertRuleAsync(device.id(), destIp, 128, sids));
+    }
 
+    private void await(CompletableFuture<Integer> future) {
+        if (timeout <= 0) {
+            return;
+        }
+        try {
+            print("Done: %d policies changed",
+                  future.get(timeout, TimeUnit.SECONDS));
+        } catch (ExecutionException e) {
+            print("Failed: %s", e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            print("Not acknowledged by the device after %d seconds", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onlab.packet.IpAddress;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.cli.net.DeviceIdCompleter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.Srv6PathComponent;
+import org.onosproject.ngsdn.tutorial.common.Srv6ImportReport;
+import org.onosproject.ngsdn.tutorial.common.Srv6PathConstraints;
+import org.onosproject.ngsdn.tutorial.common.Srv6PathRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SRv6 Path Computation Command
+ */
+@Service
+@Command(scope = "onos", name = "srv6-path",
+         description = "Computes the SRv6 segment list from a leaf to a host " +
+                 "based on the topology, and optionally installs the policy")
+public class Srv6PathCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "uri", description = "Source leaf device ID",
+              required = true, multiValued = false)
+    @Completion(DeviceIdCompleter.class)
+    String uri = null;
+
+    @Argument(index = 1, name = "destination", description = "Destination host IPv6 address",
+              required = true, multiValued = false)
+    String destination = null;
+
+    @Option(name = "-a", aliases = "--avoid",
+            description = "Device ID that must not be traversed",
+            required = false, multiValued = true)
+    @Completion(DeviceIdCompleter.class)
+    List<String> avoid = null;
+
+    @Option(name = "-l", aliases = "--load-aware",
+            description = "Prefer the shortest path used by the fewest policies",
+            required = false, multiValued = false)
+    boolean loadAware = false;
+
+    @Option(name = "-m", aliases = "--max-hops",
+            description = "Maximum number of hops",
+            required = false, multiValued = false)
+    int maxHops = 0;
+
+    @Option(name = "-i", aliases = "--install",
+            description = "Install the policy and keep it updated on link changes",
+            required = false, multiValued = false)
+    boolean install = false;
+
+    @Option(name = "-r", aliases = "--remove",
+            description = "Remove a policy previously installed with this command",
+            required = false, multiValued = false)
+    boolean remove = false;
+
+    @Override
+    protected void doExecute() {
+        Srv6PathComponent app = get(Srv6PathComponent.class);
+
+        DeviceId srcLeaf = DeviceId.deviceId(uri);
+        Ip6Prefix prefix = Ip6Prefix.valueOf(
+                Ip6Address.valueOf(destination), Ip6Address.BIT_LENGTH);
+
+        if (remove) {
+            if (!app.removePolicy(srcLeaf, prefix)) {
+                print("No policy for %s on %s", prefix, srcLeaf);
+            }
+            return;
+        }
+
+        Srv6PathConstraints.Builder constraints = Srv6PathConstraints.builder()
+                .loadAware(loadAware)
+                .maxHops(maxHops);
+        if (avoid != null) {
+            avoid.forEach(id -> constraints.avoid(DeviceId.deviceId(id)));
+        }
+        Srv6PathRequest request = new Srv6PathRequest(srcLeaf, prefix, constraints.build());
+
+        if (install) {
+            Srv6ImportReport report = app.installPolicies(Collections.singleton(request));
+            report.failures().forEach(f -> print("Failed: %s", f));
+            if (report.failures().isEmpty()) {
+                print("Installed policy for %s on %s", prefix, srcLeaf);
+            }
+            return;
+        }
+
+        try {
+            print("%s", app.computeSegments(request).stream()
+                    .map(IpAddress::toString)
+                    .collect(Collectors.joining(" ")));
+        } catch (IllegalStateException e) {
+            print("%s", e.getMessage());
+        }
+    }
+
+}
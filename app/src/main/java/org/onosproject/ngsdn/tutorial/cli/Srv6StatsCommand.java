@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Argument;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.cli.net.DeviceIdCompleter;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.Srv6Component;
+import org.onosproject.ngsdn.tutorial.common.Srv6TrafficStats;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * SRv6 Traffic Statistics Command
+ */
+@Service
+@Command(scope = "onos", name = "srv6-stats",
+         description = "Prints the SRv6 policies (or local SIDs) with the " +
+                 "highest throughput, from the SRv6 table counters")
+public class Srv6StatsCommand extends AbstractShellCommand {
+
+    @Argument(index = 0, name = "uri", description = "Device ID",
+              required = false, multiValued = false)
+    @Completion(DeviceIdCompleter.class)
+    String uri = null;
+
+    @Option(name = "-n", aliases = "--top",
+            description = "Number of entries to print",
+            required = false, multiValued = false)
+    int top = 10;
+
+    @Option(name = "-s", aliases = "--sids",
+            description = "Print local SIDs instead of transit policies",
+            required = false, multiValued = false)
+    boolean sids = false;
+
+    @Override
+    protected void doExecute() {
+        Srv6Component app = get(Srv6Component.class);
+
+        DeviceId deviceId = uri != null ? DeviceId.deviceId(uri) : null;
+        Srv6TrafficStats.Type type = sids
+                ? Srv6TrafficStats.Type.SID : Srv6TrafficStats.Type.POLICY;
+
+        List<Srv6TrafficStats> stats = app.getTrafficStats(type).stream()
+                .filter(s -> deviceId == null || s.deviceId().equals(deviceId))
+                .sorted(Comparator.comparingDouble(Srv6TrafficStats::byteRate)
+                                .reversed())
+                .limit(top)
+                .collect(Collectors.toList());
+
+        if (stats.isEmpty()) {
+            print("No SRv6 %s counters", sids ? "SID" : "policy");
+            return;
+        }
+        stats.forEach(s -> print(
+                "deviceId=%s, prefix=%s, pps=%.1f, bps=%.1f, packets=%d, bytes=%d",
+                s.deviceId(), s.prefix(), s.packetRate(), s.byteRate() * 8,
+                s.packets(), s.bytes()));
+    }
+
+}
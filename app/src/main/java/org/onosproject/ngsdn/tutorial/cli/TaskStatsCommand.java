@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.cli;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ngsdn.tutorial.MainComponent;
+import org.onosproject.ngsdn.tutorial.common.DeviceTaskCoalescer;
+import org.onosproject.ngsdn.tutorial.common.LatencyHistogram;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Task Statistics Command
+ */
+@Service
+@Command(scope = "onos", name = "ngsdn-task-stats",
+         description = "Prints statistics of the app configuration task queue")
+public class TaskStatsCommand extends AbstractShellCommand {
+
+    @Override
+    protected void doExecute() {
+        MainComponent app = get(MainComponent.class);
+        DeviceTaskCoalescer coalescer = app.getTaskCoalescer();
+        PriorityTaskExecutor executor = app.getTaskExecutor();
+
+        print("queueDepth=%d, capacity=%d, evicted=%d, rejected=%d",
+              executor.queueSize(), executor.capacity(),
+              executor.evictedCount(), executor.rejectedCount());
+        print("pending=%d, windowMs=%d, submitted=%d, coalesced=%d, " +
+                      "executed=%d, coalesceRatio=%.2f",
+              coalescer.pendingCount(), coalescer.windowMillis(),
+              coalescer.submittedCount(), coalescer.coalescedCount(),
+              coalescer.executedCount(), coalescer.coalesceRatio());
+
+        print("Queue wait (us):");
+        Map<String, LatencyHistogram> queueWait =
+                new TreeMap<>(executor.queueWaitByTaskType());
+        queueWait.forEach((taskType, h) -> print(
+                "  %s: count=%d, p50=%d, p90=%d, p99=%d, max=%d",
+                taskType, h.count(), h.percentileMicros(50),
+                h.percentileMicros(90), h.percentileMicros(99),
+                h.maxMicros()));
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Registry of the app metrics, i.e. latency histograms and counters, keyed by
+ * name.
+ * <p>
+ * Metrics are created on first access and kept for the lifetime of the
+ * bundle. The registry is static so that it can be used also by driver
+ * behaviours, such as the pipeline interpreter, which are not OSGi components.
+ */
+public final class AppMetrics {
+
+    /**
+     * Counter of flow rules submitted to the flow rule service by the app.
+     */
+    public static final String FLOW_RULES_INSTALLED = "flow-rules.installed";
+
+    /**
+     * Counter of groups submitted to the group service by the app.
+     */
+    public static final String GROUPS_INSTALLED = "groups.installed";
+
+    private static final String EVENTS_SUFFIX = ".events";
+    private static final String LATENCY_SUFFIX = ".latency";
+
+    private static final Map<String, LatencyHistogram> LATENCIES =
+            Maps.newConcurrentMap();
+    private static final Map<String, LongAdder> COUNTERS =
+            Maps.newConcurrentMap();
+
+    private AppMetrics() {
+        // Hide constructor.
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it if it
+     * does not exist.
+     *
+     * @param name metric name
+     * @return latency histogram
+     */
+    public static LatencyHistogram latency(String name) {
+        return LATENCIES.computeIfAbsent(
+                checkNotNull(name), n -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if it does not
+     * exist.
+     *
+     * @param name metric name
+     * @return counter
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(checkNotNull(name), n -> new LongAdder());
+    }
+
+    /**
+     * Counts an event with the given name and returns a task which, once
+     * executed, records the latency from the event to the completion of the
+     * given task, i.e. when the corresponding rules have been submitted.
+     * <p>
+     * The event count and latency are recorded as {@code <name>.events} and
+     * {@code <name>.latency}.
+     *
+     * @param name event metric name
+     * @param task task processing the event
+     * @return instrumented task
+     */
+    public static Runnable trackEvent(String name, Runnable task) {
+        checkNotNull(task);
+        final long startNanos = System.nanoTime();
+        counter(name + EVENTS_SUFFIX).increment();
+        final LatencyHistogram latency = latency(name + LATENCY_SUFFIX);
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                latency.recordSince(startNanos);
+            }
+        };
+    }
+
+    /**
+     * Returns all latency histograms, sorted by name.
+     *
+     * @return map of metric name to latency histogram
+     */
+    public static SortedMap<String, LatencyHistogram> latencies() {
+        return ImmutableSortedMap.copyOf(LATENCIES);
+    }
+
+    /**
+     * Returns all counters, sorted by name.
+     *
+     * @return map of metric name to counter value
+     */
+    public static SortedMap<String, Long> counters() {
+        final ImmutableSortedMap.Builder<String, Long> builder =
+                ImmutableSortedMap.naturalOrder();
+        COUNTERS.forEach((name, counter) -> builder.put(name, counter.sum()));
+        return builder.build();
+    }
+
+    /**
+     * Resets all metrics.
+     */
+    public static void reset() {
+        LATENCIES.values().forEach(LatencyHistogram::reset);
+        COUNTERS.values().forEach(LongAdder::reset);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.group.GroupDescription;
+
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Key of a group or flow rule in the desired state of a device, i.e. the
+ * device ID and the group ID or flow ID.
+ */
+public final class DesiredEntryKey {
+
+    private final DeviceId deviceId;
+    private final long id;
+
+    private DesiredEntryKey(DeviceId deviceId, long id) {
+        this.deviceId = checkNotNull(deviceId);
+        this.id = id;
+    }
+
+    /**
+     * Returns the key of the given group.
+     *
+     * @param group group with a given group ID
+     * @return key
+     */
+    public static DesiredEntryKey of(GroupDescription group) {
+        checkArgument(group.givenGroupId() != null,
+                      "Group on %s has no group ID", group.deviceId());
+        return new DesiredEntryKey(group.deviceId(), group.givenGroupId());
+    }
+
+    /**
+     * Returns the key of the group with the given ID on the given device.
+     *
+     * @param deviceId device ID
+     * @param groupId  group ID
+     * @return key
+     */
+    public static DesiredEntryKey ofGroup(DeviceId deviceId, int groupId) {
+        return new DesiredEntryKey(deviceId, groupId);
+    }
+
+    /**
+     * Returns the key of the given flow rule.
+     *
+     * @param flowRule flow rule
+     * @return key
+     */
+    public static DesiredEntryKey of(FlowRule flowRule) {
+        return new DesiredEntryKey(flowRule.deviceId(), flowRule.id().value());
+    }
+
+    /**
+     * Returns the device ID.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the group ID or flow ID.
+     *
+     * @return ID
+     */
+    public long id() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DesiredEntryKey)) {
+            return false;
+        }
+        final DesiredEntryKey other = (DesiredEntryKey) o;
+        return deviceId.equals(other.deviceId) && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceId, id);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("id", "0x" + Long.toHexString(id))
+                .toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.group.GroupDescription;
+
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Desired state of a device computed by the app, i.e. the groups and flow
+ * rules that should be installed on it, regardless of their current state on
+ * the device.
+ * <p>
+ * Instances are immutable snapshots, read from the store of the desired
+ * state, where groups and flow rules are stored as individual entries.
+ */
+public final class DeviceDesiredState {
+
+    private final DeviceId deviceId;
+    private final List<GroupDescription> groups;
+    private final List<FlowRule> flowRules;
+
+    private DeviceDesiredState(DeviceId deviceId,
+                               Collection<GroupDescription> groups,
+                               Collection<FlowRule> flowRules) {
+        this.deviceId = checkNotNull(deviceId);
+        this.groups = ImmutableList.copyOf(groups);
+        this.flowRules = ImmutableList.copyOf(flowRules);
+    }
+
+    /**
+     * Returns the desired state of the given device with the given groups and
+     * flow rules.
+     *
+     * @param deviceId  device ID
+     * @param groups    groups
+     * @param flowRules flow rules
+     * @return desired state
+     */
+    public static DeviceDesiredState of(DeviceId deviceId,
+                                        Collection<GroupDescription> groups,
+                                        Collection<FlowRule> flowRules) {
+        return new DeviceDesiredState(deviceId, groups, flowRules);
+    }
+
+    /**
+     * Returns the device ID.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the desired groups, sorted by group ID.
+     *
+     * @return immutable list of groups
+     */
+    public List<GroupDescription> groups() {
+        return groups;
+    }
+
+    /**
+     * Returns the desired flow rules, sorted by flow ID.
+     *
+     * @return immutable list of flow rules
+     */
+    public List<FlowRule> flowRules() {
+        return flowRules;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("groups", groups.size())
+                .add("flowRules", flowRules.size())
+                .toString();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.common;
+
+import org.onosproject.net.DeviceId;
+
+/**
+ * Listener of changes of the set of devices mastered by the local ONOS
+ * instance, i.e. of the devices for which it must compute and program the
+ * desired state.
+ * <p>
+ * Devices acquired in a burst (e.g. when another instance fails) are taken
+ * over in parallel, using a dedicated pool of threads: callbacks for
+ * different devices can be invoked concurrently, while callbacks for the same
+ * device are invoked sequentially, one listener after the other. Listeners
+ * should reprogram the device synchronously, preferably in batches, such that
+ * the duration of the take-over can be measured.
+ */
+public interface DeviceHandoffListener {
+
+    /**
+     * Notifies that the local instance became master of the given device,
+     * e.g. because the previous master failed or mastership was rebalanced.
+     * The device is available when this method is called.
+     *
+     * @param deviceId device ID
+     */
+    void acquired(DeviceId deviceId);
+
+    /**
+     * Notifies that the local instance is no longer master of the given
+     * device. State kept for the device should be dropped, as it will be
+     * recomputed by the new master. This method is invoked on the thread
+     * dispatching mastership events, hence it must not block.
+     *
+     * @param deviceId device ID
+     */
+    void released(DeviceId deviceId);
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.Maps;
+import org.onlab.util.SharedScheduledExecutors;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Coalescing stage in front of an executor, which merges tasks submitted for
+ * the same device and task name.
+ * <p>
+ * The first task submitted for a given key is scheduled for execution after a
+ * configurable window. Tasks submitted for the same key before the scheduled
+ * one starts executing replace it, i.e. only the most recent one is executed.
+ * This is meant for tasks that recompute the whole state of a device (e.g.
+ * fabric routes), where running the same task multiple times in a row is
+ * redundant.
+ */
+public final class DeviceTaskCoalescer {
+
+    private final PriorityTaskExecutor executor;
+    private final Map<TaskKey, Runnable> pendingTasks = Maps.newConcurrentMap();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong executedCount = new AtomicLong();
+
+    private volatile long windowMillis;
+
+    /**
+     * Creates a new coalescer.
+     *
+     * @param executor     executor of the coalesced tasks
+     * @param windowMillis coalescing window in milliseconds
+     */
+    public DeviceTaskCoalescer(PriorityTaskExecutor executor, long windowMillis) {
+        this.executor = checkNotNull(executor);
+        setWindowMillis(windowMillis);
+    }
+
+    /**
+     * Sets the coalescing window. A window of 0 still coalesces tasks waiting
+     * in the executor queue.
+     *
+     * @param windowMillis coalescing window in milliseconds
+     */
+    public void setWindowMillis(long windowMillis) {
+        checkArgument(windowMillis >= 0, "Window must be non-negative");
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Returns the coalescing window.
+     *
+     * @return coalescing window in milliseconds
+     */
+    public long windowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Submits a task for the given device, superseding any pending task with
+     * the same device and name.
+     *
+     * @param deviceId device ID
+     * @param taskName task name
+     * @param priority priority of the task once the window expires
+     * @param task     task
+     */
+    public void submit(DeviceId deviceId, String taskName, Priority priority,
+                       Runnable task) {
+        submittedCount.incrementAndGet();
+        final TaskKey key = new TaskKey(deviceId, taskName);
+        if (pendingTasks.put(key, checkNotNull(task)) != null) {
+            // A task for the same key is already scheduled, it will pick up
+            // this one instead.
+            coalescedCount.incrementAndGet();
+            return;
+        }
+        final long window = windowMillis;
+        if (window == 0) {
+            enqueue(key, priority);
+        } else {
+            SharedScheduledExecutors.newTimeout(
+                    () -> enqueue(key, priority), window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void enqueue(TaskKey key, Priority priority) {
+        // If the task is dropped by the executor, forget it, otherwise
+        // following tasks for the same key would be coalesced forever.
+        final Runnable forget = () -> pendingTasks.remove(key);
+        if (!executor.execute(priority, key.taskName,
+                              () -> runPending(key), forget)) {
+            forget.run();
+        }
+    }
+
+    private void runPending(TaskKey key) {
+        final Runnable task = pendingTasks.remove(key);
+        if (task != null) {
+            executedCount.incrementAndGet();
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting for their window to expire or for
+     * the executor to run them.
+     *
+     * @return number of pending tasks
+     */
+    public int pendingCount() {
+        return pendingTasks.size();
+    }
+
+    /**
+     * Returns the number of tasks submitted since creation.
+     *
+     * @return number of submitted tasks
+     */
+    public long submittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * Returns the number of tasks dropped because superseded by a more recent
+     * one.
+     *
+     * @return number of coalesced tasks
+     */
+    public long coalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of tasks executed since creation.
+     *
+     * @return number of executed tasks
+     */
+    public long executedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * Returns the ratio of coalesced over submitted tasks.
+     *
+     * @return coalesce ratio, between 0 and 1
+     */
+    public double coalesceRatio() {
+        final long submitted = submittedCount.get();
+        return submitted == 0 ? 0 : (double) coalescedCount.get() / submitted;
+    }
+
+    private static final class TaskKey {
+        private final DeviceId deviceId;
+        private final String taskName;
+
+        private TaskKey(DeviceId deviceId, String taskName) {
+            this.deviceId = checkNotNull(deviceId);
+            this.taskName = checkNotNull(taskName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TaskKey)) {
+                return false;
+            }
+            final TaskKey other = (TaskKey) o;
+            return deviceId.equals(other.deviceId) &&
+                    taskName.equals(other.taskName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceId, taskName);
+        }
+    }
+}
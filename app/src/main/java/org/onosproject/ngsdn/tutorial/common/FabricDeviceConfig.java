@@ -16,11 +16,15 @@
 
 package org.onosproject.ngsdn.tutorial.common;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
 import org.onlab.packet.Ip6Address;
 import org.onlab.packet.MacAddress;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.config.Config;
 
+import java.util.List;
+
 /**
  * Device configuration object for the IPv6 fabric tutorial application.
  */
@@ -30,12 +34,23 @@ public class FabricDeviceConfig extends Config<DeviceId> {
     private static final String MY_STATION_MAC = "myStationMac";
     private static final String MY_SID = "mySid";
     private static final String IS_SPINE = "isSpine";
+    private static final String SRV6_FUNCTIONS = "srv6Functions";
+    private static final String SID = "sid";
+    private static final String FUNCTION = "function";
+    private static final String NEXT_HOP_MAC = "nextHopMac";
 
     @Override
     public boolean isValid() {
-        return hasOnlyFields(MY_STATION_MAC, MY_SID, IS_SPINE) &&
-                myStationMac() != null &&
-                mySid() != null;
+        if (!hasOnlyFields(MY_STATION_MAC, MY_SID, IS_SPINE, SRV6_FUNCTIONS) ||
+                myStationMac() == null || mySid() == null) {
+            return false;
+        }
+        try {
+            srv6Functions();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -68,4 +83,32 @@ public class FabricDeviceConfig extends Config<DeviceId> {
         String isSpine = get(IS_SPINE, null);
         return isSpine != null && Boolean.valueOf(isSpine);
     }
+
+    /**
+     * Gets the SRv6 functions bound to local SIDs of the switch, other than
+     * the End function of mySid, e.g.:
+     * <pre>
+     * "srv6Functions": [
+     *   {"sid": "3:102:3::", "function": "END_DX6", "nextHopMac": "00:00:00:00:00:20"},
+     *   {"sid": "3:102:4::", "function": "END_DT6"}
+     * ]
+     * </pre>
+     *
+     * @return list of SID functions, empty if not configured
+     */
+    public List<Srv6SidFunction> srv6Functions() {
+        final JsonNode functions = object.path(SRV6_FUNCTIONS);
+        if (!functions.isArray()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Srv6SidFunction> builder = ImmutableList.builder();
+        for (JsonNode node : functions) {
+            final String nextHopMac = node.path(NEXT_HOP_MAC).asText(null);
+            builder.add(new Srv6SidFunction(
+                    Ip6Address.valueOf(node.path(SID).asText(null)),
+                    Srv6SidFunction.Type.valueOf(node.path(FUNCTION).asText(null)),
+                    nextHopMac != null ? MacAddress.valueOf(nextHopMac) : null));
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import org.onlab.packet.Ip6Prefix;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Information needed by other fabric devices to route packets towards a given
+ * device, as computed by the ONOS instance mastering it.
+ */
+public final class FabricRouteInfo {
+
+    private final DeviceId deviceId;
+    private final boolean spine;
+    private final MacAddress myStationMac;
+    private final Set<Ip6Prefix> subnets;
+    private final Set<Ip6Prefix> sidPrefixes;
+
+    /**
+     * Creates new route information.
+     *
+     * @param deviceId     device ID
+     * @param spine        whether the device is a spine
+     * @param myStationMac MAC address of the device
+     * @param subnets      interface subnets of the device, empty for spines
+     * @param sidPrefixes  prefixes covering the SIDs of the device
+     */
+    public FabricRouteInfo(DeviceId deviceId, boolean spine,
+                           MacAddress myStationMac, Set<Ip6Prefix> subnets,
+                           Set<Ip6Prefix> sidPrefixes) {
+        this.deviceId = checkNotNull(deviceId);
+        this.spine = spine;
+        this.myStationMac = checkNotNull(myStationMac);
+        this.subnets = ImmutableSet.copyOf(subnets);
+        this.sidPrefixes = ImmutableSet.copyOf(sidPrefixes);
+    }
+
+    /**
+     * Returns the device ID.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns true if the device is a spine.
+     *
+     * @return true if spine, false if leaf
+     */
+    public boolean isSpine() {
+        return spine;
+    }
+
+    /**
+     * Returns the MAC address of the device, used as next hop by its
+     * neighbors.
+     *
+     * @return MAC address
+     */
+    public MacAddress myStationMac() {
+        return myStationMac;
+    }
+
+    /**
+     * Returns the interface subnets of the device.
+     *
+     * @return immutable set of IPv6 prefixes
+     */
+    public Set<Ip6Prefix> subnets() {
+        return subnets;
+    }
+
+    /**
+     * Returns the prefixes to route towards the device to reach its SIDs.
+     *
+     * @return immutable set of IPv6 prefixes
+     */
+    public Set<Ip6Prefix> sidPrefixes() {
+        return sidPrefixes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FabricRouteInfo)) {
+            return false;
+        }
+        final FabricRouteInfo other = (FabricRouteInfo) o;
+        return deviceId.equals(other.deviceId) &&
+                spine == other.spine &&
+                myStationMac.equals(other.myStationMac) &&
+                subnets.equals(other.subnets) &&
+                sidPrefixes.equals(other.sidPrefixes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceId, spine, myStationMac, subnets, sidPrefixes);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("spine", spine)
+                .add("myStationMac", myStationMac)
+                .add("subnets", subnets)
+                .add("sidPrefixes", sidPrefixes)
+                .toString();
+    }
+}
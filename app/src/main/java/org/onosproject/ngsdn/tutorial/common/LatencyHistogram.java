@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with bounded relative error.
+ * <p>
+ * Similarly to HdrHistogram, values (in microseconds) are recorded in
+ * log-linear buckets: each power of two is split in {@value #SUB_BUCKETS}
+ * linear sub-buckets, which bounds the error of reported percentiles to
+ * 1/{@value #SUB_BUCKETS} of the value, using constant memory.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS map to their own bucket, then one group of
+    // SUB_BUCKETS buckets for each remaining power of two of a long.
+    private static final int BUCKET_COUNT =
+            SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records the given latency.
+     *
+     * @param value latency
+     * @param unit  time unit of value
+     */
+    public void record(long value, TimeUnit unit) {
+        recordMicros(unit.toMicros(value));
+    }
+
+    /**
+     * Records the latency elapsed since the given {@link System#nanoTime()}.
+     *
+     * @param startNanos start time in nanoseconds
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordMicros(long micros) {
+        final long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(value);
+        maxMicros.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return count
+     */
+    public long count() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the mean of recorded values.
+     *
+     * @return mean in microseconds
+     */
+    public double meanMicros() {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalMicros.get() / count;
+    }
+
+    /**
+     * Returns the maximum recorded value.
+     *
+     * @return max in microseconds
+     */
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the value at the given percentile, i.e. the upper bound of the
+     * bucket where the percentile falls, capped to the max recorded value.
+     *
+     * @param percentile percentile, between 0 and 100
+     * @return value in microseconds, 0 if no value was recorded
+     */
+    public long percentileMicros(double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(
+                Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Position of the highest bit, >= SUB_BUCKET_BITS.
+        final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS
+                + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int magnitude = (index - SUB_BUCKETS) / SUB_BUCKETS
+                + SUB_BUCKET_BITS;
+        final int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final long lower = ((long) (SUB_BUCKETS + subBucket)) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
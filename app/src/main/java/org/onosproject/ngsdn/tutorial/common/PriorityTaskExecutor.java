@@ -0,0 +1,423 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Single-thread executor with a bounded, priority-ordered queue.
+ * <p>
+ * Tasks are executed in order of {@link Priority}, and in submission order
+ * within the same priority. When the queue is full:
+ * <ul>
+ * <li>if the new task has higher priority than the lowest-priority queued
+ * task, the latter is evicted to make room for the new one;</li>
+ * <li>otherwise the submitting thread is blocked up to the configured offer
+ * timeout, waiting for the worker to free some space (backpressure);</li>
+ * <li>if the queue is still full after the timeout, the new task is
+ * rejected.</li>
+ * </ul>
+ * Evicted and rejected tasks are dropped and counted, submitters that can't
+ * afford to lose a task should pass an eviction callback and check the
+ * returned value. The time spent in queue by each task is recorded per task
+ * type, also in {@link AppMetrics}.
+ * <p>
+ * Blocking submitters when the queue is full is intended: it slows down the
+ * producers of tasks, e.g. ONOS event dispatch threads, until the worker
+ * catches up. The offer timeout bounds how long a producer can be blocked.
+ */
+public final class PriorityTaskExecutor extends AbstractExecutorService {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(PriorityTaskExecutor.class);
+
+    private static final String DEFAULT_TASK_TYPE = "default";
+    private static final String QUEUE_WAIT_METRIC_PREFIX = "task.queue-wait.";
+
+    /**
+     * Priority of tasks, from the most to the least urgent.
+     */
+    public enum Priority {
+        /**
+         * Tasks repairing forwarding state after a failure.
+         */
+        REPAIR,
+        /**
+         * Tasks reacting to topology or device changes.
+         */
+        NORMAL,
+        /**
+         * Bulk provisioning tasks, e.g. host setup or initial setup.
+         */
+        BULK
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final TreeSet<QueuedTask> queue = new TreeSet<>();
+    private final Thread worker;
+
+    private final Map<String, LatencyHistogram> queueWait = Maps.newConcurrentMap();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private int capacity;
+    private long offerTimeoutMillis;
+    private boolean shutdown = false;
+
+    /**
+     * Creates a new executor and starts its worker thread.
+     *
+     * @param capacity           maximum number of queued tasks
+     * @param offerTimeoutMillis maximum time a submitter waits when the queue
+     *                           is full
+     * @param threadFactory      factory of the worker thread
+     */
+    public PriorityTaskExecutor(int capacity, long offerTimeoutMillis,
+                                ThreadFactory threadFactory) {
+        setCapacity(capacity);
+        setOfferTimeoutMillis(offerTimeoutMillis);
+        this.worker = threadFactory.newThread(this::runWorker);
+        this.worker.start();
+    }
+
+    /**
+     * Sets the maximum number of queued tasks. Tasks already queued beyond the
+     * new capacity are not dropped.
+     *
+     * @param capacity queue capacity
+     */
+    public void setCapacity(int capacity) {
+        checkArgument(capacity > 0, "Capacity must be positive");
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum time a submitter is blocked when the queue is full.
+     *
+     * @param offerTimeoutMillis timeout in milliseconds
+     */
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        checkArgument(offerTimeoutMillis >= 0, "Timeout must be non-negative");
+        lock.lock();
+        try {
+            this.offerTimeoutMillis = offerTimeoutMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Executes the given task with {@link Priority#NORMAL} priority.
+     *
+     * @param task task
+     * @throws RejectedExecutionException if the queue is full or the executor
+     *                                    is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (!execute(Priority.NORMAL, DEFAULT_TASK_TYPE, task)) {
+            throw new RejectedExecutionException(
+                    isShutdown() ? "Executor is shut down" : "Task queue is full");
+        }
+    }
+
+    /**
+     * Queues the given task for execution, blocking the caller if the queue is
+     * full and no lower-priority task can be evicted.
+     *
+     * @param priority task priority
+     * @param taskType task type, used to aggregate queue wait statistics
+     * @param task     task
+     * @return true if the task was queued, false if rejected
+     */
+    public boolean execute(Priority priority, String taskType, Runnable task) {
+        return execute(priority, taskType, task, null);
+    }
+
+    /**
+     * Same as {@link #execute(Priority, String, Runnable)}, but runs the given
+     * callback if the task is later evicted from the queue. The callback is
+     * not invoked when this method returns false.
+     *
+     * @param priority task priority
+     * @param taskType task type, used to aggregate queue wait statistics
+     * @param task     task
+     * @param onEvict  callback invoked if the task is evicted, or null
+     * @return true if the task was queued, false if rejected
+     */
+    public boolean execute(Priority priority, String taskType, Runnable task,
+                           Runnable onEvict) {
+        final QueuedTask queued = new QueuedTask(
+                checkNotNull(priority), checkNotNull(taskType),
+                checkNotNull(task), onEvict, sequence.getAndIncrement());
+        QueuedTask evicted = null;
+        lock.lock();
+        try {
+            if (shutdown) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            if (queue.size() >= capacity) {
+                final QueuedTask lowest = queue.last();
+                if (lowest.priority.compareTo(priority) > 0) {
+                    queue.pollLast();
+                    evicted = lowest;
+                } else if (!awaitNotFull()) {
+                    rejectedCount.incrementAndGet();
+                    log.warn("Task queue full, rejecting {} task {}",
+                             priority, taskType);
+                    return false;
+                }
+            }
+            queue.add(queued);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            evictedCount.incrementAndGet();
+            log.warn("Task queue full, evicted {} task {} in favor of {} task {}",
+                     evicted.priority, evicted.taskType, priority, taskType);
+            if (evicted.onEvict != null) {
+                evicted.onEvict.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the queue to have space, unless called by the worker itself,
+     * which would deadlock. Must be called while holding the lock.
+     *
+     * @return true if there is space in the queue, false otherwise
+     */
+    private boolean awaitNotFull() {
+        if (Thread.currentThread() == worker) {
+            return false;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+        try {
+            while (queue.size() >= capacity && !shutdown) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !shutdown;
+    }
+
+    private void runWorker() {
+        while (true) {
+            final QueuedTask task;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !shutdown) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    // Shutdown and no more tasks.
+                    return;
+                }
+                task = queue.pollFirst();
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            queueWaitHistogram(task.taskType).recordSince(task.enqueueNanos);
+            try {
+                task.task.run();
+            } catch (Exception e) {
+                log.error("Exception while executing task {}", task.taskType, e);
+            }
+        }
+    }
+
+    private LatencyHistogram queueWaitHistogram(String taskType) {
+        return queueWait.computeIfAbsent(
+                taskType, t -> AppMetrics.latency(QUEUE_WAIT_METRIC_PREFIX + t));
+    }
+
+    /**
+     * Returns the number of queued tasks.
+     *
+     * @return queue size
+     */
+    public int queueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the queue capacity.
+     *
+     * @return capacity
+     */
+    public int capacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued tasks dropped in favor of higher-priority
+     * ones.
+     *
+     * @return number of evicted tasks
+     */
+    public long evictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the number of tasks rejected because the queue was full.
+     *
+     * @return number of rejected tasks
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Returns the queue wait histograms, keyed by task type.
+     *
+     * @return map of task type to queue wait histogram
+     */
+    public Map<String, LatencyHistogram> queueWaitByTaskType() {
+        return ImmutableMap.copyOf(queueWait);
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> pending = Lists.newArrayList();
+        lock.lock();
+        try {
+            queue.forEach(t -> pending.add(t.task));
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        shutdown();
+        worker.interrupt();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isShutdown() && !worker.isAlive();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        worker.join(Math.max(1, unit.toMillis(timeout)));
+        return !worker.isAlive();
+    }
+
+    private static final class QueuedTask implements Comparable<QueuedTask> {
+        private final Priority priority;
+        private final String taskType;
+        private final Runnable task;
+        private final Runnable onEvict;
+        private final long seq;
+        private final long enqueueNanos = System.nanoTime();
+
+        private QueuedTask(Priority priority, String taskType,
+                           Runnable task, Runnable onEvict, long seq) {
+            this.priority = priority;
+            this.taskType = taskType;
+            this.task = task;
+            this.onEvict = onEvict;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            final int cmp = priority.compareTo(other.priority);
+            return cmp != 0 ? cmp : Long.compare(seq, other.seq);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof QueuedTask && seq == ((QueuedTask) o).seq;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(seq);
+        }
+    }
+}
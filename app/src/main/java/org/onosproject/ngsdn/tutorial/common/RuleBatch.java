@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.group.GroupDescription;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Groups and flow rules collected to be written to a device in one go, e.g.
+ * when taking over a device, instead of one group (and its dependent flow
+ * rules) at a time.
+ * <p>
+ * This class is not thread safe, it is meant to be filled by a single task.
+ */
+public final class RuleBatch {
+
+    private final List<GroupDescription> groups = Lists.newArrayList();
+    private final List<FlowRule> flowRules = Lists.newArrayList();
+
+    /**
+     * Adds a group to the batch.
+     *
+     * @param group group description
+     */
+    public void addGroup(GroupDescription group) {
+        groups.add(group);
+    }
+
+    /**
+     * Adds flow rules to the batch. Flow rules can depend on groups of the
+     * same batch, as groups are written first.
+     *
+     * @param rules flow rules
+     */
+    public void addFlowRules(Collection<FlowRule> rules) {
+        flowRules.addAll(rules);
+    }
+
+    /**
+     * Returns the groups of this batch.
+     *
+     * @return immutable list of groups
+     */
+    public List<GroupDescription> groups() {
+        return ImmutableList.copyOf(groups);
+    }
+
+    /**
+     * Returns the flow rules of this batch.
+     *
+     * @return immutable list of flow rules
+     */
+    public List<FlowRule> flowRules() {
+        return ImmutableList.copyOf(flowRules);
+    }
+}
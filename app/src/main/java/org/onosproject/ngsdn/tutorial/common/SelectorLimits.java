@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import org.onosproject.net.pi.model.PiActionProfileId;
+import org.onosproject.net.pi.model.PiPipeconf;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Capacity of an action selector, as found in the P4Info of a pipeconf, i.e.
+ * the total number of members across all groups and the maximum number of
+ * members of a single group.
+ * <p>
+ * Both are set at compile time by the P4 program (see the ECMP_* macros of
+ * main.p4), a value of 0 means that the limit is unknown.
+ */
+public final class SelectorLimits {
+
+    /**
+     * Limits of a selector for which no limit is known.
+     */
+    public static final SelectorLimits UNKNOWN = new SelectorLimits(0, 0);
+
+    private final long size;
+    private final int maxGroupSize;
+
+    /**
+     * Creates new selector limits.
+     *
+     * @param size         total number of members, 0 if unknown
+     * @param maxGroupSize maximum number of members of a group, 0 if unknown
+     */
+    public SelectorLimits(long size, int maxGroupSize) {
+        checkArgument(size >= 0, "Size must be non-negative");
+        checkArgument(maxGroupSize >= 0, "Max group size must be non-negative");
+        this.size = size;
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    /**
+     * Returns the limits of the given action profile in the given pipeconf, or
+     * {@link #UNKNOWN} if the action profile is not defined.
+     *
+     * @param pipeconf        pipeconf
+     * @param actionProfileId action profile ID
+     * @return selector limits
+     */
+    public static SelectorLimits of(PiPipeconf pipeconf,
+                                    PiActionProfileId actionProfileId) {
+        return pipeconf.pipelineModel().actionProfiles(actionProfileId)
+                .map(model -> new SelectorLimits(
+                        Math.max(model.size(), 0), Math.max(model.maxGroupSize(), 0)))
+                .orElse(UNKNOWN);
+    }
+
+    /**
+     * Returns the total number of members across all groups.
+     *
+     * @return size, 0 if unknown
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the maximum number of members of a group.
+     *
+     * @return maximum group size, 0 if unknown
+     */
+    public int maxGroupSize() {
+        return maxGroupSize;
+    }
+
+    /**
+     * Returns the given members, limited to the maximum group size. Members
+     * beyond the limit are dropped, such that callers passing members in a
+     * deterministic order obtain the same group on every device and instance.
+     *
+     * @param members group members
+     * @param <T>     type of members
+     * @return members fitting in a group
+     */
+    public <T> List<T> fit(List<T> members) {
+        if (maxGroupSize == 0 || members.size() <= maxGroupSize) {
+            return members;
+        }
+        return ImmutableList.copyOf(members.subList(0, maxGroupSize));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", size)
+                .add("maxGroupSize", maxGroupSize)
+                .toString();
+    }
+}
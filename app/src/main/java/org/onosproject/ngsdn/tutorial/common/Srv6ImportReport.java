@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+
+import java.util.List;
+
+/**
+ * Summary of a bulk import of SRv6 policies.
+ */
+public final class Srv6ImportReport {
+
+    private final int total;
+    private final int applied;
+    private final int changed;
+    private final int duplicates;
+    private final List<String> failures;
+
+    private Srv6ImportReport(int total, int applied, int changed,
+                             int duplicates, List<String> failures) {
+        this.total = total;
+        this.applied = applied;
+        this.changed = changed;
+        this.duplicates = duplicates;
+        this.failures = ImmutableList.copyOf(failures);
+    }
+
+    /**
+     * Returns the number of policies submitted for import.
+     *
+     * @return number of policies
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * Returns the number of policies successfully applied, including those
+     * that were already installed with the same segment list.
+     *
+     * @return number of applied policies
+     */
+    public int applied() {
+        return applied;
+    }
+
+    /**
+     * Returns the number of applied policies that required a flow rule to be
+     * added or modified.
+     *
+     * @return number of changed policies
+     */
+    public int changed() {
+        return changed;
+    }
+
+    /**
+     * Returns the number of policies ignored because identical to another one
+     * in the same import.
+     *
+     * @return number of duplicates
+     */
+    public int duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns a description of each policy that failed to be applied.
+     *
+     * @return list of failures
+     */
+    public List<String> failures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("total", total)
+                .add("applied", applied)
+                .add("changed", changed)
+                .add("duplicates", duplicates)
+                .add("failed", failures.size())
+                .toString();
+    }
+
+    /**
+     * Returns a new builder of import reports.
+     *
+     * @param total number of policies submitted for import
+     * @return builder
+     */
+    public static Builder builder(int total) {
+        return new Builder(total);
+    }
+
+    /**
+     * Builder of import reports.
+     */
+    public static final class Builder {
+
+        private final int total;
+        private final List<String> failures = Lists.newArrayList();
+        private int applied;
+        private int changed;
+        private int duplicates;
+
+        private Builder(int total) {
+            this.total = total;
+        }
+
+        /**
+         * Records policies successfully applied.
+         *
+         * @param appliedCount number of applied policies
+         * @param changedCount number of applied policies that required a flow
+         *                     rule change
+         * @return this builder
+         */
+        public Builder applied(int appliedCount, int changedCount) {
+            applied += appliedCount;
+            changed += changedCount;
+            return this;
+        }
+
+        /**
+         * Records a policy ignored because identical to another one.
+         *
+         * @return this builder
+         */
+        public Builder duplicate() {
+            duplicates++;
+            return this;
+        }
+
+        /**
+         * Records a policy that failed to be applied.
+         *
+         * @param policy SRv6 policy
+         * @param reason reason of the failure
+         * @return this builder
+         */
+        public Builder failed(Srv6Policy policy, String reason) {
+            return failed(policy.deviceId(), policy.prefix(), reason);
+        }
+
+        /**
+         * Records a policy that failed to be applied.
+         *
+         * @param deviceId device ID of the policy
+         * @param prefix   destination prefix of the policy
+         * @param reason   reason of the failure
+         * @return this builder
+         */
+        public Builder failed(DeviceId deviceId, Ip6Prefix prefix, String reason) {
+            failures.add(deviceId + " " + prefix + ": " + reason);
+            return this;
+        }
+
+        /**
+         * Builds the import report.
+         *
+         * @return import report
+         */
+        public Srv6ImportReport build() {
+            return new Srv6ImportReport(total, applied, changed, duplicates,
+                                        failures);
+        }
+    }
+}
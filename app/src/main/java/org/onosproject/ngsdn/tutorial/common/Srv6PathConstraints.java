@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Constraints of the path computed for an SRv6 policy. Paths always have the
+ * minimum number of hops among those satisfying the constraints.
+ */
+public final class Srv6PathConstraints {
+
+    /**
+     * No constraints, i.e. any shortest path.
+     */
+    public static final Srv6PathConstraints NONE = builder().build();
+
+    private final Set<DeviceId> avoidDevices;
+    private final boolean loadAware;
+    private final int maxHops;
+
+    private Srv6PathConstraints(Set<DeviceId> avoidDevices, boolean loadAware,
+                                int maxHops) {
+        this.avoidDevices = ImmutableSet.copyOf(avoidDevices);
+        this.loadAware = loadAware;
+        this.maxHops = maxHops;
+    }
+
+    /**
+     * Returns the devices that must not be traversed.
+     *
+     * @return set of device IDs
+     */
+    public Set<DeviceId> avoidDevices() {
+        return avoidDevices;
+    }
+
+    /**
+     * Returns true if, among shortest paths, the one traversing devices used
+     * by the fewest policies should be preferred.
+     *
+     * @return true if load-aware
+     */
+    public boolean loadAware() {
+        return loadAware;
+    }
+
+    /**
+     * Returns the maximum number of hops of the path, or 0 if unlimited.
+     *
+     * @return maximum number of hops
+     */
+    public int maxHops() {
+        return maxHops;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Srv6PathConstraints)) {
+            return false;
+        }
+        final Srv6PathConstraints other = (Srv6PathConstraints) o;
+        return loadAware == other.loadAware &&
+                maxHops == other.maxHops &&
+                avoidDevices.equals(other.avoidDevices);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(avoidDevices, loadAware, maxHops);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("avoidDevices", avoidDevices)
+                .add("loadAware", loadAware)
+                .add("maxHops", maxHops)
+                .toString();
+    }
+
+    /**
+     * Returns a new builder of path constraints.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of path constraints.
+     */
+    public static final class Builder {
+
+        private final ImmutableSet.Builder<DeviceId> avoidDevices = ImmutableSet.builder();
+        private boolean loadAware;
+        private int maxHops;
+
+        private Builder() {
+        }
+
+        /**
+         * Excludes the given device from the path.
+         *
+         * @param deviceId device ID
+         * @return this builder
+         */
+        public Builder avoid(DeviceId deviceId) {
+            avoidDevices.add(deviceId);
+            return this;
+        }
+
+        /**
+         * Sets whether to prefer the least loaded among shortest paths.
+         *
+         * @param loadAware true if load-aware
+         * @return this builder
+         */
+        public Builder loadAware(boolean loadAware) {
+            this.loadAware = loadAware;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of hops of the path.
+         *
+         * @param maxHops maximum number of hops, 0 if unlimited
+         * @return this builder
+         */
+        public Builder maxHops(int maxHops) {
+            checkArgument(maxHops >= 0, "Max hops must be non-negative");
+            this.maxHops = maxHops;
+            return this;
+        }
+
+        /**
+         * Builds the path constraints.
+         *
+         * @return path constraints
+         */
+        public Srv6PathConstraints build() {
+            return new Srv6PathConstraints(avoidDevices.build(), loadAware, maxHops);
+        }
+    }
+}
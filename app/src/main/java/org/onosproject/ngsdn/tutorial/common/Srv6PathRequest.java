@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Request of an SRv6 policy whose segment list is computed from the topology,
+ * to steer traffic from a source leaf towards a destination host address.
+ */
+public final class Srv6PathRequest {
+
+    private final DeviceId srcLeaf;
+    private final Ip6Prefix prefix;
+    private final Srv6PathConstraints constraints;
+
+    /**
+     * Creates a new path request.
+     *
+     * @param srcLeaf     leaf where the policy is applied
+     * @param prefix      destination prefix, must be a host (/128) prefix
+     *                    since it is also used as the last segment
+     * @param constraints path constraints
+     */
+    public Srv6PathRequest(DeviceId srcLeaf, Ip6Prefix prefix,
+                           Srv6PathConstraints constraints) {
+        this.srcLeaf = checkNotNull(srcLeaf);
+        this.prefix = checkNotNull(prefix);
+        this.constraints = checkNotNull(constraints);
+        checkArgument(prefix.prefixLength() == Ip6Address.BIT_LENGTH,
+                      "Destination must be a host prefix: %s", prefix);
+    }
+
+    /**
+     * Returns the leaf where the policy is applied.
+     *
+     * @return device ID
+     */
+    public DeviceId srcLeaf() {
+        return srcLeaf;
+    }
+
+    /**
+     * Returns the destination prefix of the policy.
+     *
+     * @return IPv6 prefix
+     */
+    public Ip6Prefix prefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the path constraints.
+     *
+     * @return path constraints
+     */
+    public Srv6PathConstraints constraints() {
+        return constraints;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Srv6PathRequest)) {
+            return false;
+        }
+        final Srv6PathRequest other = (Srv6PathRequest) o;
+        return srcLeaf.equals(other.srcLeaf) &&
+                prefix.equals(other.prefix) &&
+                constraints.equals(other.constraints);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(srcLeaf, prefix, constraints);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("srcLeaf", srcLeaf)
+                .add("prefix", prefix)
+                .add("constraints", constraints)
+                .toString();
+    }
+}
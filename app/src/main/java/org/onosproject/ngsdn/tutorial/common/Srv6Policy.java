@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * SRv6 transit policy, i.e. the list of segments to insert in packets
+ * destined to a given IPv6 prefix, when processed by a given device.
+ */
+public final class Srv6Policy {
+
+    private final DeviceId deviceId;
+    private final Ip6Prefix prefix;
+    private final List<Ip6Address> segments;
+
+    /**
+     * Creates a new SRv6 policy.
+     *
+     * @param deviceId device ID
+     * @param prefix   destination prefix
+     * @param segments segment list, the first one is the first to be visited
+     */
+    public Srv6Policy(DeviceId deviceId, Ip6Prefix prefix,
+                      List<Ip6Address> segments) {
+        this.deviceId = checkNotNull(deviceId);
+        this.prefix = checkNotNull(prefix);
+        this.segments = ImmutableList.copyOf(segments);
+        checkArgument(!this.segments.isEmpty(), "Segment list is empty");
+    }
+
+    /**
+     * Returns the device where the policy is applied.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the destination prefix matched by this policy.
+     *
+     * @return IPv6 prefix
+     */
+    public Ip6Prefix prefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the segment list of this policy.
+     *
+     * @return immutable list of SIDs
+     */
+    public List<Ip6Address> segments() {
+        return segments;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Srv6Policy)) {
+            return false;
+        }
+        final Srv6Policy other = (Srv6Policy) o;
+        return deviceId.equals(other.deviceId) &&
+                prefix.equals(other.prefix) &&
+                segments.equals(other.segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deviceId, prefix, segments);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("deviceId", deviceId)
+                .add("prefix", prefix)
+                .add("segments", segments)
+                .toString();
+    }
+}
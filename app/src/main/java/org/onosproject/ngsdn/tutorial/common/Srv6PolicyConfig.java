@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.Config;
+
+import java.util.List;
+
+/**
+ * Device configuration object declaring the SRv6 transit policies of a
+ * device, e.g.:
+ * <pre>
+ * "srv6Policies": {
+ *   "policies": [
+ *     {"prefix": "2001:2:4::1/128",
+ *      "segments": ["3:201:2::", "3:102:2::", "2001:2:4::1"]}
+ *   ]
+ * }
+ * </pre>
+ */
+public class Srv6PolicyConfig extends Config<DeviceId> {
+
+    public static final String CONFIG_KEY = "srv6Policies";
+    private static final String POLICIES = "policies";
+    private static final String PREFIX = "prefix";
+    private static final String SEGMENTS = "segments";
+
+    @Override
+    public boolean isValid() {
+        if (!hasOnlyFields(POLICIES)) {
+            return false;
+        }
+        try {
+            policies();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the SRv6 transit policies of the device.
+     *
+     * @return list of SRv6 policies, empty if not configured
+     */
+    public List<Srv6Policy> policies() {
+        final JsonNode policies = object.path(POLICIES);
+        if (!policies.isArray()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Srv6Policy> builder = ImmutableList.builder();
+        for (JsonNode node : policies) {
+            final ImmutableList.Builder<Ip6Address> segments = ImmutableList.builder();
+            for (JsonNode segment : node.path(SEGMENTS)) {
+                segments.add(Ip6Address.valueOf(segment.asText()));
+            }
+            builder.add(new Srv6Policy(
+                    subject(),
+                    Ip6Prefix.valueOf(node.path(PREFIX).asText(null)),
+                    segments.build()));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.MacAddress;
+
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * SRv6 function bound to a local SID of a device, in addition to the End
+ * function of the device SID.
+ */
+public final class Srv6SidFunction {
+
+    /**
+     * SRv6 endpoint functions.
+     */
+    public enum Type {
+        /**
+         * Endpoint, i.e. move to the next segment.
+         */
+        END,
+        /**
+         * Endpoint with decapsulation and IPv6 cross-connect to a next hop.
+         */
+        END_DX6,
+        /**
+         * Endpoint with decapsulation and IPv6 table lookup.
+         */
+        END_DT6
+    }
+
+    private final Ip6Address sid;
+    private final Type type;
+    private final MacAddress nextHopMac;
+
+    /**
+     * Creates a new SID function.
+     *
+     * @param sid        local SID
+     * @param type       function type
+     * @param nextHopMac MAC address of the next hop, required only for
+     *                   {@link Type#END_DX6}, null otherwise
+     */
+    public Srv6SidFunction(Ip6Address sid, Type type, MacAddress nextHopMac) {
+        this.sid = checkNotNull(sid);
+        this.type = checkNotNull(type);
+        this.nextHopMac = nextHopMac;
+        checkArgument((type == Type.END_DX6) == (nextHopMac != null),
+                      "Next hop MAC is required by, and only by, END_DX6");
+    }
+
+    /**
+     * Returns the local SID.
+     *
+     * @return SID
+     */
+    public Ip6Address sid() {
+        return sid;
+    }
+
+    /**
+     * Returns the function type.
+     *
+     * @return function type
+     */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Returns the MAC address of the next hop for {@link Type#END_DX6}.
+     *
+     * @return MAC address, or null for other functions
+     */
+    public MacAddress nextHopMac() {
+        return nextHopMac;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Srv6SidFunction)) {
+            return false;
+        }
+        final Srv6SidFunction other = (Srv6SidFunction) o;
+        return sid.equals(other.sid) &&
+                type == other.type &&
+                Objects.equals(nextHopMac, other.nextHopMac);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sid, type, nextHopMac);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sid", sid)
+                .add("type", type)
+                .add("nextHopMac", nextHopMac)
+                .omitNullValues()
+                .toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.Lists;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Utility methods to handle SRv6 SIDs and compressed SIDs (uSIDs).
+ * <p>
+ * Compressed SIDs use the F3216 format: a 32-bit locator block followed by
+ * up to 6 16-bit uSIDs, packed in a single IPv6 address (uSID container).
+ * A SID is said to be uSID-shaped when all bits after the first uSID are 0,
+ * e.g. 3:201:2::. Only uSIDs sharing the same locator block can be packed in
+ * the same container, e.g. fcbb:bb00:101:: and fcbb:bb00:201:: (see
+ * mininet/netcfg-usid.json).
+ */
+public final class Srv6Sids {
+
+    public static final int USID_BLOCK_BITS = 32;
+    public static final int USID_BITS = 16;
+    public static final int USID_LOCATOR_BITS = USID_BLOCK_BITS + USID_BITS;
+
+    private static final int BLOCK_BYTES = USID_BLOCK_BITS / Byte.SIZE;
+    private static final int USID_BYTES = USID_BITS / Byte.SIZE;
+    private static final int USIDS_PER_CONTAINER =
+            (Ip6Address.BIT_LENGTH - USID_BLOCK_BITS) / USID_BITS;
+
+    private Srv6Sids() {
+        // Hides constructor.
+    }
+
+    /**
+     * Returns true if the given SID can be used as a uSID, i.e. it has a
+     * non-zero uSID after the locator block and all other bits set to 0.
+     *
+     * @param sid SID
+     * @return true if the SID is uSID-shaped
+     */
+    public static boolean isMicroSid(Ip6Address sid) {
+        final byte[] octets = sid.toOctets();
+        for (int i = BLOCK_BYTES + USID_BYTES; i < octets.length; i++) {
+            if (octets[i] != 0) {
+                return false;
+            }
+        }
+        return octets[BLOCK_BYTES] != 0 || octets[BLOCK_BYTES + 1] != 0;
+    }
+
+    /**
+     * Returns the prefix that should be routed towards the device owning the
+     * given SID. When SIDs are compressed, for uSID-shaped SIDs this is the
+     * 48-bit uSID locator, such that uSID containers carrying other uSIDs
+     * after this one are routed too. Otherwise, it is the SID itself.
+     *
+     * @param sid          SID
+     * @param compressSids whether segment lists are compressed
+     * @return IPv6 prefix
+     */
+    public static Ip6Prefix locatorPrefix(Ip6Address sid, boolean compressSids) {
+        return Ip6Prefix.valueOf(sid, compressSids && isMicroSid(sid)
+                ? USID_LOCATOR_BITS : Ip6Address.BIT_LENGTH);
+    }
+
+    /**
+     * Compresses the given segment list by packing consecutive uSID-shaped
+     * SIDs sharing the same locator block in uSID containers. SIDs that are
+     * not uSID-shaped are left untouched.
+     *
+     * @param segments segment list
+     * @return compressed segment list, possibly the same as the given one
+     */
+    public static List<Ip6Address> compress(List<Ip6Address> segments) {
+        final List<Ip6Address> compressed = Lists.newArrayList();
+        byte[] container = null;
+        int containerSize = 0;
+        for (Ip6Address sid : segments) {
+            final byte[] octets = sid.toOctets();
+            final boolean appendable = container != null
+                    && containerSize < USIDS_PER_CONTAINER
+                    && isMicroSid(sid)
+                    && Arrays.equals(container, 0, BLOCK_BYTES,
+                                     octets, 0, BLOCK_BYTES);
+            if (appendable) {
+                System.arraycopy(octets, BLOCK_BYTES, container,
+                                 BLOCK_BYTES + containerSize * USID_BYTES,
+                                 USID_BYTES);
+                containerSize++;
+                continue;
+            }
+            if (container != null) {
+                compressed.add(Ip6Address.valueOf(container));
+                container = null;
+            }
+            if (isMicroSid(sid)) {
+                // A container with a single uSID is the SID itself.
+                container = octets;
+                containerSize = 1;
+            } else {
+                compressed.add(sid);
+            }
+        }
+        if (container != null) {
+            compressed.add(Ip6Address.valueOf(container));
+        }
+        return compressed;
+    }
+}
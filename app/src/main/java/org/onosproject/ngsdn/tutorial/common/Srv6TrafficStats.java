@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.base.MoreObjects;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Traffic statistics of an SRv6 table entry, either a transit policy or a
+ * local SID, as read from the direct counters of the SRv6 tables.
+ */
+public final class Srv6TrafficStats {
+
+    /**
+     * Kind of SRv6 table entry.
+     */
+    public enum Type {
+        /**
+         * Local SID, in the My SID table.
+         */
+        SID,
+        /**
+         * Transit policy, in the transit table.
+         */
+        POLICY
+    }
+
+    private final Type type;
+    private final DeviceId deviceId;
+    private final Ip6Prefix prefix;
+    private final long packets;
+    private final long bytes;
+    private final double packetRate;
+    private final double byteRate;
+
+    /**
+     * Creates new traffic statistics.
+     *
+     * @param type       kind of table entry
+     * @param deviceId   device ID
+     * @param prefix     prefix matched by the table entry
+     * @param packets    total number of packets
+     * @param bytes      total number of bytes
+     * @param packetRate packets per second since the previous sample
+     * @param byteRate   bytes per second since the previous sample
+     */
+    public Srv6TrafficStats(Type type, DeviceId deviceId, Ip6Prefix prefix,
+                            long packets, long bytes,
+                            double packetRate, double byteRate) {
+        this.type = checkNotNull(type);
+        this.deviceId = checkNotNull(deviceId);
+        this.prefix = checkNotNull(prefix);
+        this.packets = packets;
+        this.bytes = bytes;
+        this.packetRate = packetRate;
+        this.byteRate = byteRate;
+    }
+
+    /**
+     * Returns the kind of table entry.
+     *
+     * @return type
+     */
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Returns the device where the table entry is installed.
+     *
+     * @return device ID
+     */
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Returns the prefix matched by the table entry, i.e. the destination
+     * prefix of a policy, or the SID (or uSID locator) of a local SID.
+     *
+     * @return IPv6 prefix
+     */
+    public Ip6Prefix prefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the number of packets matched since the entry was installed.
+     *
+     * @return packet count
+     */
+    public long packets() {
+        return packets;
+    }
+
+    /**
+     * Returns the number of bytes matched since the entry was installed.
+     *
+     * @return byte count
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the packet rate between the last two counter samples.
+     *
+     * @return packets per second
+     */
+    public double packetRate() {
+        return packetRate;
+    }
+
+    /**
+     * Returns the byte rate between the last two counter samples.
+     *
+     * @return bytes per second
+     */
+    public double byteRate() {
+        return byteRate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("type", type)
+                .add("deviceId", deviceId)
+                .add("prefix", prefix)
+                .add("packets", packets)
+                .add("bytes", bytes)
+                .add("packetRate", packetRate)
+                .add("byteRate", byteRate)
+                .toString();
+    }
+}
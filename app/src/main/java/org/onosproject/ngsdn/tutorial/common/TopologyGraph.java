@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Link;
+import org.onosproject.net.LinkKey;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutable topology graph, updated incrementally with device and link changes,
+ * which publishes immutable {@link TopologySnapshot} instances.
+ * <p>
+ * Writers are serialized by synchronizing on this object. Readers obtain the
+ * latest snapshot with {@link #snapshot()} without any locking
+ * (copy-on-write).
+ */
+public final class TopologyGraph {
+
+    private final Map<DeviceId, Integer> indexes = Maps.newHashMap();
+    private final List<DeviceId> devices = Lists.newArrayList();
+    private final BitSet present = new BitSet();
+    private final Map<LinkKey, Edge> edges = Maps.newHashMap();
+
+    private long version = 0;
+    private volatile TopologySnapshot snapshot = TopologySnapshot.EMPTY;
+
+    /**
+     * Returns the latest published snapshot.
+     *
+     * @return topology snapshot
+     */
+    public TopologySnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds the given device to the graph.
+     *
+     * @param deviceId device ID
+     * @return true if the graph was modified
+     */
+    public synchronized boolean addDevice(DeviceId deviceId) {
+        final int index = intern(deviceId);
+        if (present.get(index)) {
+            return false;
+        }
+        present.set(index);
+        publish();
+        return true;
+    }
+
+    /**
+     * Removes the given device and all links from and to it.
+     *
+     * @param deviceId device ID
+     * @return true if the graph was modified
+     */
+    public synchronized boolean removeDevice(DeviceId deviceId) {
+        final Integer index = indexes.get(deviceId);
+        if (index == null || !present.get(index)) {
+            return false;
+        }
+        present.clear(index);
+        edges.values().removeIf(e -> e.src == index || e.dst == index);
+        publish();
+        return true;
+    }
+
+    /**
+     * Adds or updates the given link.
+     *
+     * @param link link
+     * @return true if the graph was modified
+     */
+    public synchronized boolean addLink(Link link) {
+        final int src = intern(link.src().deviceId());
+        final int dst = intern(link.dst().deviceId());
+        final Edge edge = new Edge(src, dst,
+                                   link.src().port().toLong(),
+                                   link.dst().port().toLong());
+        final Edge previous = edges.put(LinkKey.linkKey(link), edge);
+        if (edge.equals(previous) && present.get(src) && present.get(dst)) {
+            return false;
+        }
+        // A link implies the existence of both devices.
+        present.set(src);
+        present.set(dst);
+        publish();
+        return true;
+    }
+
+    /**
+     * Removes the given link.
+     *
+     * @param link link
+     * @return true if the graph was modified
+     */
+    public synchronized boolean removeLink(Link link) {
+        if (edges.remove(LinkKey.linkKey(link)) == null) {
+            return false;
+        }
+        publish();
+        return true;
+    }
+
+    private int intern(DeviceId deviceId) {
+        return indexes.computeIfAbsent(deviceId, id -> {
+            devices.add(id);
+            return devices.size() - 1;
+        });
+    }
+
+    /**
+     * Builds a new CSR snapshot from the current state and publishes it.
+     */
+    private void publish() {
+        final int n = devices.size();
+        final Edge[] sorted = edges.values().toArray(new Edge[0]);
+        Arrays.sort(sorted, Comparator.<Edge>comparingInt(e -> e.src)
+                .thenComparingInt(e -> e.dst)
+                .thenComparingLong(e -> e.srcPort));
+
+        final int[] offsets = new int[n + 1];
+        final int[] edgeDst = new int[sorted.length];
+        final long[] edgeSrcPort = new long[sorted.length];
+        final long[] edgeDstPort = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            offsets[sorted[i].src + 1]++;
+            edgeDst[i] = sorted[i].dst;
+            edgeSrcPort[i] = sorted[i].srcPort;
+            edgeDstPort[i] = sorted[i].dstPort;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final boolean[] presentArray = new boolean[n];
+        for (int i = present.nextSetBit(0); i >= 0 && i < n;
+             i = present.nextSetBit(i + 1)) {
+            presentArray[i] = true;
+        }
+
+        snapshot = new TopologySnapshot(
+                ++version, devices.toArray(new DeviceId[0]),
+                ImmutableMap.copyOf(indexes), presentArray,
+                offsets, edgeDst, edgeSrcPort, edgeDstPort);
+    }
+
+    private static final class Edge {
+        private final int src;
+        private final int dst;
+        private final long srcPort;
+        private final long dstPort;
+
+        private Edge(int src, int dst, long srcPort, long dstPort) {
+            this.src = src;
+            this.dst = dst;
+            this.srcPort = srcPort;
+            this.dstPort = dstPort;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            final Edge other = (Edge) o;
+            return src == other.src && dst == other.dst &&
+                    srcPort == other.srcPort && dstPort == other.dstPort;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * src + dst) + Long.hashCode(srcPort)) +
+                    Long.hashCode(dstPort);
+        }
+    }
+}
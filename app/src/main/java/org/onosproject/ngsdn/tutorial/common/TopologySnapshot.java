@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.common;
+
+import com.google.common.collect.ImmutableMap;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.PortNumber;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Immutable and compact view of the fabric topology.
+ * <p>
+ * Devices are interned to int indexes, which remain stable across snapshots
+ * produced by the same {@link TopologyGraph}. Egress links are stored in
+ * compressed sparse row (CSR) form: the links of device {@code i} are the edges
+ * in the range {@code [edgeStart(i), edgeEnd(i))}, and each edge is described
+ * by its destination device index and source/destination port numbers.
+ * <p>
+ * Instances are never modified after creation, hence they can be safely shared
+ * between threads without locking.
+ */
+public final class TopologySnapshot {
+
+    static final TopologySnapshot EMPTY = new TopologySnapshot(
+            0, new DeviceId[0], ImmutableMap.of(), new boolean[0],
+            new int[]{0}, new int[0], new long[0], new long[0]);
+
+    private final long version;
+    private final DeviceId[] devices;
+    private final Map<DeviceId, Integer> indexes;
+    private final boolean[] present;
+    private final int[] offsets;
+    private final int[] edgeDst;
+    private final long[] edgeSrcPort;
+    private final long[] edgeDstPort;
+
+    TopologySnapshot(long version, DeviceId[] devices,
+                     Map<DeviceId, Integer> indexes, boolean[] present,
+                     int[] offsets, int[] edgeDst,
+                     long[] edgeSrcPort, long[] edgeDstPort) {
+        this.version = version;
+        this.devices = devices;
+        this.indexes = indexes;
+        this.present = present;
+        this.offsets = offsets;
+        this.edgeDst = edgeDst;
+        this.edgeSrcPort = edgeSrcPort;
+        this.edgeDstPort = edgeDstPort;
+    }
+
+    /**
+     * Returns the version of this snapshot. Versions increase every time the
+     * topology changes.
+     *
+     * @return snapshot version
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of device indexes in this snapshot, including those
+     * of devices no longer present in the topology.
+     *
+     * @return number of device indexes
+     */
+    public int deviceCount() {
+        return devices.length;
+    }
+
+    /**
+     * Returns the total number of unidirectional links.
+     *
+     * @return number of links
+     */
+    public int linkCount() {
+        return edgeDst.length;
+    }
+
+    /**
+     * Returns the index of the given device, or -1 if the device has never
+     * been seen.
+     *
+     * @param deviceId device ID
+     * @return device index or -1
+     */
+    public int indexOf(DeviceId deviceId) {
+        final Integer index = indexes.get(deviceId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the device ID associated to the given index.
+     *
+     * @param index device index
+     * @return device ID
+     */
+    public DeviceId deviceId(int index) {
+        return devices[index];
+    }
+
+    /**
+     * Returns true if the device with the given index is currently part of
+     * the topology.
+     *
+     * @param index device index
+     * @return true if present, false otherwise
+     */
+    public boolean isPresent(int index) {
+        return present[index];
+    }
+
+    /**
+     * Returns the first edge of the given device.
+     *
+     * @param index device index
+     * @return first edge (inclusive)
+     */
+    public int edgeStart(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the edge following the last one of the given device.
+     *
+     * @param index device index
+     * @return last edge (exclusive)
+     */
+    public int edgeEnd(int index) {
+        return offsets[index + 1];
+    }
+
+    /**
+     * Returns the number of egress links of the given device.
+     *
+     * @param index device index
+     * @return out degree
+     */
+    public int degree(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Returns the index of the destination device of the given edge.
+     *
+     * @param edge edge
+     * @return destination device index
+     */
+    public int edgeDst(int edge) {
+        return edgeDst[edge];
+    }
+
+    /**
+     * Returns the egress port on the source device of the given edge.
+     *
+     * @param edge edge
+     * @return source port
+     */
+    public PortNumber edgeSrcPort(int edge) {
+        return PortNumber.portNumber(edgeSrcPort[edge]);
+    }
+
+    /**
+     * Returns the ingress port on the destination device of the given edge.
+     *
+     * @param edge edge
+     * @return destination port
+     */
+    public PortNumber edgeDstPort(int edge) {
+        return PortNumber.portNumber(edgeDstPort[edge]);
+    }
+
+    /**
+     * Returns true if there is at least one link from src to dst.
+     *
+     * @param src source device index
+     * @param dst destination device index
+     * @return true if the devices are adjacent
+     */
+    public boolean isAdjacent(int src, int dst) {
+        // Edges of each device are sorted by destination index.
+        int low = offsets[src];
+        int high = offsets[src + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (edgeDst[mid] < dst) {
+                low = mid + 1;
+            } else if (edgeDst[mid] > dst) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a path with the minimum number of hops from src to dst, avoiding
+     * excluded devices. Among paths with the same number of hops, the one
+     * with the lowest sum of the costs of its devices (except src) is
+     * returned; remaining ties are broken in favor of lower device indexes.
+     *
+     * @param src      source device index
+     * @param dst      destination device index
+     * @param excluded predicate on device indexes that cannot be traversed
+     * @param cost     cost of traversing a device index, non-negative
+     * @return device indexes of the path, from src to dst included, or null
+     * if dst is not reachable
+     */
+    public int[] shortestPath(int src, int dst, IntPredicate excluded,
+                              IntUnaryOperator cost) {
+        if (!present[src] || !present[dst]) {
+            return null;
+        }
+        final int[] hops = new int[devices.length];
+        final long[] costs = new long[devices.length];
+        final int[] previous = new int[devices.length];
+        Arrays.fill(hops, -1);
+        hops[src] = 0;
+        previous[src] = -1;
+
+        // Breadth-first visit: all devices at distance k are dequeued before
+        // those at distance k + 1, hence costs of the former are final when
+        // relaxing edges towards the latter.
+        final int[] queue = new int[devices.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = src;
+        while (head < tail) {
+            final int u = queue[head++];
+            if (u == dst) {
+                break;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                final int v = edgeDst[e];
+                if (!present[v] || (v != dst && excluded.test(v))) {
+                    continue;
+                }
+                final long c = costs[u] + cost.applyAsInt(v);
+                if (hops[v] < 0) {
+                    hops[v] = hops[u] + 1;
+                    costs[v] = c;
+                    previous[v] = u;
+                    queue[tail++] = v;
+                } else if (hops[v] == hops[u] + 1 && c < costs[v]) {
+                    costs[v] = c;
+                    previous[v] = u;
+                }
+            }
+        }
+        if (hops[dst] < 0) {
+            return null;
+        }
+        final int[] path = new int[hops[dst] + 1];
+        for (int v = dst, i = path.length - 1; v >= 0; v = previous[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+}
@@ -27,10 +27,12 @@ import org.onosproject.net.flow.criteria.PiCriterion;
 import org.onosproject.net.group.DefaultGroupBucket;
 import org.onosproject.net.group.DefaultGroupDescription;
 import org.onosproject.net.group.DefaultGroupKey;
+import org.onosproject.net.group.Group;
 import org.onosproject.net.group.GroupBucket;
 import org.onosproject.net.group.GroupBuckets;
 import org.onosproject.net.group.GroupDescription;
 import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupService;
 import org.onosproject.net.pi.model.PiActionProfileId;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
@@ -42,6 +44,7 @@ import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -137,6 +140,51 @@ public final class Utils {
                 appId);
     }
 
+    /**
+     * Writes the given group, i.e. adds it if there is no group with the same
+     * key on the device, otherwise replaces the buckets of the existing group
+     * if they differ. The group service ignores groups added with the key of
+     * an existing one, hence existing groups must be updated this way.
+     *
+     * @param groupService group service
+     * @param group        group description
+     * @return true if the group was added or modified, false if up to date
+     */
+    public static boolean writeGroup(GroupService groupService,
+                                     GroupDescription group) {
+        return writeGroup(groupService, group, g -> { });
+    }
+
+    /**
+     * Same as {@link #writeGroup(GroupService, GroupDescription)}, but calls
+     * the given callback right before the group is added or modified, e.g.
+     * to track the group operation before its event can be received. The
+     * callback is not called if the group is up to date.
+     *
+     * @param groupService group service
+     * @param group        group description
+     * @param beforeWrite  callback called before writing the group
+     * @return true if the group was added or modified, false if up to date
+     */
+    public static boolean writeGroup(GroupService groupService,
+                                     GroupDescription group,
+                                     Consumer<GroupDescription> beforeWrite) {
+        final Group existing = groupService.getGroup(
+                group.deviceId(), group.appCookie());
+        if (existing == null) {
+            beforeWrite.accept(group);
+            groupService.addGroup(group);
+        } else if (!existing.buckets().equals(group.buckets())) {
+            beforeWrite.accept(group);
+            groupService.setBucketsForGroup(
+                    group.deviceId(), group.appCookie(), group.buckets(),
+                    group.appCookie(), group.appId());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
     public static void sleep(int millis) {
         try {
             Thread.sleep(millis);
@@ -16,8 +16,11 @@
 
 package org.onosproject.ngsdn.tutorial.pipeconf;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import org.onlab.packet.DeserializationException;
 import org.onlab.packet.Ethernet;
 import org.onlab.util.ImmutableByteSequence;
@@ -29,22 +32,31 @@ import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.driver.AbstractHandlerBehaviour;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.instructions.Instruction;
+import org.onosproject.net.flow.instructions.Instructions.GroupInstruction;
+import org.onosproject.net.flow.instructions.L2ModificationInstruction;
+import org.onosproject.net.flow.instructions.L2ModificationInstruction.ModEtherInstruction;
 import org.onosproject.net.packet.DefaultInboundPacket;
 import org.onosproject.net.packet.InboundPacket;
 import org.onosproject.net.packet.OutboundPacket;
+import org.onosproject.net.pi.model.PiActionId;
+import org.onosproject.net.pi.model.PiActionParamId;
 import org.onosproject.net.pi.model.PiMatchFieldId;
 import org.onosproject.net.pi.model.PiPacketMetadataId;
 import org.onosproject.net.pi.model.PiPipelineInterpreter;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
+import org.onosproject.net.pi.runtime.PiActionParam;
 import org.onosproject.net.pi.runtime.PiPacketMetadata;
 import org.onosproject.net.pi.runtime.PiPacketOperation;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
@@ -67,6 +79,38 @@ public class InterpreterImpl extends AbstractHandlerBehaviour
     // From v1model.p4
     private static final int V1MODEL_PORT_BITWIDTH = 9;
 
+    private static final String PACKET_IN_DECODE_METRIC = "interpreter.packet-in.decode";
+    private static final String TREATMENT_CACHE_MISS = "interpreter.treatment.cache-miss";
+
+    private static final int TREATMENT_CACHE_SIZE = 4096;
+
+    // Tables and actions mapped from treatments, from P4Info.
+    private static final PiTableId L2_EXACT_TABLE =
+            PiTableId.of("IngressPipeImpl.l2_exact_table");
+    private static final PiTableId L2_TERNARY_TABLE =
+            PiTableId.of("IngressPipeImpl.l2_ternary_table");
+    private static final PiTableId NEXT_HOP_TABLE =
+            PiTableId.of("IngressPipeImpl.next_hop_table");
+    private static final PiTableId ACL_TABLE =
+            PiTableId.of("IngressPipeImpl.acl_table");
+    private static final PiActionId SET_EGRESS_PORT =
+            PiActionId.of("IngressPipeImpl.set_egress_port");
+    private static final PiActionId SET_MULTICAST_GROUP =
+            PiActionId.of("IngressPipeImpl.set_multicast_group");
+    private static final PiActionId SET_NEXT_HOP =
+            PiActionId.of("IngressPipeImpl.set_next_hop");
+    private static final PiActionId SEND_TO_CPU =
+            PiActionId.of("IngressPipeImpl.send_to_cpu");
+    private static final PiActionParamId PORT_NUM = PiActionParamId.of("port_num");
+    private static final PiActionParamId GID = PiActionParamId.of("gid");
+    private static final PiActionParamId DMAC = PiActionParamId.of("dmac");
+
+    // Treatments mapped to PI actions, by table. Shared among instances, as
+    // a new one is created for each flow rule translation. Indexed by table
+    // first, such that a cache hit does not allocate a key.
+    private static final ConcurrentMap<PiTableId, Cache<TrafficTreatment, PiAction>>
+            TREATMENT_CACHE = Maps.newConcurrentMap();
+
     // From P4Info.
     private static final Map<Criterion.Type, String> CRITERION_MAP =
             new ImmutableMap.Builder<Criterion.Type, String>()
@@ -183,6 +227,8 @@ public class InterpreterImpl extends AbstractHandlerBehaviour
     public InboundPacket mapInboundPacket(PiPacketOperation packetIn, DeviceId deviceId)
             throws PiInterpreterException {
 
+        final long startNanos = System.nanoTime();
+
         // Find the ingress_port metadata.
         // *** TODO EXERCISE 4: modify metadata names to match P4Info
         // ---- START SOLUTION ----
@@ -218,6 +264,7 @@ public class InterpreterImpl extends AbstractHandlerBehaviour
         final ConnectPoint receivedFrom = new ConnectPoint(
                 deviceId, PortNumber.portNumber(portNum));
 
+        AppMetrics.latency(PACKET_IN_DECODE_METRIC).recordSince(startNanos);
         return new DefaultInboundPacket(receivedFrom, ethPkt, rawData);
     }
 
@@ -239,10 +286,95 @@ public class InterpreterImpl extends AbstractHandlerBehaviour
         }
     }
 
+    /**
+     * Maps a treatment to a PI action of the given table. Supported mappings
+     * are:
+     * <ul>
+     *     <li>OUTPUT to a physical port in the L2 exact table;</li>
+     *     <li>GROUP (i.e. multicast group) in the L2 ternary table;</li>
+     *     <li>ETH_DST modification (i.e. next hop MAC address) in the next
+     *     hop table, e.g. for SELECT group buckets;</li>
+     *     <li>OUTPUT to the controller in the ACL table.</li>
+     * </ul>
+     * Mappings are cached, such that repeated translations of the same
+     * treatment return the same action instance.
+     *
+     * @param treatment traffic treatment
+     * @param piTableId PI table ID
+     * @return PI action
+     * @throws PiInterpreterException if the treatment cannot be mapped
+     */
     @Override
     public PiAction mapTreatment(TrafficTreatment treatment, PiTableId piTableId)
             throws PiInterpreterException {
-        throw new PiInterpreterException("Treatment mapping not supported");
+        final Cache<TrafficTreatment, PiAction> cache =
+                TREATMENT_CACHE.computeIfAbsent(piTableId, InterpreterImpl::newTreatmentCache);
+        PiAction action = cache.getIfPresent(treatment);
+        if (action == null) {
+            AppMetrics.counter(TREATMENT_CACHE_MISS).increment();
+            // Failed mappings are not cached.
+            action = buildAction(treatment, piTableId);
+            cache.put(treatment, action);
+        }
+        return action;
+    }
+
+    private static Cache<TrafficTreatment, PiAction> newTreatmentCache(PiTableId piTableId) {
+        return CacheBuilder.newBuilder().maximumSize(TREATMENT_CACHE_SIZE).build();
+    }
+
+    private PiAction buildAction(TrafficTreatment treatment, PiTableId piTableId)
+            throws PiInterpreterException {
+        final List<Instruction> instructions = treatment.allInstructions();
+        if (instructions.size() != 1) {
+            throw new PiInterpreterException(format(
+                    "Treatment not supported, expected a single instruction: %s",
+                    treatment));
+        }
+        final Instruction instruction = instructions.get(0);
+
+        if (piTableId.equals(L2_EXACT_TABLE) && instruction.type() == OUTPUT) {
+            final PortNumber port = ((OutputInstruction) instruction).port();
+            if (port.isLogical()) {
+                throw new PiInterpreterException(format(
+                        "Output to logical port '%s' not supported in %s",
+                        port, piTableId));
+            }
+            return PiAction.builder()
+                    .withId(SET_EGRESS_PORT)
+                    .withParameter(new PiActionParam(PORT_NUM, port.toLong()))
+                    .build();
+        }
+
+        if (piTableId.equals(L2_TERNARY_TABLE) &&
+                instruction.type() == Instruction.Type.GROUP) {
+            final int groupId = ((GroupInstruction) instruction).groupId().id();
+            return PiAction.builder()
+                    .withId(SET_MULTICAST_GROUP)
+                    .withParameter(new PiActionParam(GID, groupId))
+                    .build();
+        }
+
+        if (piTableId.equals(NEXT_HOP_TABLE) &&
+                instruction.type() == Instruction.Type.L2MODIFICATION &&
+                ((L2ModificationInstruction) instruction).subtype() ==
+                        L2ModificationInstruction.L2SubType.ETH_DST) {
+            return PiAction.builder()
+                    .withId(SET_NEXT_HOP)
+                    .withParameter(new PiActionParam(
+                            DMAC, ((ModEtherInstruction) instruction).mac().toBytes()))
+                    .build();
+        }
+
+        if (piTableId.equals(ACL_TABLE) && instruction.type() == OUTPUT &&
+                CONTROLLER.equals(((OutputInstruction) instruction).port())) {
+            return PiAction.builder()
+                    .withId(SEND_TO_CPU)
+                    .build();
+        }
+
+        throw new PiInterpreterException(format(
+                "Treatment not supported in %s: %s", piTableId, treatment));
     }
 
     @Override
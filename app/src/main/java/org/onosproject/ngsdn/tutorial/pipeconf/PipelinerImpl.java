@@ -16,6 +16,17 @@
 
 package org.onosproject.ngsdn.tutorial.pipeconf;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.SharedScheduledExecutors;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.behaviour.NextGroup;
@@ -23,62 +34,209 @@ import org.onosproject.net.behaviour.Pipeliner;
 import org.onosproject.net.behaviour.PipelinerContext;
 import org.onosproject.net.driver.AbstractHandlerBehaviour;
 import org.onosproject.net.flow.DefaultFlowRule;
+import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
 import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
 import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.EthCriterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.flow.instructions.Instruction;
 import org.onosproject.net.flow.instructions.Instructions;
+import org.onosproject.net.flow.instructions.L2ModificationInstruction;
+import org.onosproject.net.flow.instructions.PiInstruction;
 import org.onosproject.net.flowobjective.FilteringObjective;
+import org.onosproject.net.flowobjective.FlowObjectiveStore;
 import org.onosproject.net.flowobjective.ForwardingObjective;
 import org.onosproject.net.flowobjective.NextObjective;
+import org.onosproject.net.flowobjective.Objective;
 import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.group.DefaultGroupBucket;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.DefaultGroupKey;
+import org.onosproject.net.group.Group;
+import org.onosproject.net.group.GroupBucket;
+import org.onosproject.net.group.GroupBuckets;
 import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupEvent;
+import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupListener;
 import org.onosproject.net.group.GroupService;
 import org.onosproject.net.pi.model.PiActionId;
+import org.onosproject.net.pi.model.PiActionParamId;
+import org.onosproject.net.pi.model.PiActionProfileId;
+import org.onosproject.net.pi.model.PiMatchFieldId;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
+import org.onosproject.net.pi.runtime.PiActionParam;
+import org.onosproject.net.pi.runtime.PiActionProfileGroupId;
+import org.onosproject.net.pi.runtime.PiGroupKey;
+import org.onosproject.net.pi.runtime.PiTableAction;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
 import org.onosproject.ngsdn.tutorial.common.Utils;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.onosproject.net.flow.instructions.Instruction.Type.OUTPUT;
 import static org.onosproject.ngsdn.tutorial.AppConstants.CPU_CLONE_SESSION_ID;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.FLOW_RULES_INSTALLED;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.GROUPS_INSTALLED;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
- * Pipeliner implementation that maps all forwarding objectives to the ACL
- * table. All other types of objectives are not supported.
+ * Pipeliner implementation that maps objectives to the tables of the
+ * pipeline:
+ * <ul>
+ *     <li>filtering objectives permitting an Ethernet destination to the
+ *     My Station table;</li>
+ *     <li>specific forwarding objectives to the routing table (IPv6
+ *     destination) or to the L2 tables (Ethernet destination);</li>
+ *     <li>versatile forwarding objectives sending packets to the controller
+ *     to the ACL table;</li>
+ *     <li>next objectives to groups.</li>
+ * </ul>
+ * <p>
+ * The CPU clone session used by ACL rules is written at most once per
+ * pipeliner instance, i.e. once every time the device connects, and
+ * objectives are reported as successful only when the device acknowledged
+ * the corresponding ACL rule.
+ * <p>
+ * Likewise, next objectives are reported as successful only when the device
+ * acknowledged the group and, for HASHED ones, the next hop table entry
+ * pointing to it, which is written only after the group.
  */
 public class PipelinerImpl extends AbstractHandlerBehaviour implements Pipeliner {
 
     // From the P4Info file
     private static final String ACL_TABLE = "IngressPipeImpl.acl_table";
     private static final String CLONE_TO_CPU = "IngressPipeImpl.clone_to_cpu";
+    private static final String ROUTING_V6_TABLE = "IngressPipeImpl.routing_v6_table";
+    private static final String SET_NEXT_ID = "IngressPipeImpl.set_next_id";
+    private static final String NEXT_ID = "next_id";
+    private static final String NEXT_HOP_TABLE = "IngressPipeImpl.next_hop_table";
+    private static final String ECMP_SELECTOR = "IngressPipeImpl.ecmp_selector";
+    private static final String SET_NEXT_HOP = "IngressPipeImpl.set_next_hop";
+    private static final String DMAC = "dmac";
+    private static final String MY_STATION_TABLE = "IngressPipeImpl.my_station_table";
+    private static final String L2_EXACT_TABLE = "IngressPipeImpl.l2_exact_table";
+    private static final String L2_TERNARY_TABLE = "IngressPipeImpl.l2_ternary_table";
+    private static final String SET_EGRESS_PORT = "IngressPipeImpl.set_egress_port";
+    private static final String PORT_NUM = "port_num";
+    private static final String SET_MULTICAST_GROUP = "IngressPipeImpl.set_multicast_group";
+    private static final String GID = "gid";
+    private static final String NO_ACTION = "NoAction";
+    private static final String ETH_DST_FIELD = "hdr.ethernet.dst_addr";
+    private static final String IPV6_DST_FIELD = "hdr.ipv6.dst_addr";
+    private static final String NEXT_ID_FIELD = "local_metadata.next_id";
+
+    private static final byte[] EXACT_MAC_MASK =
+            MacAddress.valueOf("FF:FF:FF:FF:FF:FF").toBytes();
+    private static final Set<Criterion.Type> ROUTING_CRITERIA = ImmutableSet.of(
+            Criterion.Type.IPV6_DST, Criterion.Type.ETH_TYPE);
+    private static final Set<Criterion.Type> BRIDGING_CRITERIA = ImmutableSet.of(
+            Criterion.Type.ETH_DST);
+    private static final int TRANSLATION_CACHE_SIZE = 1024;
+    private static final int PENDING_NEXT_TIMEOUT_SECONDS = 30;
+
+    // Group IDs of next objectives are derived from their next ID, in ranges
+    // not used by the app components. Multicast group IDs are 16 bit wide.
+    private static final int SELECT_GROUP_ID_BASE = 0x4e000000;
+    private static final int MAX_SELECT_NEXT_ID = 0x00ffffff;
+    private static final int MULTICAST_GROUP_ID_BASE = 0x8000;
+    private static final int MAX_MULTICAST_NEXT_ID = 0x7fff;
 
     private final Logger log = getLogger(getClass());
 
     private FlowRuleService flowRuleService;
     private GroupService groupService;
+    private FlowObjectiveStore flowObjectiveStore;
     private DeviceId deviceId;
 
+    // Clone sessions known to be installed on the device.
+    private final Set<Integer> cloneSessions = Sets.newConcurrentHashSet();
+
+    // Groups of the next objectives of the device, by next ID. Backed by the
+    // distributed flow objective store.
+    private final Map<Integer, NextEntry> nextEntries = Maps.newConcurrentMap();
+
+    // Translations of specific forwarding objectives, such that objectives
+    // with the same selector, treatment and next ID (e.g. for different
+    // priorities, or re-submitted) are not translated again. Translations
+    // with a next ID are invalidated when the next objective is removed.
+    private final Cache<TranslationKey, Translation> translations =
+            CacheBuilder.newBuilder().maximumSize(TRANSLATION_CACHE_SIZE).build();
+
+    // Next objectives waiting for their group to be acknowledged by the
+    // device, by group key.
+    private final Map<GroupKey, List<PendingNext>> pendingNexts = Maps.newConcurrentMap();
+
+    private final GroupListener groupListener = new InternalGroupListener();
 
     @Override
     public void init(DeviceId deviceId, PipelinerContext context) {
+        if (groupService != null) {
+            groupService.removeListener(groupListener);
+        }
         this.deviceId = deviceId;
         this.flowRuleService = context.directory().get(FlowRuleService.class);
         this.groupService = context.directory().get(GroupService.class);
+        this.flowObjectiveStore = context.store();
+        cloneSessions.clear();
+        nextEntries.clear();
+        translations.invalidateAll();
+        pendingNexts.clear();
+        groupService.addListener(groupListener);
     }
 
     @Override
     public void filter(FilteringObjective obj) {
-        obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+        final MacAddress ethDst = obj.conditions().stream()
+                .filter(c -> c.type() == Criterion.Type.ETH_DST)
+                .map(c -> ((EthCriterion) c).mac())
+                .findFirst()
+                .orElse(null);
+        if (obj.type() != FilteringObjective.Type.PERMIT || ethDst == null) {
+            // We support only permitting packets destined to the router MAC.
+            obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+            return;
+        }
+
+        final PiCriterion match = PiCriterion.builder()
+                .matchExact(PiMatchFieldId.of(ETH_DST_FIELD), ethDst.toBytes())
+                .build();
+        final PiAction action = PiAction.builder()
+                .withId(PiActionId.of(NO_ACTION))
+                .build();
+        applyRule(obj, buildRule(obj, new Translation(
+                PiTableId.of(MY_STATION_TABLE), match, action)));
     }
 
     @Override
     public void forward(ForwardingObjective obj) {
+        if (obj.flag() == ForwardingObjective.Flag.SPECIFIC) {
+            forwardSpecific(obj);
+            return;
+        }
+
         if (obj.treatment() == null) {
             obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+            return;
         }
 
         // Whether this objective specifies an OUTPUT:CONTROLLER instruction.
@@ -92,6 +250,7 @@ public class PipelinerImpl extends AbstractHandlerBehaviour implements Pipeliner
             // We support only objectives for clone to CPU behaviours (e.g. for
             // host and link discovery)
             obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+            return;
         }
 
         // Create an equivalent FlowRule with same selector and clone_to_cpu action.
@@ -114,6 +273,169 @@ public class PipelinerImpl extends AbstractHandlerBehaviour implements Pipeliner
             ruleBuilder.makeTemporary(obj.timeout());
         }
 
+        // Do not remove the clone group on REMOVE, as other flow rules might
+        // be pointing to it.
+        if (obj.op() == Objective.Operation.ADD) {
+            installCloneGroup(obj);
+        }
+        applyRule(obj, ruleBuilder.build());
+    }
+
+    /**
+     * Maps a specific forwarding objective to the routing table, if matching
+     * on the IPv6 destination, or to the L2 tables, if matching on the
+     * Ethernet destination.
+     *
+     * @param obj forwarding objective
+     */
+    private void forwardSpecific(ForwardingObjective obj) {
+        final Translation translation;
+        try {
+            translation = translations.get(
+                    new TranslationKey(obj.selector(), obj.treatment(), obj.nextId()),
+                    () -> translateSpecific(obj));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            final ObjectiveError error = e.getCause() instanceof IllegalStateException
+                    ? ObjectiveError.GROUPMISSING : ObjectiveError.BADPARAMS;
+            log.warn("Unable to translate forwarding objective {} for {}: {}",
+                     obj.id(), deviceId, e.getCause().getMessage());
+            obj.context().ifPresent(c -> c.onError(obj, error));
+            return;
+        }
+        applyRule(obj, buildRule(obj, translation));
+    }
+
+    /**
+     * Translates the selector, treatment and next ID of a specific forwarding
+     * objective to a table, match and action of the pipeline.
+     *
+     * @param obj forwarding objective
+     * @return translation
+     * @throws IllegalArgumentException if the objective is not supported
+     * @throws IllegalStateException    if the next objective is not found
+     */
+    private Translation translateSpecific(ForwardingObjective obj) {
+        final Set<Criterion.Type> criteria = obj.selector().criteria().stream()
+                .map(Criterion::type)
+                .collect(Collectors.toSet());
+        final NextEntry next = obj.nextId() == null ? null : getNextEntry(obj.nextId());
+        if (obj.nextId() != null && next == null) {
+            throw new IllegalStateException("next objective " + obj.nextId() + " not found");
+        }
+
+        if (criteria.contains(Criterion.Type.IPV6_DST) &&
+                ROUTING_CRITERIA.containsAll(criteria)) {
+            // Routing entries set a next ID, which the next hop table maps
+            // to an action selector group.
+            if (next == null || next.type != GroupDescription.Type.SELECT) {
+                throw new IllegalArgumentException("routing requires a HASHED next objective");
+            }
+            final IpPrefix prefix = ((IPCriterion) obj.selector()
+                    .getCriterion(Criterion.Type.IPV6_DST)).ip();
+            final PiCriterion match = PiCriterion.builder()
+                    .matchLpm(PiMatchFieldId.of(IPV6_DST_FIELD),
+                              prefix.address().toOctets(), prefix.prefixLength())
+                    .build();
+            final PiAction action = PiAction.builder()
+                    .withId(PiActionId.of(SET_NEXT_ID))
+                    .withParameter(new PiActionParam(
+                            PiActionParamId.of(NEXT_ID), next.groupId))
+                    .build();
+            return new Translation(PiTableId.of(ROUTING_V6_TABLE), match, action);
+        }
+
+        if (BRIDGING_CRITERIA.equals(criteria)) {
+            final MacAddress ethDst = ((EthCriterion) obj.selector()
+                    .getCriterion(Criterion.Type.ETH_DST)).mac();
+            if (next != null) {
+                if (next.type != GroupDescription.Type.ALL) {
+                    throw new IllegalArgumentException("bridging requires a BROADCAST next objective");
+                }
+                final PiCriterion match = PiCriterion.builder()
+                        .matchTernary(PiMatchFieldId.of(ETH_DST_FIELD),
+                                      ethDst.toBytes(), EXACT_MAC_MASK)
+                        .build();
+                final PiAction action = PiAction.builder()
+                        .withId(PiActionId.of(SET_MULTICAST_GROUP))
+                        .withParameter(new PiActionParam(
+                                PiActionParamId.of(GID), next.groupId))
+                        .build();
+                return new Translation(PiTableId.of(L2_TERNARY_TABLE), match, action);
+            }
+            final PortNumber port = obj.treatment() == null ? null : obj.treatment()
+                    .allInstructions().stream()
+                    .filter(i -> i.type().equals(OUTPUT))
+                    .map(i -> ((Instructions.OutputInstruction) i).port())
+                    .findFirst()
+                    .orElse(null);
+            if (port == null || port.isLogical()) {
+                throw new IllegalArgumentException("bridging requires a physical output port");
+            }
+            final PiCriterion match = PiCriterion.builder()
+                    .matchExact(PiMatchFieldId.of(ETH_DST_FIELD), ethDst.toBytes())
+                    .build();
+            final PiAction action = PiAction.builder()
+                    .withId(PiActionId.of(SET_EGRESS_PORT))
+                    .withParameter(new PiActionParam(
+                            PiActionParamId.of(PORT_NUM), port.toLong()))
+                    .build();
+            return new Translation(PiTableId.of(L2_EXACT_TABLE), match, action);
+        }
+
+        throw new IllegalArgumentException("unsupported selector " + obj.selector());
+    }
+
+    private FlowRule buildRule(Objective obj, Translation translation) {
+        final FlowRule.Builder ruleBuilder = DefaultFlowRule.builder()
+                .forTable(translation.tableId)
+                .forDevice(deviceId)
+                .withSelector(translation.selector)
+                .withTreatment(translation.treatment)
+                .fromApp(obj.appId())
+                .withPriority(obj.priority());
+        if (obj.permanent()) {
+            ruleBuilder.makePermanent();
+        } else {
+            ruleBuilder.makeTemporary(obj.timeout());
+        }
+        return ruleBuilder.build();
+    }
+
+    /**
+     * Adds or removes the flow rule derived from the given objective, which
+     * is reported as successful when the device acknowledged the operation.
+     *
+     * @param obj  objective
+     * @param rule flow rule
+     */
+    private void applyRule(Objective obj, FlowRule rule) {
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        switch (obj.op()) {
+            case ADD:
+                ops.add(rule);
+                AppMetrics.counter(FLOW_RULES_INSTALLED).increment();
+                break;
+            case REMOVE:
+                ops.remove(rule);
+                break;
+            default:
+                log.warn("Unknown operation {}", obj.op());
+                obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+                return;
+        }
+        flowRuleService.apply(ops.build(new ObjectiveFlowContext(obj)));
+    }
+
+    /**
+     * Writes the CPU clone session used by the ACL rule of the given
+     * objective, unless already installed on the device.
+     *
+     * @param obj forwarding objective
+     */
+    private void installCloneGroup(ForwardingObjective obj) {
+        if (cloneSessions.contains(CPU_CLONE_SESSION_ID)) {
+            return;
+        }
         final GroupDescription cloneGroup = Utils.buildCloneGroup(
                 obj.appId(),
                 deviceId,
@@ -121,32 +443,565 @@ public class PipelinerImpl extends AbstractHandlerBehaviour implements Pipeliner
                 // Ports where to clone the packet.
                 // Just controller in this case.
                 Collections.singleton(PortNumber.CONTROLLER));
+        synchronized (cloneSessions) {
+            if (!cloneSessions.contains(CPU_CLONE_SESSION_ID)) {
+                // The group might be in the store already, e.g. if written
+                // before the pipeliner was re-initialized. The group
+                // subsystem takes care of restoring it on the device.
+                if (groupService.getGroup(deviceId, cloneGroup.appCookie()) == null) {
+                    groupService.addGroup(cloneGroup);
+                    AppMetrics.counter(GROUPS_INSTALLED).increment();
+                }
+                cloneSessions.add(CPU_CLONE_SESSION_ID);
+            }
+        }
+    }
+
+    @Override
+    public void next(NextObjective obj) {
+        final NextEntry entry;
+        final List<GroupBucket> buckets;
+        try {
+            entry = obj.op() == Objective.Operation.ADD
+                    ? newNextEntry(obj) : getNextEntry(obj.id());
+            if (entry == null) {
+                obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.GROUPMISSING));
+                return;
+            }
+            buckets = buildBuckets(entry.type, obj.next());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to translate next objective {} for {}: {}",
+                     obj.id(), deviceId, e.getMessage());
+            obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.BADPARAMS));
+            return;
+        }
 
+        final GroupKey groupKey = groupKey(entry);
+        final Group group = groupService.getGroup(deviceId, groupKey);
+        final Set<GroupBucket> current = group == null ? Collections.emptySet()
+                : ImmutableSet.copyOf(group.buckets().buckets());
         switch (obj.op()) {
             case ADD:
-                flowRuleService.applyFlowRules(ruleBuilder.build());
-                groupService.addGroup(cloneGroup);
-                break;
+                // Next objectives are reported as successful only once the
+                // device acknowledged the group, see InternalGroupListener.
+                nextEntries.put(obj.id(), entry);
+                awaitGroup(groupKey, obj, entry);
+                if (group == null) {
+                    groupService.addGroup(new DefaultGroupDescription(
+                            deviceId, entry.type, new GroupBuckets(buckets),
+                            groupKey, entry.groupId, obj.appId()));
+                    AppMetrics.counter(GROUPS_INSTALLED).increment();
+                } else if (!current.equals(ImmutableSet.copyOf(buckets))) {
+                    // Left by a previous instance of the pipeliner.
+                    groupService.setBucketsForGroup(deviceId, groupKey,
+                                                    new GroupBuckets(buckets),
+                                                    groupKey, obj.appId());
+                } else if (group.state() == Group.GroupState.ADDED) {
+                    groupInstalled(groupKey);
+                }
+                return;
+            case ADD_TO_EXISTING:
+                if (current.containsAll(buckets)) {
+                    break;
+                }
+                awaitGroup(groupKey, obj, entry);
+                groupService.addBucketsToGroup(deviceId, groupKey,
+                                               new GroupBuckets(buckets),
+                                               groupKey, obj.appId());
+                return;
+            case REMOVE_FROM_EXISTING:
+                if (buckets.stream().noneMatch(current::contains)) {
+                    break;
+                }
+                awaitGroup(groupKey, obj, entry);
+                groupService.removeBucketsFromGroup(deviceId, groupKey,
+                                                    new GroupBuckets(buckets),
+                                                    groupKey, obj.appId());
+                return;
+            case MODIFY:
+                if (current.equals(ImmutableSet.copyOf(buckets))) {
+                    break;
+                }
+                awaitGroup(groupKey, obj, entry);
+                groupService.setBucketsForGroup(deviceId, groupKey,
+                                                new GroupBuckets(buckets),
+                                                groupKey, obj.appId());
+                return;
             case REMOVE:
-                flowRuleService.removeFlowRules(ruleBuilder.build());
-                // Do not remove the clone group as other flow rules might be
-                // pointing to it.
+                groupFailed(groupKey, ObjectiveError.GROUPMISSING);
+                flowObjectiveStore.removeNextGroup(obj.id());
+                nextEntries.remove(obj.id());
+                // Forwarding objectives pointing to the removed next ID must
+                // fail until it is added again, possibly with another type.
+                translations.asMap().keySet().removeIf(
+                        key -> Objects.equals(key.nextId, obj.id()));
+                if (entry.type == GroupDescription.Type.SELECT) {
+                    // P4Runtime rejects removing an action selector group
+                    // still referenced by a table entry, remove the group
+                    // once the device acknowledged the entry removal.
+                    flowRuleService.apply(FlowRuleOperations.builder()
+                            .remove(nextHopRule(obj, entry))
+                            .build(new FlowRuleOperationsContext() {
+                                @Override
+                                public void onSuccess(FlowRuleOperations ops) {
+                                    groupService.removeGroup(deviceId, groupKey, obj.appId());
+                                    obj.context().ifPresent(c -> c.onSuccess(obj));
+                                }
+
+                                @Override
+                                public void onError(FlowRuleOperations ops) {
+                                    log.warn("Unable to remove next hop entry of 0x{} on {}",
+                                             Integer.toHexString(entry.groupId), deviceId);
+                                    obj.context().ifPresent(c -> c.onError(
+                                            obj, ObjectiveError.GROUPREMOVALFAILED));
+                                }
+                            }));
+                    return;
+                }
+                groupService.removeGroup(deviceId, groupKey, obj.appId());
+                break;
+            case VERIFY:
                 break;
             default:
                 log.warn("Unknown operation {}", obj.op());
+                obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+                return;
         }
 
         obj.context().ifPresent(c -> c.onSuccess(obj));
     }
 
-    @Override
-    public void next(NextObjective obj) {
-        obj.context().ifPresent(c -> c.onError(obj, ObjectiveError.UNSUPPORTED));
+    /**
+     * Registers the given next objective as waiting for the given group to be
+     * acknowledged by the device. The objective is reported as failed if
+     * still waiting after PENDING_NEXT_TIMEOUT_SECONDS, regardless of other
+     * objectives waiting for the same group.
+     *
+     * @param groupKey group key
+     * @param obj      next objective
+     * @param entry    group of the next objective
+     */
+    private void awaitGroup(GroupKey groupKey, NextObjective obj, NextEntry entry) {
+        final PendingNext next = new PendingNext(obj, entry);
+        pendingNexts.merge(groupKey, ImmutableList.of(next),
+                           (a, b) -> ImmutableList.<PendingNext>builder()
+                                   .addAll(a).addAll(b).build());
+        SharedScheduledExecutors.newTimeout(
+                () -> groupTimedOut(groupKey, next),
+                PENDING_NEXT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void groupTimedOut(GroupKey groupKey, PendingNext next) {
+        final AtomicBoolean removed = new AtomicBoolean();
+        pendingNexts.computeIfPresent(groupKey, (key, pending) -> {
+            removed.set(pending.contains(next));
+            final List<PendingNext> others = pending.stream()
+                    .filter(p -> p != next)
+                    .collect(ImmutableList.toImmutableList());
+            return others.isEmpty() ? null : others;
+        });
+        if (removed.get()) {
+            log.warn("Group {} not acknowledged by {} in {}s", groupKey,
+                     deviceId, PENDING_NEXT_TIMEOUT_SECONDS);
+            next.obj.context().ifPresent(c -> c.onError(
+                    next.obj, ObjectiveError.GROUPINSTALLATIONFAILED));
+        }
+    }
+
+    /**
+     * Completes the next objectives waiting for the given group. Added
+     * HASHED next objectives are completed once the device acknowledged also
+     * the next hop table entry pointing to the group, and only then stored in
+     * the flow objective store, which releases the forwarding objectives
+     * waiting for them.
+     *
+     * @param groupKey group key
+     */
+    private void groupInstalled(GroupKey groupKey) {
+        final List<PendingNext> pending = pendingNexts.remove(groupKey);
+        if (pending == null) {
+            return;
+        }
+        for (PendingNext next : pending) {
+            final NextObjective obj = next.obj;
+            if (obj.op() != Objective.Operation.ADD) {
+                obj.context().ifPresent(c -> c.onSuccess(obj));
+            } else if (next.entry.type == GroupDescription.Type.SELECT) {
+                AppMetrics.counter(FLOW_RULES_INSTALLED).increment();
+                flowRuleService.apply(FlowRuleOperations.builder()
+                        .add(nextHopRule(obj, next.entry))
+                        .build(new FlowRuleOperationsContext() {
+                            @Override
+                            public void onSuccess(FlowRuleOperations ops) {
+                                nextAdded(obj, next.entry);
+                            }
+
+                            @Override
+                            public void onError(FlowRuleOperations ops) {
+                                obj.context().ifPresent(c -> c.onError(
+                                        obj, ObjectiveError.FLOWINSTALLATIONFAILED));
+                            }
+                        }));
+            } else {
+                nextAdded(obj, next.entry);
+            }
+        }
+    }
+
+    private void nextAdded(NextObjective obj, NextEntry entry) {
+        flowObjectiveStore.putNextGroup(obj.id(), entry);
+        obj.context().ifPresent(c -> c.onSuccess(obj));
+    }
+
+    /**
+     * Reports the next objectives waiting for the given group as failed.
+     *
+     * @param groupKey group key
+     * @param error    objective error
+     */
+    private void groupFailed(GroupKey groupKey, ObjectiveError error) {
+        final List<PendingNext> pending = pendingNexts.remove(groupKey);
+        if (pending != null) {
+            pending.forEach(next -> next.obj.context().ifPresent(
+                    c -> c.onError(next.obj, error)));
+        }
     }
 
     @Override
     public List<String> getNextMappings(NextGroup nextGroup) {
-        // We do not use nextObjectives or groups.
-        return Collections.emptyList();
+        final NextEntry entry = NextEntry.decode(nextGroup.data());
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        final Group group = groupService.getGroup(deviceId, groupKey(entry));
+        if (group == null) {
+            return Collections.singletonList(String.format(
+                    "0x%x (missing)", entry.groupId));
+        }
+        return group.buckets().buckets().stream()
+                .map(b -> String.format("0x%x %s", entry.groupId, b.treatment()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the group of the given next ID, from the local cache or, if
+     * not found, from the flow objective store.
+     *
+     * @param nextId next ID
+     * @return group of the next objective, or null if not found
+     */
+    private NextEntry getNextEntry(int nextId) {
+        return nextEntries.computeIfAbsent(nextId, id -> {
+            final NextGroup nextGroup = flowObjectiveStore.getNextGroup(id);
+            return nextGroup == null ? null : NextEntry.decode(nextGroup.data());
+        });
+    }
+
+    /**
+     * Builds the next hop table entry mapping the next ID of the given SELECT
+     * group to the group itself. The group ID is used as next ID, such that
+     * it does not depend on the next objective ID space. The priority and
+     * timeout are the ones stored in the entry, i.e. of the objective which
+     * added the group.
+     *
+     * @param obj   next objective
+     * @param entry group of the next objective
+     * @return flow rule
+     */
+    private FlowRule nextHopRule(NextObjective obj, NextEntry entry) {
+        final Translation translation = new Translation(
+                PiTableId.of(NEXT_HOP_TABLE),
+                PiCriterion.builder()
+                        .matchExact(PiMatchFieldId.of(NEXT_ID_FIELD), entry.groupId)
+                        .build(),
+                PiActionProfileGroupId.of(entry.groupId));
+        final FlowRule.Builder ruleBuilder = DefaultFlowRule.builder()
+                .forTable(translation.tableId)
+                .forDevice(deviceId)
+                .withSelector(translation.selector)
+                .withTreatment(translation.treatment)
+                .fromApp(obj.appId())
+                .withPriority(entry.priority);
+        if (entry.timeout < 0) {
+            ruleBuilder.makePermanent();
+        } else {
+            ruleBuilder.makeTemporary(entry.timeout);
+        }
+        return ruleBuilder.build();
+    }
+
+    /**
+     * Allocates the group for the given next objective. HASHED objectives map
+     * to action selector groups of the next hop table, BROADCAST ones to PRE
+     * multicast groups.
+     *
+     * @param obj next objective
+     * @return group of the next objective
+     * @throws IllegalArgumentException if the objective is not supported
+     */
+    private NextEntry newNextEntry(NextObjective obj) {
+        switch (obj.type()) {
+            case HASHED:
+                if (obj.id() < 0 || obj.id() > MAX_SELECT_NEXT_ID) {
+                    throw new IllegalArgumentException("next ID out of range");
+                }
+                return new NextEntry(GroupDescription.Type.SELECT,
+                                     SELECT_GROUP_ID_BASE + obj.id(), obj);
+            case BROADCAST:
+                if (obj.id() < 0 || obj.id() > MAX_MULTICAST_NEXT_ID) {
+                    throw new IllegalArgumentException("next ID out of range");
+                }
+                return new NextEntry(GroupDescription.Type.ALL,
+                                     MULTICAST_GROUP_ID_BASE + obj.id(), obj);
+            default:
+                throw new IllegalArgumentException(
+                        "unsupported next objective type " + obj.type());
+        }
+    }
+
+    private GroupKey groupKey(NextEntry entry) {
+        if (entry.type == GroupDescription.Type.SELECT) {
+            return new PiGroupKey(PiTableId.of(NEXT_HOP_TABLE),
+                                  PiActionProfileId.of(ECMP_SELECTOR),
+                                  entry.groupId);
+        }
+        // Same as Utils.buildMulticastGroup().
+        return new DefaultGroupKey(
+                ByteBuffer.allocate(4).putInt(entry.groupId).array());
+    }
+
+    /**
+     * Builds the group buckets for the given next objective treatments.
+     * Treatments of SELECT groups must either carry a PI action of the
+     * next hop table, or set the Ethernet destination address (output
+     * instructions are ignored, as the egress port is resolved by the L2
+     * table). Treatments of multicast groups must have an output instruction.
+     *
+     * @param type       group type
+     * @param treatments next objective treatments
+     * @return group buckets
+     * @throws IllegalArgumentException if a treatment is not supported
+     */
+    private List<GroupBucket> buildBuckets(GroupDescription.Type type,
+                                           Collection<TrafficTreatment> treatments) {
+        final List<GroupBucket> buckets = Lists.newArrayList();
+        for (TrafficTreatment treatment : treatments) {
+            if (type == GroupDescription.Type.SELECT) {
+                buckets.add(DefaultGroupBucket.createSelectGroupBucket(
+                        DefaultTrafficTreatment.builder()
+                                .piTableAction(nextHopAction(treatment))
+                                .build()));
+            } else {
+                final List<PortNumber> ports = treatment.allInstructions().stream()
+                        .filter(i -> i.type().equals(OUTPUT))
+                        .map(i -> ((Instructions.OutputInstruction) i).port())
+                        .collect(Collectors.toList());
+                if (ports.isEmpty()) {
+                    throw new IllegalArgumentException(
+                            "missing output in " + treatment);
+                }
+                // Same as Utils.buildMulticastGroup().
+                ports.forEach(port -> buckets.add(DefaultGroupBucket.createAllGroupBucket(
+                        DefaultTrafficTreatment.builder().setOutput(port).build())));
+            }
+        }
+        return buckets;
+    }
+
+    private PiAction nextHopAction(TrafficTreatment treatment) {
+        for (Instruction instruction : treatment.allInstructions()) {
+            if (instruction.type() == Instruction.Type.PROTOCOL_INDEPENDENT &&
+                    ((PiInstruction) instruction).action() instanceof PiAction) {
+                return (PiAction) ((PiInstruction) instruction).action();
+            }
+            if (instruction.type() == Instruction.Type.L2MODIFICATION &&
+                    ((L2ModificationInstruction) instruction).subtype() ==
+                            L2ModificationInstruction.L2SubType.ETH_DST) {
+                final MacAddress dmac = ((L2ModificationInstruction.ModEtherInstruction)
+                        instruction).mac();
+                return PiAction.builder()
+                        .withId(PiActionId.of(SET_NEXT_HOP))
+                        .withParameter(new PiActionParam(
+                                PiActionParamId.of(DMAC), dmac.toBytes()))
+                        .build();
+            }
+        }
+        throw new IllegalArgumentException("missing next hop in " + treatment);
+    }
+
+    /**
+     * Key of the translation cache.
+     */
+    private static final class TranslationKey {
+
+        private final TrafficSelector selector;
+        private final TrafficTreatment treatment;
+        private final Integer nextId;
+
+        private TranslationKey(TrafficSelector selector,
+                               TrafficTreatment treatment,
+                               Integer nextId) {
+            this.selector = selector;
+            this.treatment = treatment;
+            this.nextId = nextId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TranslationKey)) {
+                return false;
+            }
+            final TranslationKey other = (TranslationKey) o;
+            return Objects.equals(selector, other.selector) &&
+                    Objects.equals(treatment, other.treatment) &&
+                    Objects.equals(nextId, other.nextId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(selector, treatment, nextId);
+        }
+    }
+
+    /**
+     * Table, selector and treatment of a flow rule translated from an
+     * objective.
+     */
+    private static final class Translation {
+
+        private final PiTableId tableId;
+        private final TrafficSelector selector;
+        private final TrafficTreatment treatment;
+
+        private Translation(PiTableId tableId, PiCriterion match,
+                            PiTableAction action) {
+            this.tableId = tableId;
+            this.selector = DefaultTrafficSelector.builder()
+                    .matchPi(match).build();
+            this.treatment = DefaultTrafficTreatment.builder()
+                    .piTableAction(action).build();
+        }
+    }
+
+    /**
+     * Group of a next objective, stored in the flow objective store as the
+     * group type, the group ID, and the priority and timeout of the next hop
+     * table entry (a negative timeout if permanent). The entry attributes are
+     * the ones of the objective which added the group, such that the entry is
+     * rebuilt with the same flow ID when the group is removed.
+     */
+    private static final class NextEntry implements NextGroup {
+
+        private static final int DATA_LENGTH = 13;
+
+        private final GroupDescription.Type type;
+        private final int groupId;
+        private final int priority;
+        private final int timeout;
+
+        private NextEntry(GroupDescription.Type type, int groupId,
+                          Objective obj) {
+            this(type, groupId, obj.priority(), obj.permanent() ? -1 : obj.timeout());
+        }
+
+        private NextEntry(GroupDescription.Type type, int groupId,
+                          int priority, int timeout) {
+            this.type = type;
+            this.groupId = groupId;
+            this.priority = priority;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public byte[] data() {
+            return ByteBuffer.allocate(DATA_LENGTH)
+                    .put((byte) type.ordinal())
+                    .putInt(groupId)
+                    .putInt(priority)
+                    .putInt(timeout)
+                    .array();
+        }
+
+        private static NextEntry decode(byte[] data) {
+            if (data == null || data.length != DATA_LENGTH) {
+                return null;
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            return new NextEntry(GroupDescription.Type.values()[buffer.get()],
+                                 buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    /**
+     * Next objective waiting for its group to be acknowledged by the device.
+     */
+    private static final class PendingNext {
+
+        private final NextObjective obj;
+        private final NextEntry entry;
+
+        private PendingNext(NextObjective obj, NextEntry entry) {
+            this.obj = obj;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Listener of group events which completes the next objectives waiting
+     * for the groups of the device.
+     */
+    private final class InternalGroupListener implements GroupListener {
+
+        @Override
+        public boolean isRelevant(GroupEvent event) {
+            return event.subject().deviceId().equals(deviceId)
+                    && !pendingNexts.isEmpty();
+        }
+
+        @Override
+        public void event(GroupEvent event) {
+            final GroupKey groupKey = event.subject().appCookie();
+            switch (event.type()) {
+                case GROUP_ADDED:
+                case GROUP_UPDATED:
+                    if (event.subject().state() == Group.GroupState.ADDED) {
+                        groupInstalled(groupKey);
+                    }
+                    break;
+                case GROUP_ADD_FAILED:
+                case GROUP_UPDATE_FAILED:
+                    groupFailed(groupKey, ObjectiveError.GROUPINSTALLATIONFAILED);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Flow rule operations context which reports the outcome of the
+     * operations to the context of the objective they were derived from.
+     */
+    private static final class ObjectiveFlowContext implements FlowRuleOperationsContext {
+
+        private final Objective obj;
+
+        private ObjectiveFlowContext(Objective obj) {
+            this.obj = obj;
+        }
+
+        @Override
+        public void onSuccess(FlowRuleOperations ops) {
+            obj.context().ifPresent(c -> c.onSuccess(obj));
+        }
+
+        @Override
+        public void onError(FlowRuleOperations ops) {
+            obj.context().ifPresent(c -> c.onError(
+                    obj, ObjectiveError.FLOWINSTALLATIONFAILED));
+        }
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.rest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.rest.AbstractWebResource;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Query and reset the app metrics.
+ */
+@Path("metrics")
+public class MetricsWebResource extends AbstractWebResource {
+
+    /**
+     * Gets all latency histograms and counters of the app. Latencies are
+     * expressed in microseconds.
+     *
+     * @return 200 OK with the app metrics
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        final ObjectNode root = mapper().createObjectNode();
+        final ObjectNode latencies = root.putObject("latencies");
+        AppMetrics.latencies().forEach((name, h) -> latencies.putObject(name)
+                .put("count", h.count())
+                .put("mean", h.meanMicros())
+                .put("p50", h.percentileMicros(50))
+                .put("p90", h.percentileMicros(90))
+                .put("p99", h.percentileMicros(99))
+                .put("max", h.maxMicros()));
+        final ObjectNode counters = root.putObject("counters");
+        AppMetrics.counters().forEach(counters::put);
+        return ok(root).build();
+    }
+
+    /**
+     * Resets all metrics of the app.
+     *
+     * @return 204 NO CONTENT
+     */
+    @DELETE
+    public Response resetMetrics() {
+        AppMetrics.reset();
+        return Response.noContent().build();
+    }
+}
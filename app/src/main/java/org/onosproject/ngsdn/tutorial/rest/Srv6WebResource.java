@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onosproject.ngsdn.tutorial.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ngsdn.tutorial.Srv6Component;
+import org.onosproject.ngsdn.tutorial.common.Srv6ImportReport;
+import org.onosproject.ngsdn.tutorial.common.Srv6Policy;
+import org.onosproject.rest.AbstractWebResource;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.onlab.util.Tools.readTreeFromStream;
+
+/**
+ * Manage SRv6 transit policies.
+ */
+@Path("srv6")
+public class Srv6WebResource extends AbstractWebResource {
+
+    private static final String POLICIES = "policies";
+    private static final String DEVICE_ID = "deviceId";
+    private static final String PREFIX = "prefix";
+    private static final String PREFIX_LENGTH = "prefixLength";
+    private static final String SEGMENTS = "segments";
+
+    /**
+     * Gets the SRv6 transit policies installed on a device.
+     *
+     * @param deviceId device ID
+     * @return 200 OK with the list of policies
+     */
+    @GET
+    @Path("policies/{deviceId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPolicies(@PathParam("deviceId") String deviceId) {
+        final ObjectNode root = mapper().createObjectNode();
+        final ArrayNode policies = root.putArray(POLICIES);
+        get(Srv6Component.class).getPolicies(DeviceId.deviceId(deviceId))
+                .forEach(p -> policies.add(encodePolicy(p)));
+        return ok(root).build();
+    }
+
+    /**
+     * Imports SRv6 transit policies in bulk. Each policy has a device ID, a
+     * destination IPv6 prefix (either in CIDR notation or with a separate
+     * prefix length, 128 by default) and a list of segments. Malformed
+     * requests are rejected as a whole, while policies that cannot be applied
+     * are listed as failures in the response.
+     *
+     * @param stream JSON object with an array of policies
+     * @return 200 OK with a summary of the import
+     */
+    @POST
+    @Path("policies")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response importPolicies(InputStream stream) {
+        return importPolicies(stream, false);
+    }
+
+    /**
+     * Replaces the SRv6 transit policies of the devices found in the request,
+     * with the same format as the bulk import. For each device, policies to
+     * add, modify and remove are programmed in a single batch. Devices with
+     * at least one invalid policy are left unchanged.
+     *
+     * @param stream JSON object with an array of policies
+     * @return 200 OK with a summary of the import
+     */
+    @PUT
+    @Path("policies")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response replacePolicies(InputStream stream) {
+        return importPolicies(stream, true);
+    }
+
+    private Response importPolicies(InputStream stream, boolean replace) {
+        final List<Srv6Policy> policies = Lists.newArrayList();
+        try {
+            final JsonNode array = readTreeFromStream(mapper(), stream).path(POLICIES);
+            if (!array.isArray()) {
+                throw new IllegalArgumentException("Missing array of " + POLICIES);
+            }
+            array.forEach(node -> policies.add(decodePolicy(node)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        final Srv6ImportReport report =
+                get(Srv6Component.class).importPolicies(policies, replace);
+        final ObjectNode root = mapper().createObjectNode()
+                .put("total", report.total())
+                .put("applied", report.applied())
+                .put("changed", report.changed())
+                .put("duplicates", report.duplicates())
+                .put("failed", report.failures().size());
+        final ArrayNode failures = root.putArray("failures");
+        report.failures().forEach(failures::add);
+        return ok(root).build();
+    }
+
+    private ObjectNode encodePolicy(Srv6Policy policy) {
+        final ObjectNode node = mapper().createObjectNode()
+                .put(DEVICE_ID, policy.deviceId().toString())
+                .put(PREFIX, policy.prefix().toString());
+        final ArrayNode segments = node.putArray(SEGMENTS);
+        policy.segments().forEach(sid -> segments.add(sid.toString()));
+        return node;
+    }
+
+    private static Srv6Policy decodePolicy(JsonNode node) {
+        final String deviceId = node.path(DEVICE_ID).asText(null);
+        final String prefix = node.path(PREFIX).asText(null);
+        final JsonNode segments = node.path(SEGMENTS);
+        if (deviceId == null || prefix == null || !segments.isArray()) {
+            throw new IllegalArgumentException(
+                    "Policy must have " + DEVICE_ID + ", " + PREFIX +
+                            " and " + SEGMENTS + ": " + node);
+        }
+        final Ip6Prefix ip6Prefix = prefix.contains("/")
+                ? Ip6Prefix.valueOf(prefix)
+                : Ip6Prefix.valueOf(Ip6Address.valueOf(prefix),
+                                    node.path(PREFIX_LENGTH).asInt(Ip6Address.BIT_LENGTH));
+        final List<Ip6Address> sids = Lists.newArrayList();
+        segments.forEach(sid -> sids.add(Ip6Address.valueOf(sid.asText())));
+        return new Srv6Policy(DeviceId.deviceId(deviceId), ip6Prefix, sids);
+    }
+}
@@ -0,0 +1 @@
+package org.onosproject.ngsdn.tutorial.rest;
\ No newline at end of file
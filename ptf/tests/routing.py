@@ -88,7 +88,7 @@ class IPv6RoutingTest(P4RuntimeTest):
         ))
         # ---- END SOLUTION ----
 
-        # Insert L3 routing entry to map pkt's IPv6 dst addr to group
+        # Insert L3 routing entry to map pkt's IPv6 dst addr to next ID
         # *** TODO EXERCISE 5
         # Modify names to match content of P4Info file (look for the fully
         # qualified name of tables, match fields, and actions.
@@ -99,6 +99,19 @@ class IPv6RoutingTest(P4RuntimeTest):
                 # LPM match (value, prefix)
                 "MODIFY ME": (pkt[IPv6].dst, 128)
             },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "MODIFY ME": 1
+            },
             group_id=1
         ))
         # ---- END SOLUTION ----
@@ -131,6 +144,96 @@ class IPv6RoutingTest(P4RuntimeTest):
         testutils.verify_packet(self, exp_pkt, self.port2)
 
 
+@group("routing")
+class IPv6NeighborRoutingTest(P4RuntimeTest):
+    """Tests IPv6 routing to a host of a directly connected subnet, resolved
+    via the neighbor table.
+    """
+
+    def runTest(self):
+        # Test with different type of packets.
+        for pkt_type in ["tcpv6", "udpv6", "icmpv6"]:
+            print_inline("%s ... " % pkt_type)
+            pkt = getattr(testutils, "simple_%s_packet" % pkt_type)()
+            self.testPacket(pkt)
+
+    @autocleanup
+    def testPacket(self, pkt):
+        host_mac = HOST2_MAC
+
+        # Add entry to "My Station" table. Consider the given pkt's eth dst addr
+        # as myStationMac address.
+        # *** TODO EXERCISE 5
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": pkt[Ether].dst
+            },
+            action_name="NoAction"
+        ))
+        # ---- END SOLUTION ----
+
+        # Insert L3 routing entry for the subnet of pkt's IPv6 dst addr,
+        # resolving hosts via the neighbor table.
+        # *** TODO EXERCISE 5
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # LPM match (value, prefix)
+                "MODIFY ME": (pkt[IPv6].dst, 64)
+            },
+            action_name="MODIFY ME"
+        ))
+
+        # Map pkt's IPv6 dst addr to the host MAC
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "MODIFY ME": pkt[IPv6].dst
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": host_mac
+            }
+        ))
+        # ---- END SOLUTION ----
+
+        # Insert L2 entry to map host_mac to output port 2.
+        # *** TODO EXERCISE 5
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "MODIFY ME": host_mac
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": self.port2
+            }
+        ))
+        # ---- END SOLUTION ----
+
+        # Expected pkt should have routed MAC addresses and decremented hop
+        # limit (TTL).
+        exp_pkt = pkt.copy()
+        pkt_route(exp_pkt, host_mac)
+        pkt_decrement_ttl(exp_pkt)
+
+        testutils.send_packet(self, self.port1, str(pkt))
+        testutils.verify_packet(self, exp_pkt, self.port2)
+
+
 @group("routing")
 class NdpReplyGenTest(P4RuntimeTest):
     """Tests automatic generation of NDP Neighbor Advertisement for IPV6
@@ -86,6 +86,11 @@ class Srv6InsertTest(P4RuntimeTest):
         sid_lists = (
             [SWITCH2_IPV6, SWITCH3_IPV6, HOST2_IPV6],
             [SWITCH2_IPV6, HOST2_IPV6],
+            [SWITCH2_IPV6, SWITCH3_IPV6, SWITCH4_IPV6, HOST2_IPV6],
+            [SWITCH2_IPV6, SWITCH3_IPV6, SWITCH4_IPV6, SWITCH1_IPV6,
+             HOST2_IPV6],
+            [SWITCH2_IPV6, SWITCH3_IPV6, SWITCH4_IPV6, SWITCH1_IPV6,
+             SWITCH3_IPV6, HOST2_IPV6],
         )
         next_hop_mac = SWITCH2_MAC
 
@@ -159,6 +164,19 @@ class Srv6InsertTest(P4RuntimeTest):
                 # LPM match (value, prefix)
                 "hdr.ipv6.dst_addr": (first_sid, 128)
             },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
             group_id=1
         ))
 
@@ -262,6 +280,19 @@ class Srv6TransitTest(P4RuntimeTest):
                 # LPM match (value, prefix)
                 "hdr.ipv6.dst_addr": (pkt[IPv6].dst, 128)
             },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
             group_id=1
         ))
 
@@ -306,6 +337,8 @@ class Srv6EndTest(P4RuntimeTest):
         sid_lists = (
             [SWITCH2_IPV6, SWITCH3_IPV6, HOST2_IPV6],
             [SWITCH2_IPV6, SWITCH3_IPV6, SWITCH4_IPV6, HOST2_IPV6],
+            [SWITCH2_IPV6, SWITCH3_IPV6, SWITCH4_IPV6, SWITCH1_IPV6,
+             SWITCH3_IPV6, HOST2_IPV6],
         )
         next_hop_mac = SWITCH3_MAC
 
@@ -365,6 +398,19 @@ class Srv6EndTest(P4RuntimeTest):
                 # LPM match (value, prefix)
                 "hdr.ipv6.dst_addr": (next_sid, 128)
             },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
             group_id=1
         ))
 
@@ -471,6 +517,19 @@ class Srv6EndPspTest(P4RuntimeTest):
                 # LPM match (value, prefix)
                 "hdr.ipv6.dst_addr": (next_sid, 128)
             },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
             group_id=1
         ))
 
@@ -507,3 +566,403 @@ class Srv6EndPspTest(P4RuntimeTest):
 
         testutils.send_packet(self, self.port1, str(pkt))
         testutils.verify_packet(self, exp_pkt, self.port2)
+
+
+@group("srv6")
+class Srv6UsidShiftTest(P4RuntimeTest):
+    """Tests SRv6 compressed SID (uSID, F3216 format) shift-and-forward
+    behavior, where the switch uSID is the active one in the IPv6 dst (uSID
+    container), and the switch shifts the container to make the next uSID
+    active, without modifying the SRv6 header.
+    """
+
+    def runTest(self):
+        my_usid_locator = "fc00:0:2::"
+        container = "fc00:0:2:3:4::"
+        next_container = "fc00:0:3:4::"
+        next_hop_mac = SWITCH3_MAC
+
+        for pkt_type in ["tcpv6", "udpv6", "icmpv6"]:
+            print_inline("%s ... " % pkt_type)
+            pkt = getattr(testutils, "simple_%s_packet" % pkt_type)()
+
+            pkt = insert_srv6_header(pkt, [container, HOST2_IPV6])
+            self.testPacket(pkt, next_hop_mac, my_usid_locator, next_container)
+
+    @autocleanup
+    def testPacket(self, pkt, next_hop_mac, my_usid_locator, next_container):
+
+        # *** TODO EXERCISE 6
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+
+        # Add entry to "My Station" table. Consider the given pkt's eth dst addr
+        # as myStationMac address.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": pkt[Ether].dst
+            },
+            action_name="NoAction"
+        ))
+
+        # This should be matched, we want the uSID shift behavior to be
+        # applied to containers with our uSID as the active one.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Longest prefix match (value, prefix length)
+                "MODIFY ME": (my_usid_locator, 48)
+            },
+            action_name="MODIFY ME"
+        ))
+
+        # Insert ECMP group with only one member (next_hop_mac)
+        self.insert(self.helper.build_act_prof_group(
+            act_prof_name="MODIFY ME",
+            group_id=1,
+            actions=[
+                # List of tuples (action name, {action param: value})
+                ("MODIFY ME", {"MODIFY ME": next_hop_mac}),
+            ]
+        ))
+
+        # After the shift, the next uSID is the active one, we should route
+        # based on its locator.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # LPM match (value, prefix)
+                "hdr.ipv6.dst_addr": (next_container, 48)
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
+            group_id=1
+        ))
+
+        # Map next_hop_mac to output port
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": next_hop_mac
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": self.port2
+            }
+        ))
+
+        # ---- END SOLUTION ----
+
+        # Build expected packet from the given one...
+        exp_pkt = pkt.copy()
+
+        # Expect IPv6 dst to be the shifted container, while the SRv6 header
+        # is left untouched.
+        exp_pkt[IPv6].dst = next_container
+
+        # Route and decrement TTL
+        pkt_route(exp_pkt, next_hop_mac)
+        pkt_decrement_ttl(exp_pkt)
+
+        # Bonus: update P4 program to calculate correct checksum
+        set_cksum(pkt, 1)
+        set_cksum(exp_pkt, 1)
+
+        testutils.send_packet(self, self.port1, str(pkt))
+        testutils.verify_packet(self, exp_pkt, self.port2)
+
+
+@group("srv6")
+class Srv6EndDx6Test(P4RuntimeTest):
+    """Tests SRv6 End.DX6 behavior, where the switch removes the SRv6 header
+    and forwards the packet to the final destination (last SID in the list)
+    via the given next hop, without going through the routing table.
+    """
+
+    def runTest(self):
+        my_sid = SWITCH3_IPV6
+        sid_lists = (
+            [SWITCH3_IPV6, HOST2_IPV6],
+            [SWITCH3_IPV6, SWITCH4_IPV6, HOST2_IPV6],
+        )
+        next_hop_mac = HOST2_MAC
+
+        for sid_list in sid_lists:
+            for pkt_type in ["tcpv6", "udpv6", "icmpv6"]:
+                print_inline("%s %d SIDs ... " % (pkt_type, len(sid_list)))
+                pkt = getattr(testutils, "simple_%s_packet" % pkt_type)()
+
+                pkt = insert_srv6_header(pkt, sid_list)
+                self.testPacket(pkt, sid_list, next_hop_mac, my_sid)
+
+    @autocleanup
+    def testPacket(self, pkt, sid_list, next_hop_mac, my_sid):
+
+        # *** TODO EXERCISE 6
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+
+        # Add entry to "My Station" table. Consider the given pkt's eth dst addr
+        # as myStationMac address.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": pkt[Ether].dst
+            },
+            action_name="NoAction"
+        ))
+
+        # This should be matched, we want SRv6 End.DX6 behavior to be applied.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Longest prefix match (value, prefix length)
+                "MODIFY ME": (my_sid, 128)
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": next_hop_mac
+            }
+        ))
+
+        # No routing entry, the next hop is given by the End.DX6 action.
+
+        # Map next_hop_mac to output port
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": next_hop_mac
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": self.port2
+            }
+        ))
+
+        # ---- END SOLUTION ----
+
+        # Build expected packet from the given one...
+        exp_pkt = pkt.copy()
+
+        # Expect IPv6 dst to be the final destination, without SRv6 header.
+        exp_pkt[IPv6].dst = sid_list[-1]
+        pop_srv6_header(exp_pkt)
+
+        # Route and decrement TTL
+        pkt_route(exp_pkt, next_hop_mac)
+        pkt_decrement_ttl(exp_pkt)
+
+        # Bonus: update P4 program to calculate correct checksum
+        set_cksum(pkt, 1)
+        set_cksum(exp_pkt, 1)
+
+        testutils.send_packet(self, self.port1, str(pkt))
+        testutils.verify_packet(self, exp_pkt, self.port2)
+
+
+@group("srv6")
+class Srv6EndDt6Test(P4RuntimeTest):
+    """Tests SRv6 End.DT6 behavior, where the switch removes the SRv6 header
+    and routes the packet based on the final destination (last SID in the
+    list).
+    """
+
+    def runTest(self):
+        my_sid = SWITCH3_IPV6
+        sid_lists = (
+            [SWITCH3_IPV6, HOST2_IPV6],
+            [SWITCH3_IPV6, SWITCH4_IPV6, HOST2_IPV6],
+        )
+        next_hop_mac = HOST2_MAC
+
+        for sid_list in sid_lists:
+            for pkt_type in ["tcpv6", "udpv6", "icmpv6"]:
+                print_inline("%s %d SIDs ... " % (pkt_type, len(sid_list)))
+                pkt = getattr(testutils, "simple_%s_packet" % pkt_type)()
+
+                pkt = insert_srv6_header(pkt, sid_list)
+                self.testPacket(pkt, sid_list, next_hop_mac, my_sid)
+
+    @autocleanup
+    def testPacket(self, pkt, sid_list, next_hop_mac, my_sid):
+
+        # *** TODO EXERCISE 6
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+
+        # Add entry to "My Station" table. Consider the given pkt's eth dst addr
+        # as myStationMac address.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": pkt[Ether].dst
+            },
+            action_name="NoAction"
+        ))
+
+        # This should be matched, we want SRv6 End.DT6 behavior to be applied.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Longest prefix match (value, prefix length)
+                "MODIFY ME": (my_sid, 128)
+            },
+            action_name="MODIFY ME"
+        ))
+
+        # Insert ECMP group with only one member (next_hop_mac)
+        self.insert(self.helper.build_act_prof_group(
+            act_prof_name="MODIFY ME",
+            group_id=1,
+            actions=[
+                # List of tuples (action name, {action param: value})
+                ("MODIFY ME", {"MODIFY ME": next_hop_mac}),
+            ]
+        ))
+
+        # After decapsulation, we should route based on the final destination.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # LPM match (value, prefix)
+                "hdr.ipv6.dst_addr": (sid_list[-1], 128)
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "next_id": 1
+            }
+        ))
+
+        # Map next ID to the ECMP group
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match
+                "local_metadata.next_id": 1
+            },
+            group_id=1
+        ))
+
+        # Map next_hop_mac to output port
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": next_hop_mac
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": self.port2
+            }
+        ))
+
+        # ---- END SOLUTION ----
+
+        # Build expected packet from the given one...
+        exp_pkt = pkt.copy()
+
+        # Expect IPv6 dst to be the final destination, without SRv6 header.
+        exp_pkt[IPv6].dst = sid_list[-1]
+        pop_srv6_header(exp_pkt)
+
+        # Route and decrement TTL
+        pkt_route(exp_pkt, next_hop_mac)
+        pkt_decrement_ttl(exp_pkt)
+
+        # Bonus: update P4 program to calculate correct checksum
+        set_cksum(pkt, 1)
+        set_cksum(exp_pkt, 1)
+
+        testutils.send_packet(self, self.port1, str(pkt))
+        testutils.verify_packet(self, exp_pkt, self.port2)
+
+
+@group("srv6")
+class Srv6EndDecapNoSrhTest(P4RuntimeTest):
+    """Tests that packets without SRv6 header destined to an End.DX6 or
+    End.DT6 SID are dropped, as there is no segment list to take the final
+    destination from.
+    """
+
+    def runTest(self):
+        my_sid = SWITCH3_IPV6
+        next_hop_mac = HOST2_MAC
+
+        for action in ["srv6_end_dx6", "srv6_end_dt6"]:
+            for pkt_type in ["tcpv6", "udpv6", "icmpv6"]:
+                print_inline("%s %s ... " % (action, pkt_type))
+                pkt = getattr(testutils, "simple_%s_packet" % pkt_type)(
+                    ipv6_dst=my_sid)
+                self.testPacket(pkt, action, next_hop_mac, my_sid)
+
+    @autocleanup
+    def testPacket(self, pkt, action, next_hop_mac, my_sid):
+
+        # *** TODO EXERCISE 6
+        # Modify names to match content of P4Info file (look for the fully
+        # qualified name of tables, match fields, and actions.
+        # ---- START SOLUTION ----
+
+        # Add entry to "My Station" table. Consider the given pkt's eth dst addr
+        # as myStationMac address.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": pkt[Ether].dst
+            },
+            action_name="NoAction"
+        ))
+
+        # This should be matched, but the action should not be applied
+        # without SRv6 header.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Longest prefix match (value, prefix length)
+                "MODIFY ME": (my_sid, 128)
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": next_hop_mac
+            } if action == "srv6_end_dx6" else None
+        ))
+
+        # Map next_hop_mac to output port, such that the packet would be
+        # forwarded if not dropped.
+        self.insert(self.helper.build_table_entry(
+            table_name="MODIFY ME",
+            match_fields={
+                # Exact match.
+                "MODIFY ME": next_hop_mac
+            },
+            action_name="MODIFY ME",
+            action_params={
+                "MODIFY ME": self.port2
+            }
+        ))
+
+        # ---- END SOLUTION ----
+
+        testutils.send_packet(self, self.port1, str(pkt))
+        testutils.verify_no_other_packets(self)
@@ -16,25 +16,33 @@
 
 package org.onosproject.ngsdn.tutorial;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.onlab.packet.Ip6Address;
 import org.onlab.packet.Ip6Prefix;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
 import org.onlab.packet.MacAddress;
 import org.onlab.util.ItemNotFoundException;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.cfg.ConfigProperty;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.Host;
-import org.onosproject.net.Link;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.config.NetworkConfigService;
 import org.onosproject.net.device.DeviceEvent;
 import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperations;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.criteria.PiCriterion;
 import org.onosproject.net.group.GroupDescription;
@@ -50,54 +58,124 @@ import org.onosproject.net.link.LinkListener;
 import org.onosproject.net.link.LinkService;
 import org.onosproject.net.pi.model.PiActionId;
 import org.onosproject.net.pi.model.PiActionParamId;
+import org.onosproject.net.pi.model.PiActionProfileId;
 import org.onosproject.net.pi.model.PiMatchFieldId;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
 import org.onosproject.net.pi.runtime.PiActionProfileGroupId;
 import org.onosproject.net.pi.runtime.PiTableAction;
+import org.onosproject.net.pi.service.PiPipeconfService;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceHandoffListener;
 import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
+import org.onosproject.ngsdn.tutorial.common.FabricRouteInfo;
+import org.onosproject.ngsdn.tutorial.common.PriorityTaskExecutor.Priority;
+import org.onosproject.ngsdn.tutorial.common.RuleBatch;
+import org.onosproject.ngsdn.tutorial.common.SelectorLimits;
+import org.onosproject.ngsdn.tutorial.common.Srv6SidFunction;
+import org.onosproject.ngsdn.tutorial.common.Srv6Sids;
+import org.onosproject.ngsdn.tutorial.common.TopologySnapshot;
 import org.onosproject.ngsdn.tutorial.common.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Streams.stream;
 import static org.onosproject.ngsdn.tutorial.AppConstants.INITIAL_SETUP_DELAY;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.NEIGHBOR_TABLE_ENABLED;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.NEIGHBOR_TABLE_ENABLED_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_COMPRESS_SIDS;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_COMPRESS_SIDS_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.FLOW_RULES_INSTALLED;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.GROUPS_INSTALLED;
 
 /**
  * App component that configures devices to provide IPv6 routing capabilities
  * across the whole fabric.
+ * <p>
+ * Each ONOS instance computes routes only for the devices it masters. Routes
+ * towards other devices are computed from the route information published by
+ * their master in the {@link FabricRouteCache}, and when the mastership of a
+ * device changes, the new master takes over only that device, writing all its
+ * groups and then all its flow rules in one batch.
+ * <p>
+ * By default, hosts are routed with one /128 route and one group per host
+ * address. When {@value OsgiPropertyConstants#NEIGHBOR_TABLE_ENABLED} is set,
+ * leaves instead install one route per directly connected subnet, and resolve
+ * hosts with an exact-match neighbor table mapping their address to their
+ * MAC, such that the number of hosts is not bounded by the capacity of the
+ * LPM routing table and of the action selector.
  */
 @Component(
         immediate = true,
         // *** TODO EXERCISE 5
         // set to true when ready
-        enabled = true
+        enabled = true,
+        property = {
+                NEIGHBOR_TABLE_ENABLED + ":Boolean=" + NEIGHBOR_TABLE_ENABLED_DEFAULT,
+        }
 )
 public class Ipv6RoutingComponent {
 
     private static final Logger log = LoggerFactory.getLogger(Ipv6RoutingComponent.class);
 
     private static final int DEFAULT_ECMP_GROUP_ID = 0xec3b0000;
+    private static final int BACKUP_ECMP_GROUP_ID_BASE = 0xec3c0000;
+    private static final int MAX_BACKUP_ECMP_GROUPS = 0x10000;
     private static final long GROUP_INSERT_DELAY_MILLIS = 200;
 
+    private static final String FABRIC_ROUTES_TASK = "routing/fabric-routes";
+    private static final String MY_STATION_TASK = "routing/my-station";
+    private static final String HOST_ROUTES_TASK = "routing/host-routes";
+    private static final String FAILOVER_TASK = "routing/failover";
+
+    private static final String GROUP_TO_FLOW_METRIC = "routing.group-to-flow.delay";
+    private static final String TRUNCATED_GROUPS = "routing.ecmp.truncated-groups";
+
     private final HostListener hostListener = new InternalHostListener();
     private final LinkListener linkListener = new InternalLinkListener();
     private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final DeviceHandoffListener handoffListener = new InternalHandoffListener();
+    private final Consumer<DeviceId> routeCacheListener = this::routeInfoChanged;
+
+    /** Route hosts via subnet routes and the neighbor table. */
+    private boolean neighborTableEnabled = NEIGHBOR_TABLE_ENABLED_DEFAULT;
 
     private ApplicationId appId;
 
+    // ECMP routes and pre-installed backup groups of each leaf, used for fast
+    // re-route when a spine uplink goes down.
+    private final Map<DeviceId, LeafEcmpState> leafEcmpStates = Maps.newConcurrentMap();
+
+    // Backup group IDs allocated on each leaf, by excluded spine. IDs are
+    // never reallocated to a different spine, hence they never collide.
+    private final Map<DeviceId, Map<DeviceId, Integer>> backupGroupIdAllocations =
+            Maps.newConcurrentMap();
+
+    // Batch collecting the groups and flow rules of the device being set up
+    // on this thread, if any.
+    private final ThreadLocal<RuleBatch> currentBatch = new ThreadLocal<>();
+
     //--------------------------------------------------------------------------
     // ONOS CORE SERVICE BINDING
     //
@@ -126,12 +204,33 @@ public class Ipv6RoutingComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private InterfaceService interfaceService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ComponentConfigService compCfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private PiPipeconfService pipeconfService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private LinkService linkService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private MainComponent mainComponent;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricTopologyComponent topologyComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ConvergenceTracer tracer;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricPartitionComponent partitionComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricRouteCache routeCache;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
     //--------------------------------------------------------------------------
     // COMPONENT ACTIVATION.
     //
@@ -140,12 +239,17 @@ public class Ipv6RoutingComponent {
     //--------------------------------------------------------------------------
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         appId = mainComponent.getAppId();
 
+        compCfgService.registerProperties(getClass());
+        readComponentConfiguration(context);
+
         hostService.addListener(hostListener);
         linkService.addListener(linkListener);
         deviceService.addListener(deviceListener);
+        partitionComponent.addListener(handoffListener);
+        routeCache.addListener(routeCacheListener);
 
         // Schedule set up for all devices.
         mainComponent.scheduleTask(this::setUpAllDevices, INITIAL_SETUP_DELAY);
@@ -153,11 +257,26 @@ public class Ipv6RoutingComponent {
         log.info("Started");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        if (readComponentConfiguration(context)) {
+            // Set up devices again with the new configuration. Entries
+            // installed with the previous one are left in place, as they
+            // still forward packets correctly.
+            mainComponent.scheduleTask(this::setUpAllDevices, 0);
+        }
+    }
+
     @Deactivate
     protected void deactivate() {
+        compCfgService.unregisterProperties(getClass(), false);
         hostService.removeListener(hostListener);
         linkService.removeListener(linkListener);
         deviceService.removeListener(deviceListener);
+        partitionComponent.removeListener(handoffListener);
+        routeCache.removeListener(routeCacheListener);
+        leafEcmpStates.clear();
+        backupGroupIdAllocations.clear();
 
         log.info("Stopped");
     }
@@ -209,16 +328,19 @@ public class Ipv6RoutingComponent {
         final FlowRule myStationRule = Utils.buildFlowRule(
                 deviceId, appId, tableId, match, action);
 
-        flowRuleService.applyFlowRules(myStationRule);
+        installFlowRules(Collections.singleton(myStationRule));
     }
 
     /**
-     * Creates an ONOS SELECT group for the routing table to provide ECMP
+     * Creates an ONOS SELECT group for the next hop table to provide ECMP
      * forwarding for the given collection of next hop MAC addresses. ONOS
      * SELECT groups are equivalent to P4Runtime action selector groups.
      * <p>
      * This method will be called by the routing policy methods below to insert
      * groups in the L3 table
+     * <p>
+     * If there are more next hops than the maximum group size of the action
+     * selector, only the first ones (by MAC address) are used.
      *
      * @param nextHopMacs the collection of mac addresses of next hops
      * @param deviceId    the device where the group will be installed
@@ -231,14 +353,16 @@ public class Ipv6RoutingComponent {
         String actionProfileId = "IngressPipeImpl.ecmp_selector";
 
         final List<PiAction> actions = Lists.newArrayList();
+        final List<MacAddress> members = fitToSelector(
+                deviceId, actionProfileId, nextHopMacs);
 
         // Build one "set next hop" action for each next hop
         // *** TODO EXERCISE 5
         // Modify P4Runtime entity names to match content of P4Info file (look
         // for the fully qualified name of tables, match fields, and actions.
         // ---- START SOLUTION ----
-        final String tableId = "IngressPipeImpl.routing_v6_table";
-        for (MacAddress nextHopMac : nextHopMacs) {
+        final String tableId = "IngressPipeImpl.next_hop_table";
+        for (MacAddress nextHopMac : members) {
             final PiAction action = PiAction.builder()
                     .withId(PiActionId.of("IngressPipeImpl.set_next_hop"))
                     .withParameter(new PiActionParam(
@@ -258,15 +382,16 @@ public class Ipv6RoutingComponent {
 
     /**
      * Creates a routing flow rule that matches on the given IPv6 prefix and
-     * executes the given group ID (created before).
+     * sets the given next ID. The next ID is then mapped to a group by the
+     * next hop table (see {@link #createNextIdRule(DeviceId, int, int)}).
      *
      * @param deviceId  the device where flow rule will be installed
      * @param ip6Prefix the IPv6 prefix
-     * @param groupId   the group ID
+     * @param nextId    the next ID
      * @return a flow rule
      */
     private FlowRule createRoutingRule(DeviceId deviceId, Ip6Prefix ip6Prefix,
-                                       int groupId) {
+                                       int nextId) {
 
         // *** TODO EXERCISE 5
         // Modify P4Runtime entity names to match content of P4Info file (look
@@ -280,6 +405,42 @@ public class Ipv6RoutingComponent {
                         ip6Prefix.prefixLength())
                 .build();
 
+        final PiAction action = PiAction.builder()
+                .withId(PiActionId.of("IngressPipeImpl.set_next_id"))
+                .withParameter(new PiActionParam(
+                        PiActionParamId.of("next_id"), nextId))
+                .build();
+        // ---- END SOLUTION ----
+
+        return Utils.buildFlowRule(
+                deviceId, appId, tableId, match, action);
+    }
+
+    /**
+     * Creates a flow rule for the next hop table mapping the given next ID to
+     * the given group ID (created before).
+     * <p>
+     * Routes point to next IDs instead of groups, such that all routes sharing
+     * the same next hops can be re-pointed to a different group by modifying
+     * only this flow rule.
+     *
+     * @param deviceId the device where flow rule will be installed
+     * @param nextId   the next ID
+     * @param groupId  the group ID
+     * @return a flow rule
+     */
+    private FlowRule createNextIdRule(DeviceId deviceId, int nextId,
+                                      int groupId) {
+
+        // *** TODO EXERCISE 5
+        // Modify P4Runtime entity names to match content of P4Info file (look
+        // for the fully qualified name of tables, match fields, and actions.
+        // ---- START SOLUTION ----
+        final String tableId = "IngressPipeImpl.next_hop_table";
+        final PiCriterion match = PiCriterion.builder()
+                .matchExact(PiMatchFieldId.of("local_metadata.next_id"), nextId)
+                .build();
+
         final PiTableAction action = PiActionProfileGroupId.of(groupId);
         // ---- END SOLUTION ----
 
@@ -287,6 +448,74 @@ public class Ipv6RoutingComponent {
                 deviceId, appId, tableId, match, action);
     }
 
+    /**
+     * Creates a routing flow rule that matches on the given IPv6 prefix of a
+     * directly connected subnet, and resolves the destination host with the
+     * neighbor table (see
+     * {@link #createNeighborRule(DeviceId, Ip6Address, MacAddress)}).
+     *
+     * @param deviceId  the device where flow rule will be installed
+     * @param ip6Prefix the IPv6 prefix of the subnet
+     * @return a flow rule
+     */
+    private FlowRule createSubnetRoutingRule(DeviceId deviceId,
+                                             Ip6Prefix ip6Prefix) {
+
+        // *** TODO EXERCISE 5
+        // Modify P4Runtime entity names to match content of P4Info file (look
+        // for the fully qualified name of tables, match fields, and actions.
+        // ---- START SOLUTION ----
+        final String tableId = "IngressPipeImpl.routing_v6_table";
+        final PiCriterion match = PiCriterion.builder()
+                .matchLpm(
+                        PiMatchFieldId.of("hdr.ipv6.dst_addr"),
+                        ip6Prefix.address().toOctets(),
+                        ip6Prefix.prefixLength())
+                .build();
+
+        final PiAction action = PiAction.builder()
+                .withId(PiActionId.of("IngressPipeImpl.set_neighbor_lookup"))
+                .build();
+        // ---- END SOLUTION ----
+
+        return Utils.buildFlowRule(
+                deviceId, appId, tableId, match, action);
+    }
+
+    /**
+     * Creates a flow rule for the neighbor table mapping the given host IPv6
+     * address to the given host MAC.
+     *
+     * @param deviceId the device where flow rule will be installed
+     * @param hostAddr the host IPv6 address
+     * @param hostMac  the host MAC address
+     * @return a flow rule
+     */
+    private FlowRule createNeighborRule(DeviceId deviceId, Ip6Address hostAddr,
+                                        MacAddress hostMac) {
+
+        // *** TODO EXERCISE 5
+        // Modify P4Runtime entity names to match content of P4Info file (look
+        // for the fully qualified name of tables, match fields, and actions.
+        // ---- START SOLUTION ----
+        final String tableId = "IngressPipeImpl.neighbor_table";
+        final PiCriterion match = PiCriterion.builder()
+                .matchExact(PiMatchFieldId.of("hdr.ipv6.dst_addr"),
+                        hostAddr.toOctets())
+                .build();
+
+        final PiAction action = PiAction.builder()
+                .withId(PiActionId.of("IngressPipeImpl.set_next_hop"))
+                .withParameter(new PiActionParam(
+                        PiActionParamId.of("dmac"),
+                        hostMac.toBytes()))
+                .build();
+        // ---- END SOLUTION ----
+
+        return Utils.buildFlowRule(
+                deviceId, appId, tableId, match, action);
+    }
+
     /**
      * Creates a flow rule for the L2 table mapping the given next hop MAC to
      * the given output port.
@@ -362,11 +591,15 @@ public class Ipv6RoutingComponent {
         public void event(HostEvent event) {
             Host host = event.subject();
             DeviceId deviceId = host.location().deviceId();
-            mainComponent.getExecutorService().execute(() -> {
+            // Host routes dropped under load are recovered by setting up
+            // all devices again.
+            mainComponent.executeTask(Priority.BULK, HOST_ROUTES_TASK, tracer.traced(
+                    event.type() + " " + host.id(), () -> {
                 log.info("{} event! host={}, deviceId={}, port={}",
                         event.type(), host.id(), deviceId, host.location().port());
                 setUpHostRules(deviceId, host);
-            });
+            }), () -> mainComponent.scheduleResync(
+                    HOST_ROUTES_TASK, Ipv6RoutingComponent.this::setUpAllDevices));
         }
     }
 
@@ -390,8 +623,11 @@ public class Ipv6RoutingComponent {
             switch (event.type()) {
                 case LINK_ADDED:
                     break;
-                case LINK_UPDATED:
                 case LINK_REMOVED:
+                    // Only egress links of a leaf matter for fast re-route.
+                    return mastershipService.isLocalMaster(
+                            event.subject().src().deviceId());
+                case LINK_UPDATED:
                 default:
                     return false;
             }
@@ -405,22 +641,48 @@ public class Ipv6RoutingComponent {
         public void event(LinkEvent event) {
             DeviceId srcDev = event.subject().src().deviceId();
             DeviceId dstDev = event.subject().dst().deviceId();
+            String traceEvent = event.type() + " " + srcDev + "->" + dstDev;
 
+            if (event.type() == LinkEvent.Type.LINK_REMOVED) {
+                // Repairs are executed before any other pending task.
+                mainComponent.executeTask(Priority.REPAIR, FAILOVER_TASK, tracer.traced(
+                        traceEvent, () -> {
+                    log.info("{} event! Re-routing {}... linkSrc={}, linkDst={}",
+                            event.type(), srcDev, srcDev, dstDev);
+                    failOverLeafUplink(srcDev, dstDev);
+                }), () -> {
+                    // The leaf would keep using the failed uplink, recompute
+                    // its routes without it.
+                    log.warn("Failover of {} dropped, re-routing it later", srcDev);
+                    mainComponent.scheduleResync(FAILOVER_TASK + " " + srcDev, () -> {
+                        if (mastershipService.isLocalMaster(srcDev)) {
+                            setUpFabricRoutes(srcDev);
+                            setUpL2NextHopRules(srcDev);
+                        }
+                    });
+                });
+                return;
+            }
+
+            // Link events usually come in bursts (e.g. when a device
+            // connects), coalesce them so that routes are computed once.
             if (mastershipService.isLocalMaster(srcDev)) {
-                mainComponent.getExecutorService().execute(() -> {
+                mainComponent.submitDeviceTask(srcDev, FABRIC_ROUTES_TASK, tracer.traced(
+                        traceEvent, () -> {
                     log.info("{} event! Configuring {}... linkSrc={}, linkDst={}",
                             event.type(), srcDev, srcDev, dstDev);
                     setUpFabricRoutes(srcDev);
                     setUpL2NextHopRules(srcDev);
-                });
+                }));
             }
             if (mastershipService.isLocalMaster(dstDev)) {
-                mainComponent.getExecutorService().execute(() -> {
+                mainComponent.submitDeviceTask(dstDev, FABRIC_ROUTES_TASK, tracer.traced(
+                        traceEvent, () -> {
                     log.info("{} event! Configuring {}... linkSrc={}, linkDst={}",
                             event.type(), dstDev, srcDev, dstDev);
                     setUpFabricRoutes(dstDev);
                     setUpL2NextHopRules(dstDev);
-                });
+                }));
             }
         }
     }
@@ -449,14 +711,56 @@ public class Ipv6RoutingComponent {
 
         @Override
         public void event(DeviceEvent event) {
-            mainComponent.getExecutorService().execute(() -> {
-                DeviceId deviceId = event.subject().id();
+            DeviceId deviceId = event.subject().id();
+            mainComponent.submitDeviceTask(deviceId, MY_STATION_TASK, tracer.traced(
+                    event.type() + " " + deviceId, () -> {
                 log.info("{} event! device id={}", event.type(), deviceId);
                 setUpMyStationTable(deviceId);
-            });
+            }));
         }
     }
 
+    /**
+     * Listener of mastership handoffs, which sets up only the device taken
+     * over by this instance, or forgets the state of the device handed off.
+     */
+    class InternalHandoffListener implements DeviceHandoffListener {
+
+        @Override
+        public void acquired(DeviceId deviceId) {
+            tracer.traced("MASTER_CHANGED " + deviceId, () -> {
+                log.info("Taking over routing of {}...", deviceId);
+                setUpDeviceInBatch(deviceId);
+            }).run();
+        }
+
+        @Override
+        public void released(DeviceId deviceId) {
+            leafEcmpStates.remove(deviceId);
+            backupGroupIdAllocations.remove(deviceId);
+        }
+    }
+
+    /**
+     * Re-computes the fabric routes of the devices mastered by this instance
+     * when the route information of a device changes. Updates are usually
+     * published in bursts, e.g. at start-up, hence route computations are
+     * coalesced per device.
+     *
+     * @param changedDeviceId ID of the device whose route information changed
+     */
+    private void routeInfoChanged(DeviceId changedDeviceId) {
+        fabricDevices()
+                .filter(partitionComponent::isLocal)
+                .filter(deviceService::isAvailable)
+                .forEach(deviceId -> mainComponent.submitDeviceTask(
+                        deviceId, FABRIC_ROUTES_TASK, tracer.traced(
+                                "ROUTE_INFO_UPDATED " + changedDeviceId, () -> {
+                    setUpFabricRoutes(deviceId);
+                    setUpL2NextHopRules(deviceId);
+                })));
+    }
+
     //--------------------------------------------------------------------------
     // ROUTING POLICY METHODS
     //
@@ -472,26 +776,36 @@ public class Ipv6RoutingComponent {
      */
     private void setUpL2NextHopRules(DeviceId deviceId) {
 
-        Set<Link> egressLinks = linkService.getDeviceEgressLinks(deviceId);
+        final TopologySnapshot topo = topologyComponent.snapshot();
+        final int index = topo.indexOf(deviceId);
+        if (index < 0) {
+            return;
+        }
 
-        for (Link link : egressLinks) {
+        for (int edge = topo.edgeStart(index); edge < topo.edgeEnd(index); edge++) {
             // For each other switch directly connected to this.
-            final DeviceId nextHopDevice = link.dst().deviceId();
+            final DeviceId nextHopDevice = topo.deviceId(topo.edgeDst(edge));
+            final FabricRouteInfo nextHopInfo = routeCache.get(nextHopDevice);
+            if (nextHopInfo == null) {
+                // Not yet published by its master.
+                continue;
+            }
             // Get port of this device connecting to next hop.
-            final PortNumber outPort = link.src().port();
+            final PortNumber outPort = topo.edgeSrcPort(edge);
             // Get next hop MAC address.
-            final MacAddress nextHopMac = getMyStationMac(nextHopDevice);
+            final MacAddress nextHopMac = nextHopInfo.myStationMac();
 
             final FlowRule nextHopRule = createL2NextHopRule(
                     deviceId, nextHopMac, outPort);
 
-            flowRuleService.applyFlowRules(nextHopRule);
+            installFlowRules(Collections.singleton(nextHopRule));
         }
     }
 
     /**
      * Sets up the given device with the necessary rules to route packets to the
-     * given host.
+     * given host, i.e. either a route and a group for each host address, or
+     * neighbor table entries if {@link #neighborTableEnabled} is set.
      *
      * @param deviceId deviceId the device ID
      * @param host     the host
@@ -514,17 +828,27 @@ public class Ipv6RoutingComponent {
                     deviceId, host.id(), hostIpv6Addrs);
         }
 
+        final MacAddress hostMac = host.mac();
+
+        if (neighborTableEnabled) {
+            // Hosts are reached via the route to their subnet, only the
+            // mapping of each host address to the host MAC is needed.
+            installFlowRules(hostIpv6Addrs.stream()
+                    .map(addr -> createNeighborRule(deviceId, addr, hostMac))
+                    .collect(Collectors.toList()));
+            return;
+        }
+
         // Create an ECMP group with only one member, where the group ID is
         // derived from the host MAC.
-        final MacAddress hostMac = host.mac();
         int groupId = macToGroupId(hostMac);
 
         final GroupDescription group = createNextHopGroup(
                 groupId, Collections.singleton(hostMac), deviceId);
 
         // Map each host IPV6 address to corresponding /128 prefix and obtain a
-        // flow rule that points to the group ID. In this tutorial we expect
-        // only one flow rule per host.
+        // flow rule that points to the next ID of the group. In this tutorial
+        // we expect only one flow rule per host.
         final List<FlowRule> flowRules = hostIpv6Addrs.stream()
                 .map(IpAddress::toIpPrefix)
                 .filter(IpPrefix::isIp6)
@@ -545,6 +869,7 @@ public class Ipv6RoutingComponent {
      * @param deviceId the device ID.
      */
     private void setUpFabricRoutes(DeviceId deviceId) {
+        publishRouteInfo(deviceId);
         if (isSpine(deviceId)) {
             setUpSpineRoutes(deviceId);
         } else {
@@ -562,21 +887,19 @@ public class Ipv6RoutingComponent {
 
         log.info("Adding up spine routes on {}...", spineId);
 
-        for (Device device : deviceService.getDevices()) {
+        for (FabricRouteInfo leaf : fabricRouteInfos().collect(Collectors.toList())) {
 
-            if (isSpine(device.id())) {
+            if (leaf.isSpine()) {
                 // We only need routes to leaf switches. Ignore spines.
                 continue;
             }
 
-            final DeviceId leafId = device.id();
-            final MacAddress leafMac = getMyStationMac(leafId);
-            final Set<Ip6Prefix> subnetsToRoute = getInterfaceIpv6Prefixes(leafId);
+            final MacAddress leafMac = leaf.myStationMac();
+            final Set<Ip6Prefix> subnetsToRoute = Sets.newHashSet(leaf.subnets());
 
             // Since we're here, we also add a route for SRv6 (Exercise 7), to
             // forward packets with IPv6 dst the SID of a leaf switch.
-            final Ip6Address leafSid = getDeviceSid(leafId);
-            subnetsToRoute.add(Ip6Prefix.valueOf(leafSid, 128));
+            subnetsToRoute.addAll(leaf.sidPrefixes());
 
             // Create a group with only one member.
             int groupId = macToGroupId(leafMac);
@@ -604,50 +927,184 @@ public class Ipv6RoutingComponent {
 
         // Get the set of subnets (interface IPv6 prefixes) associated to other
         // leafs but not this one.
-        Set<Ip6Prefix> subnetsToRouteViaSpines = stream(deviceService.getDevices())
-                .map(Device::id)
-                .filter(this::isLeaf)
-                .filter(deviceId -> !deviceId.equals(leafId))
-                .map(this::getInterfaceIpv6Prefixes)
+        Set<Ip6Prefix> subnetsToRouteViaSpines = fabricRouteInfos()
+                .filter(info -> !info.isSpine())
+                .filter(info -> !info.deviceId().equals(leafId))
+                .map(FabricRouteInfo::subnets)
                 .flatMap(Collection::stream)
                 .collect(Collectors.toSet());
 
-        // Get myStationMac address of all spines.
-        Set<MacAddress> spineMacs = stream(deviceService.getDevices())
-                .map(Device::id)
-                .filter(this::isSpine)
-                .map(this::getMyStationMac)
-                .collect(Collectors.toSet());
+        // Get myStationMac address of all spines directly connected to this
+        // leaf.
+        Map<DeviceId, MacAddress> spineMacs = adjacentDevices(leafId)
+                .map(routeCache::get)
+                .filter(Objects::nonNull)
+                .filter(FabricRouteInfo::isSpine)
+                .collect(Collectors.toMap(FabricRouteInfo::deviceId,
+                                          FabricRouteInfo::myStationMac));
+
+        if (spineMacs.isEmpty()) {
+            log.warn("No spines connected to {}, skipping ECMP routes", leafId);
+            leafEcmpStates.remove(leafId);
+        } else {
+            setUpLeafEcmpRoutes(leafId, subnetsToRouteViaSpines, spineMacs);
+        }
 
+        if (neighborTableEnabled) {
+            // Route the subnets of this leaf to the neighbor table, which
+            // resolves the hosts attached to it.
+            installFlowRules(getInterfaceIpv6Prefixes(leafId).stream()
+                    .map(subnet -> createSubnetRoutingRule(leafId, subnet))
+                    .collect(Collectors.toList()));
+        }
+
+        // Since we're here, we also add a route for SRv6 (Exercise 7), to
+        // forward packets with IPv6 dst the SID of a spine switch, in this case
+        // using a single-member group.
+        fabricRouteInfos()
+                .filter(FabricRouteInfo::isSpine)
+                .forEach(spine -> {
+                    MacAddress spineMac = spine.myStationMac();
+                    int spineGroupId = macToGroupId(spineMac);
+                    GroupDescription group = createNextHopGroup(
+                            spineGroupId, Collections.singleton(spineMac), leafId);
+                    List<FlowRule> routingRules = spine.sidPrefixes()
+                            .stream()
+                            .map(sidPrefix -> createRoutingRule(
+                                    leafId, sidPrefix, spineGroupId))
+                            .collect(Collectors.toList());
+                    insertInOrder(group, routingRules);
+                });
+    }
+
+    /**
+     * Inserts an ECMP group on the given leaf to distribute traffic across the
+     * given spines, and routing rules for the given subnets pointing to it.
+     * <p>
+     * For each spine, a backup group with all other spines is also inserted
+     * ahead of time, such that when the uplink to that spine goes down, routes
+     * can be re-pointed to the backup group by modifying only the next hop
+     * table entry of the ECMP group (see
+     * {@link #failOverLeafUplink(DeviceId, DeviceId)}).
+     *
+     * @param leafId    the leaf device ID
+     * @param subnets   the subnets to route via spines
+     * @param spineMacs the myStationMac address of the spines, by device ID
+     */
+    private void setUpLeafEcmpRoutes(DeviceId leafId, Set<Ip6Prefix> subnets,
+                                     Map<DeviceId, MacAddress> spineMacs) {
         // Create an ECMP group to distribute traffic across all spines.
         final int groupId = DEFAULT_ECMP_GROUP_ID;
         final GroupDescription ecmpGroup = createNextHopGroup(
-                groupId, spineMacs, leafId);
+                groupId, spineMacs.values(), leafId);
 
-        // Generate a flow rule for each subnet pointing to the ECMP group.
-        List<FlowRule> flowRules = subnetsToRouteViaSpines.stream()
+        // Generate a flow rule for each subnet pointing to the next ID of the
+        // ECMP group.
+        List<FlowRule> flowRules = subnets.stream()
                 .map(subnet -> createRoutingRule(leafId, subnet, groupId))
                 .collect(Collectors.toList());
 
         insertInOrder(ecmpGroup, flowRules);
 
-        // Since we're here, we also add a route for SRv6 (Exercise 7), to
-        // forward packets with IPv6 dst the SID of a spine switch, in this case
-        // using a single-member group.
-        stream(deviceService.getDevices())
-                .map(Device::id)
-                .filter(this::isSpine)
-                .forEach(spineId -> {
-                    MacAddress spineMac = getMyStationMac(spineId);
-                    Ip6Address spineSid = getDeviceSid(spineId);
-                    int spineGroupId = macToGroupId(spineMac);
-                    GroupDescription group = createNextHopGroup(
-                            spineGroupId, Collections.singleton(spineMac), leafId);
-                    FlowRule routingRule = createRoutingRule(
-                            leafId, Ip6Prefix.valueOf(spineSid, 128),
-                            spineGroupId);
-                    insertInOrder(group, Collections.singleton(routingRule));
-                });
+        // Pre-install one backup group per spine, excluding that spine. With
+        // only one spine there is nothing to fail over to. Spines are sorted
+        // to allocate the same backup group IDs on every instance. Existing
+        // backup groups are updated with the current spines.
+        final Map<DeviceId, Integer> backupGroupIds = Maps.newHashMap();
+        if (spineMacs.size() > 1) {
+            final List<DeviceId> sortedSpineIds = spineMacs.keySet().stream()
+                    .sorted(Comparator.comparing(DeviceId::toString))
+                    .collect(Collectors.toList());
+            for (DeviceId spineId : sortedSpineIds) {
+                final int backupGroupId = backupGroupId(leafId, spineId);
+                final Set<MacAddress> otherSpineMacs = spineMacs.entrySet()
+                        .stream()
+                        .filter(e -> !e.getKey().equals(spineId))
+                        .map(Map.Entry::getValue)
+                        .collect(Collectors.toSet());
+                final GroupDescription backupGroup = createNextHopGroup(
+                        backupGroupId, otherSpineMacs, leafId);
+                installGroup(backupGroup);
+                backupGroupIds.put(spineId, backupGroupId);
+            }
+        }
+
+        final LeafEcmpState previous = leafEcmpStates.put(
+                leafId, new LeafEcmpState(subnets, backupGroupIds));
+        if (previous != null) {
+            // Backup groups of spines no longer connected keep their ID, but
+            // are no longer part of the desired state.
+            desiredStateStore.forgetGroups(leafId, previous.backupGroupIds
+                    .entrySet().stream()
+                    .filter(e -> !backupGroupIds.containsKey(e.getKey()))
+                    .map(Map.Entry::getValue)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Re-points the ECMP routes of the given leaf to the backup group that
+     * excludes the given spine, by modifying the next hop table entry shared
+     * by all routes. If the leaf already failed over to a backup group, or if
+     * no backup group is available, routes are recomputed instead.
+     *
+     * @param leafId  the leaf device ID
+     * @param spineId the spine device ID which is no longer reachable
+     */
+    private void failOverLeafUplink(DeviceId leafId, DeviceId spineId) {
+        final FabricRouteInfo spineInfo = routeCache.get(spineId);
+        if (!getDeviceConfig(leafId).isPresent() || isSpine(leafId) ||
+                spineInfo == null || !spineInfo.isSpine()) {
+            // Not a leaf uplink.
+            return;
+        }
+        if (adjacentDevices(leafId).anyMatch(spineId::equals)) {
+            // There is still at least one parallel link to the same spine.
+            return;
+        }
+
+        final LeafEcmpState state = leafEcmpStates.get(leafId);
+        final Integer backupGroupId = state == null || state.failedOver
+                ? null : state.backupGroupIds.get(spineId);
+        if (backupGroupId == null) {
+            log.info("No backup group for {} on {}, recomputing routes...",
+                     spineId, leafId);
+            setUpFabricRoutes(leafId);
+            return;
+        }
+
+        log.info("Failing over {} routes on {} to backup group 0x{} (excluding {})",
+                 state.subnets.size(), leafId,
+                 Integer.toHexString(backupGroupId), spineId);
+
+        // Routes point to the next ID of the ECMP group, only the mapping of
+        // that next ID needs to change.
+        final List<FlowRule> backupRules = Collections.singletonList(
+                createNextIdRule(leafId, DEFAULT_ECMP_GROUP_ID, backupGroupId));
+        tracer.trackFlowRules(backupRules);
+        final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+        backupRules.forEach(ops::modify);
+        flowRuleService.apply(ops.build());
+        desiredStateStore.recordFlowRules(backupRules);
+        state.failedOver = true;
+    }
+
+    /**
+     * ECMP routing state of a leaf.
+     */
+    private static final class LeafEcmpState {
+        // Subnets routed via the ECMP group.
+        private final Set<Ip6Prefix> subnets;
+        // Backup group ID by excluded spine.
+        private final Map<DeviceId, Integer> backupGroupIds;
+        // Whether routes currently point to a backup group.
+        private volatile boolean failedOver = false;
+
+        private LeafEcmpState(Set<Ip6Prefix> subnets,
+                              Map<DeviceId, Integer> backupGroupIds) {
+            this.subnets = ImmutableSet.copyOf(subnets);
+            this.backupGroupIds = ImmutableMap.copyOf(backupGroupIds);
+        }
     }
 
     //--------------------------------------------------------------------------
@@ -668,13 +1125,63 @@ public class Ipv6RoutingComponent {
     }
 
     /**
-     * Returns true if the given device is not configured as spine.
+     * Returns the IDs of all devices currently in the fabric topology.
+     *
+     * @return stream of device IDs
+     */
+    private Stream<DeviceId> fabricDevices() {
+        final TopologySnapshot topo = topologyComponent.snapshot();
+        return IntStream.range(0, topo.deviceCount())
+                .filter(topo::isPresent)
+                .mapToObj(topo::deviceId);
+    }
+
+    /**
+     * Returns the route information of all devices currently in the fabric
+     * topology, as published by their master. Devices whose information is
+     * not yet published are skipped, routes towards them will be added when
+     * it is.
+     *
+     * @return stream of route information
+     */
+    private Stream<FabricRouteInfo> fabricRouteInfos() {
+        return fabricDevices()
+                .map(routeCache::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Publishes to the fabric route cache the information needed by other
+     * devices to route packets towards the given one, computed from its
+     * configuration. Must be called only by the master of the device.
      *
      * @param deviceId the device ID
-     * @return true if the device is a leaf, false otherwise
      */
-    private boolean isLeaf(DeviceId deviceId) {
-        return !isSpine(deviceId);
+    private void publishRouteInfo(DeviceId deviceId) {
+        final boolean spine = isSpine(deviceId);
+        routeCache.publish(new FabricRouteInfo(
+                deviceId, spine, getMyStationMac(deviceId),
+                spine ? Collections.emptySet() : getInterfaceIpv6Prefixes(deviceId),
+                getDeviceSidPrefixes(deviceId)));
+    }
+
+    /**
+     * Returns the IDs of the devices to which the given device has at least
+     * one egress link.
+     *
+     * @param deviceId the device ID
+     * @return stream of device IDs
+     */
+    private Stream<DeviceId> adjacentDevices(DeviceId deviceId) {
+        final TopologySnapshot topo = topologyComponent.snapshot();
+        final int index = topo.indexOf(deviceId);
+        if (index < 0) {
+            return Stream.empty();
+        }
+        return IntStream.range(topo.edgeStart(index), topo.edgeEnd(index))
+                .map(topo::edgeDst)
+                .distinct()
+                .mapToObj(topo::deviceId);
     }
 
     /**
@@ -721,6 +1228,27 @@ public class Ipv6RoutingComponent {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Returns the ID of the backup ECMP group of the given leaf that excludes
+     * the given spine, allocating a new one the first time. IDs are allocated
+     * sequentially and never released, such that each spine gets its own.
+     *
+     * @param leafId  the leaf device ID
+     * @param spineId the spine device ID
+     * @return an integer
+     */
+    private int backupGroupId(DeviceId leafId, DeviceId spineId) {
+        final Map<DeviceId, Integer> allocated = backupGroupIdAllocations
+                .computeIfAbsent(leafId, id -> Maps.newHashMap());
+        synchronized (allocated) {
+            return allocated.computeIfAbsent(spineId, id -> {
+                checkState(allocated.size() < MAX_BACKUP_ECMP_GROUPS,
+                           "No more backup group IDs on %s", leafId);
+                return BACKUP_ECMP_GROUP_ID_BASE + allocated.size();
+            });
+        }
+    }
+
     /**
      * Returns a 32 bit bit group ID from the given MAC address.
      *
@@ -731,26 +1259,175 @@ public class Ipv6RoutingComponent {
         return mac.hashCode() & 0x7fffffff;
     }
 
+    /**
+     * Returns the given next hops sorted by MAC address and limited to the
+     * maximum group size of the given action selector, as read from the
+     * P4Info of the device pipeconf. Sorting makes sure that, when over the
+     * limit, all instances and devices pick the same next hops.
+     *
+     * @param deviceId        the device ID
+     * @param actionProfileId the action selector ID
+     * @param nextHopMacs     the next hop MAC addresses
+     * @return next hop MAC addresses fitting in a group
+     */
+    private List<MacAddress> fitToSelector(DeviceId deviceId,
+                                           String actionProfileId,
+                                           Collection<MacAddress> nextHopMacs) {
+        final List<MacAddress> sortedMacs = nextHopMacs.stream()
+                .sorted(Comparator.comparingLong(MacAddress::toLong))
+                .collect(Collectors.toList());
+        final List<MacAddress> members = selectorLimits(deviceId, actionProfileId)
+                .fit(sortedMacs);
+        if (members.size() < sortedMacs.size()) {
+            log.warn("{} next hops exceed the max group size of {} on {}, " +
+                             "using only {}", sortedMacs.size(),
+                     actionProfileId, deviceId, members);
+            AppMetrics.counter(TRUNCATED_GROUPS).increment();
+        }
+        return members;
+    }
+
+    /**
+     * Returns the limits of the given action selector, as read from the P4Info
+     * of the device pipeconf.
+     *
+     * @param deviceId        the device ID
+     * @param actionProfileId the action selector ID
+     * @return selector limits
+     */
+    private SelectorLimits selectorLimits(DeviceId deviceId,
+                                          String actionProfileId) {
+        return pipeconfService.ofDevice(deviceId)
+                .flatMap(pipeconfService::getPipeconf)
+                .map(pipeconf -> SelectorLimits.of(
+                        pipeconf, PiActionProfileId.of(actionProfileId)))
+                .orElse(SelectorLimits.UNKNOWN);
+    }
+
     /**
      * Inserts the given groups and flow rules in order, groups first, then flow
      * rules. In P4Runtime, when operating on an indirect table (i.e. with
-     * action selectors), groups must be inserted before table entries.
+     * action selectors), groups must be inserted before table entries. If the
+     * group exists already, its buckets are updated instead.
+     * <p>
+     * The next hop table entry mapping the group to a next ID is inserted
+     * together with the given flow rules, using the group ID as next ID.
+     * <p>
+     * If a device is being set up in batch on this thread, the group and flow
+     * rules are added to the batch instead.
      *
-     * @param group     the group
-     * @param flowRules the flow rules depending on the group
+     * @param group        the group
+     * @param routingRules the routing rules depending on the group
      */
-    private void insertInOrder(GroupDescription group, Collection<FlowRule> flowRules) {
+    private void insertInOrder(GroupDescription group,
+                               Collection<FlowRule> routingRules) {
+        final List<FlowRule> flowRules = Lists.newArrayList(createNextIdRule(
+                group.deviceId(), group.givenGroupId(), group.givenGroupId()));
+        flowRules.addAll(routingRules);
+        final RuleBatch batch = currentBatch.get();
+        if (batch != null) {
+            batch.addGroup(group);
+            batch.addFlowRules(flowRules);
+            return;
+        }
         try {
-            groupService.addGroup(group);
-            // Wait for groups to be inserted.
-            Thread.sleep(GROUP_INSERT_DELAY_MILLIS);
+            final long startNanos = System.nanoTime();
+            if (Utils.writeGroup(groupService, group, tracer::trackGroup)) {
+                AppMetrics.counter(GROUPS_INSTALLED).increment();
+                // Wait for groups to be inserted.
+                Thread.sleep(GROUP_INSERT_DELAY_MILLIS);
+            }
+            tracer.trackFlowRules(flowRules);
             flowRules.forEach(flowRuleService::applyFlowRules);
+            desiredStateStore.record(Collections.singleton(group), flowRules);
+            AppMetrics.counter(FLOW_RULES_INSTALLED).add(flowRules.size());
+            AppMetrics.latency(GROUP_TO_FLOW_METRIC).recordSince(startNanos);
         } catch (InterruptedException e) {
             log.error("Interrupted!", e);
             Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Inserts the given group, or updates it if it exists already, or adds it
+     * to the batch of this thread, if any.
+     *
+     * @param group the group
+     */
+    private void installGroup(GroupDescription group) {
+        final RuleBatch batch = currentBatch.get();
+        if (batch != null) {
+            batch.addGroup(group);
+            return;
+        }
+        if (Utils.writeGroup(groupService, group, tracer::trackGroup)) {
+            AppMetrics.counter(GROUPS_INSTALLED).increment();
+        }
+        desiredStateStore.record(Collections.singleton(group),
+                                 Collections.emptyList());
+    }
+
+    /**
+     * Inserts the given flow rules, not depending on any group, or adds them
+     * to the batch of this thread, if any.
+     *
+     * @param flowRules the flow rules
+     */
+    private void installFlowRules(Collection<FlowRule> flowRules) {
+        final RuleBatch batch = currentBatch.get();
+        if (batch != null) {
+            batch.addFlowRules(flowRules);
+            return;
+        }
+        tracer.trackFlowRules(flowRules);
+        flowRules.forEach(flowRuleService::applyFlowRules);
+        desiredStateStore.recordFlowRules(flowRules);
+        AppMetrics.counter(FLOW_RULES_INSTALLED).add(flowRules.size());
+    }
+
+    /**
+     * Sets up the given device like {@link #setUpDevice(DeviceId)}, but
+     * writing all groups first, then waiting once for them to be inserted,
+     * and finally writing all flow rules with a single batch of flow rule
+     * operations. Used to take over devices, where the state to write is
+     * known upfront.
+     *
+     * @param deviceId the device ID
+     */
+    private void setUpDeviceInBatch(DeviceId deviceId) {
+        final RuleBatch batch = new RuleBatch();
+        currentBatch.set(batch);
+        try {
+            setUpDevice(deviceId);
+        } finally {
+            currentBatch.remove();
+        }
+
+        try {
+            final long startNanos = System.nanoTime();
+            final long writtenGroups = batch.groups().stream()
+                    .filter(g -> Utils.writeGroup(groupService, g, tracer::trackGroup))
+                    .count();
+            AppMetrics.counter(GROUPS_INSTALLED).add(writtenGroups);
+            if (writtenGroups > 0) {
+                // Wait for groups to be inserted.
+                Thread.sleep(GROUP_INSERT_DELAY_MILLIS);
+            }
+            tracer.trackFlowRules(batch.flowRules());
+            final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+            batch.flowRules().forEach(ops::add);
+            flowRuleService.apply(ops.build());
+            desiredStateStore.record(batch.groups(), batch.flowRules());
+            AppMetrics.counter(FLOW_RULES_INSTALLED).add(batch.flowRules().size());
+            AppMetrics.latency(GROUP_TO_FLOW_METRIC).recordSince(startNanos);
+        } catch (InterruptedException e) {
+            log.error("Interrupted!", e);
+            Thread.currentThread().interrupt();
+        }
+        log.info("Set up {} in batch: {} groups, {} flow rules", deviceId,
+                 batch.groups().size(), batch.flowRules().size());
+    }
+
     /**
      * Gets Srv6 SID for the given device.
      *
@@ -764,6 +1441,64 @@ public class Ipv6RoutingComponent {
                         "Missing mySid config for " + deviceId));
     }
 
+    /**
+     * Returns the prefixes to route towards the given device to reach its
+     * SIDs, i.e. the locator of its SID, plus the SIDs of SRv6 functions not
+     * covered by it. The locator is a uSID locator only if the SRv6 component
+     * compresses SIDs.
+     *
+     * @param deviceId the device ID
+     * @return set of IPv6 prefixes
+     */
+    private Set<Ip6Prefix> getDeviceSidPrefixes(DeviceId deviceId) {
+        final Ip6Prefix locator = Srv6Sids.locatorPrefix(
+                getDeviceSid(deviceId), isSrv6CompressSidsEnabled());
+        final Set<Ip6Prefix> prefixes = Sets.newHashSet(locator);
+        getDeviceConfig(deviceId)
+                .map(FabricDeviceConfig::srv6Functions)
+                .orElse(ImmutableList.of())
+                .stream()
+                .map(Srv6SidFunction::sid)
+                .filter(sid -> !locator.contains(sid))
+                .forEach(sid -> prefixes.add(
+                        Ip6Prefix.valueOf(sid, Ip6Address.BIT_LENGTH)));
+        return prefixes;
+    }
+
+    /**
+     * Returns true if the SRv6 component compresses SIDs, as configured by
+     * its srv6CompressSids property.
+     *
+     * @return true if SIDs are compressed
+     */
+    private boolean isSrv6CompressSidsEnabled() {
+        final ConfigProperty property = compCfgService.getProperty(
+                Srv6Component.class.getName(), SRV6_COMPRESS_SIDS);
+        return property == null ? SRV6_COMPRESS_SIDS_DEFAULT : property.asBoolean();
+    }
+
+    /**
+     * Reads the component configuration.
+     *
+     * @param context the component context
+     * @return true if the configuration changed
+     */
+    private boolean readComponentConfiguration(ComponentContext context) {
+        if (context == null) {
+            return false;
+        }
+        boolean changed = false;
+        final Boolean neighborTable = Tools.isPropertyEnabled(
+                context.getProperties(), NEIGHBOR_TABLE_ENABLED);
+        if (neighborTable != null && neighborTable != neighborTableEnabled) {
+            neighborTableEnabled = neighborTable;
+            log.info("Configured. {} is {}", NEIGHBOR_TABLE_ENABLED,
+                     neighborTableEnabled);
+            changed = true;
+        }
+        return changed;
+    }
+
     /**
      * Sets up IPv6 routing on all devices known by ONOS and for which this ONOS
      * node instance is currently master.
@@ -775,11 +1510,21 @@ public class Ipv6RoutingComponent {
                 .filter(mastershipService::isLocalMaster)
                 .forEach(deviceId -> {
                     log.info("*** IPV6 ROUTING - Starting initial set up for {}...", deviceId);
-                    setUpMyStationTable(deviceId);
-                    setUpFabricRoutes(deviceId);
-                    setUpL2NextHopRules(deviceId);
-                    hostService.getConnectedHosts(deviceId)
-                            .forEach(host -> setUpHostRules(deviceId, host));
+                    setUpDevice(deviceId);
                 });
     }
+
+    /**
+     * Sets up IPv6 routing on the given device, i.e. the My Station table,
+     * fabric routes, L2 next hops and routes to the hosts attached to it.
+     *
+     * @param deviceId the device ID
+     */
+    private void setUpDevice(DeviceId deviceId) {
+        setUpMyStationTable(deviceId);
+        setUpFabricRoutes(deviceId);
+        setUpL2NextHopRules(deviceId);
+        hostService.getConnectedHosts(deviceId)
+                .forEach(host -> setUpHostRules(deviceId, host));
+    }
 }
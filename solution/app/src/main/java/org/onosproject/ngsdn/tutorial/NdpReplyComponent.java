@@ -39,6 +39,8 @@ import org.onosproject.net.pi.model.PiActionParamId;
 import org.onosproject.net.pi.model.PiMatchFieldId;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceHandoffListener;
 import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
 import org.onosproject.ngsdn.tutorial.common.Utils;
 import org.osgi.service.component.annotations.Activate;
@@ -53,6 +55,7 @@ import java.util.Collection;
 import java.util.stream.Collectors;
 
 import static org.onosproject.ngsdn.tutorial.AppConstants.INITIAL_SETUP_DELAY;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.FLOW_RULES_INSTALLED;
 
 /**
  * App component that configures devices to generate NDP Neighbor Advertisement
@@ -69,6 +72,8 @@ public class NdpReplyComponent {
     private static final Logger log =
             LoggerFactory.getLogger(NdpReplyComponent.class.getName());
 
+    private static final String SET_UP_DEVICE_TASK = "ndp-reply/set-up-device";
+
     //--------------------------------------------------------------------------
     // ONOS CORE SERVICE BINDING
     //
@@ -94,7 +99,14 @@ public class NdpReplyComponent {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private MainComponent mainComponent;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricPartitionComponent partitionComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
     private DeviceListener deviceListener = new InternalDeviceListener();
+    private DeviceHandoffListener handoffListener = new InternalHandoffListener();
     private ApplicationId appId;
 
     //--------------------------------------------------------------------------
@@ -109,6 +121,7 @@ public class NdpReplyComponent {
         appId = mainComponent.getAppId();
         // Register listeners to be informed about device events.
         deviceService.addListener(deviceListener);
+        partitionComponent.addListener(handoffListener);
         // Schedule set up of existing devices. Needed when reloading the app.
         mainComponent.scheduleTask(this::setUpAllDevices, INITIAL_SETUP_DELAY);
         log.info("Started");
@@ -117,6 +130,7 @@ public class NdpReplyComponent {
     @Deactivate
     public void deactivate() {
         deviceService.removeListener(deviceListener);
+        partitionComponent.removeListener(handoffListener);
         log.info("Stopped");
     }
 
@@ -255,8 +269,9 @@ public class NdpReplyComponent {
                 // configuration has been set.
 
                 // Events are processed using a thread pool defined in the
-                // MainComponent.
-                mainComponent.getExecutorService().execute(() -> {
+                // MainComponent, coalescing bursts of events for the same
+                // device.
+                mainComponent.submitDeviceTask(deviceId, SET_UP_DEVICE_TASK, () -> {
                     log.info("{} event! deviceId={}", event.type(), deviceId);
                     setUpDevice(deviceId);
                 });
@@ -264,6 +279,24 @@ public class NdpReplyComponent {
         }
     }
 
+    /**
+     * Listener of mastership handoffs, which sets up the devices taken over by
+     * this instance.
+     */
+    public class InternalHandoffListener implements DeviceHandoffListener {
+
+        @Override
+        public void acquired(DeviceId deviceId) {
+            log.info("Taking over NDP reply of {}...", deviceId);
+            setUpDevice(deviceId);
+        }
+
+        @Override
+        public void released(DeviceId deviceId) {
+            // No state kept per device.
+        }
+    }
+
     //--------------------------------------------------------------------------
     // UTILITY METHODS
     //--------------------------------------------------------------------------
@@ -292,5 +325,7 @@ public class NdpReplyComponent {
         FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
         flowRules.forEach(ops::add);
         flowRuleService.apply(ops.build());
+        desiredStateStore.recordFlowRules(flowRules);
+        AppMetrics.counter(FLOW_RULES_INSTALLED).add(flowRules.size());
     }
 }
@@ -15,57 +15,133 @@
  */
 package org.onosproject.ngsdn.tutorial;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.onlab.packet.Ip6Address;
+import org.onlab.packet.Ip6Prefix;
+import org.onlab.util.SharedScheduledExecutors;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.config.NetworkConfigEvent;
+import org.onosproject.net.config.NetworkConfigListener;
 import org.onosproject.net.config.NetworkConfigService;
 import org.onosproject.net.device.DeviceEvent;
 import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
 import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleOperation;
 import org.onosproject.net.flow.FlowRuleOperations;
+import org.onosproject.net.flow.FlowRuleOperationsContext;
 import org.onosproject.net.flow.FlowRuleService;
+import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flow.criteria.PiCriterion;
+import org.onosproject.net.flow.instructions.PiInstruction;
 import org.onosproject.net.pi.model.PiActionId;
 import org.onosproject.net.pi.model.PiActionParamId;
 import org.onosproject.net.pi.model.PiMatchFieldId;
 import org.onosproject.net.pi.model.PiTableId;
 import org.onosproject.net.pi.runtime.PiAction;
 import org.onosproject.net.pi.runtime.PiActionParam;
+import org.onosproject.net.pi.runtime.PiLpmFieldMatch;
 import org.onosproject.net.pi.runtime.PiTableAction;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.onosproject.ngsdn.tutorial.common.AppMetrics;
+import org.onosproject.ngsdn.tutorial.common.DeviceHandoffListener;
 import org.onosproject.ngsdn.tutorial.common.FabricDeviceConfig;
+import org.onosproject.ngsdn.tutorial.common.Srv6ImportReport;
+import org.onosproject.ngsdn.tutorial.common.Srv6Policy;
+import org.onosproject.ngsdn.tutorial.common.Srv6PolicyConfig;
+import org.onosproject.ngsdn.tutorial.common.Srv6SidFunction;
+import org.onosproject.ngsdn.tutorial.common.Srv6Sids;
+import org.onosproject.ngsdn.tutorial.common.Srv6TrafficStats;
 import org.onosproject.ngsdn.tutorial.common.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.Streams.stream;
 import static org.onosproject.ngsdn.tutorial.AppConstants.INITIAL_SETUP_DELAY;
+import static org.onosproject.ngsdn.tutorial.AppConstants.SRV6_MAX_SEGMENTS;
+import static org.onosproject.ngsdn.tutorial.AppConstants.SRV6_MIN_SEGMENTS;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_COMPRESS_SIDS;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_COMPRESS_SIDS_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_STATS_POLL_INTERVAL_SEC;
+import static org.onosproject.ngsdn.tutorial.OsgiPropertyConstants.SRV6_STATS_POLL_INTERVAL_SEC_DEFAULT;
+import static org.onosproject.ngsdn.tutorial.common.AppMetrics.FLOW_RULES_INSTALLED;
 
 /**
  * Application which handles SRv6 segment routing.
+ * <p>
+ * SRv6 transit policies are kept in a per-device index keyed by destination
+ * prefix, such that large sets of policies can be programmed in batches,
+ * updating only the entries that changed.
+ * <p>
+ * Policies can also be declared per device in the network configuration
+ * (srv6Policies config). On configuration changes, only the difference with
+ * the policies previously applied from the configuration is programmed.
+ * <p>
+ * Traffic statistics of policies and local SIDs are sampled periodically from
+ * the direct counters of the SRv6 tables. Counters are read in bulk from the
+ * flow rule store, which is refreshed by the periodic poll of table entries
+ * and counters performed by the flow rule subsystem, hence without issuing
+ * additional reads to the devices.
  */
 @Component(
         immediate = true,
         // *** TODO EXERCISE 6
         // set to true when ready
         enabled = true,
-        service = Srv6Component.class
+        service = Srv6Component.class,
+        property = {
+                SRV6_COMPRESS_SIDS + ":Boolean=" + SRV6_COMPRESS_SIDS_DEFAULT,
+                SRV6_STATS_POLL_INTERVAL_SEC + ":Integer=" + SRV6_STATS_POLL_INTERVAL_SEC_DEFAULT,
+        }
 )
 public class Srv6Component {
 
     private static final Logger log = LoggerFactory.getLogger(Srv6Component.class);
 
+    private static final String MY_SID_TASK = "srv6/my-sid";
+    private static final String POLICY_CONFIG_TASK = "srv6/policy-config";
+
+    // Prefix of the IDs of the actions of the SRv6 transit table, followed by
+    // the number of segments.
+    private static final String TRANSIT_ACTION_PREFIX = "IngressPipeImpl.srv6_t_insert_";
+
+    /** Compress segment lists using uSID containers (F3216 format). */
+    private boolean srv6CompressSids = SRV6_COMPRESS_SIDS_DEFAULT;
+
+    /** Interval between samples of SRv6 table counters, 0 to disable. */
+    private int srv6StatsPollIntervalSec = SRV6_STATS_POLL_INTERVAL_SEC_DEFAULT;
+
     //--------------------------------------------------------------------------
     // ONOS CORE SERVICE BINDING
     //
@@ -85,10 +161,44 @@ public class Srv6Component {
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private NetworkConfigService networkConfigService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private ComponentConfigService compCfgService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY)
     private MainComponent mainComponent;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private FabricPartitionComponent partitionComponent;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY)
+    private DesiredStateStore desiredStateStore;
+
     private final DeviceListener deviceListener = new Srv6Component.InternalDeviceListener();
+    private final NetworkConfigListener configListener = new InternalConfigListener();
+    private final DeviceHandoffListener handoffListener = new InternalHandoffListener();
+
+    // Installed transit policies, by device and destination prefix.
+    private final Map<DeviceId, Map<Ip6Prefix, InstalledPolicy>> policyIndex =
+            Maps.newConcurrentMap();
+
+    // Policies last applied from the network configuration, by device and
+    // destination prefix.
+    private final Map<DeviceId, Map<Ip6Prefix, Srv6Policy>> configuredPolicies =
+            Maps.newConcurrentMap();
+
+    // Installed My SID table entries, by device, with the matched prefix.
+    private final Map<DeviceId, Map<FlowId, Ip6Prefix>> sidIndex =
+            Maps.newConcurrentMap();
+
+    // My SID table rules last written by this instance, by device.
+    private final Map<DeviceId, List<FlowRule>> mySidRules =
+            Maps.newConcurrentMap();
+
+    // Latest counter sample of each SRv6 table entry.
+    private volatile Map<FlowId, CounterSample> counterSamples =
+            Collections.emptyMap();
+
+    private ScheduledFuture<?> statsPollTask;
 
     private ApplicationId appId;
 
@@ -100,11 +210,16 @@ public class Srv6Component {
     //--------------------------------------------------------------------------
 
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         appId = mainComponent.getAppId();
 
+        compCfgService.registerProperties(getClass());
+        modified(context);
+
         // Register listeners to be informed about device and host events.
         deviceService.addListener(deviceListener);
+        networkConfigService.addListener(configListener);
+        partitionComponent.addListener(handoffListener);
 
         // Schedule set up for all devices.
         mainComponent.scheduleTask(this::setUpAllDevices, INITIAL_SETUP_DELAY);
@@ -112,9 +227,44 @@ public class Srv6Component {
         log.info("Started");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        if (context == null) {
+            return;
+        }
+        final Dictionary<?, ?> properties = context.getProperties();
+        final Boolean compressSids = Tools.isPropertyEnabled(
+                properties, SRV6_COMPRESS_SIDS);
+        if (compressSids != null && compressSids != srv6CompressSids) {
+            srv6CompressSids = compressSids;
+            log.info("Configured. {} is {}", SRV6_COMPRESS_SIDS,
+                     srv6CompressSids);
+            // Add or remove the uSID entries of the My SID table.
+            mainComponent.scheduleTask(this::setUpAllDevices, 0);
+        }
+        final Integer pollInterval = Tools.getIntegerProperty(
+                properties, SRV6_STATS_POLL_INTERVAL_SEC);
+        if (pollInterval != null && pollInterval >= 0
+                && (pollInterval != srv6StatsPollIntervalSec || statsPollTask == null)) {
+            srv6StatsPollIntervalSec = pollInterval;
+            scheduleStatsPoll();
+            log.info("Configured. {} is {}", SRV6_STATS_POLL_INTERVAL_SEC,
+                     srv6StatsPollIntervalSec);
+        }
+    }
+
     @Deactivate
     protected void deactivate() {
+        compCfgService.unregisterProperties(getClass(), false);
         deviceService.removeListener(deviceListener);
+        networkConfigService.removeListener(configListener);
+        partitionComponent.removeListener(handoffListener);
+        cancelStatsPoll();
+        policyIndex.clear();
+        configuredPolicies.clear();
+        sidIndex.clear();
+        mySidRules.clear();
+        counterSamples = Collections.emptyMap();
 
         log.info("Stopped");
     }
@@ -127,7 +277,15 @@ public class Srv6Component {
 
     /**
      * Populate the My SID table from the network configuration for the
-     * specified device.
+     * specified device. If SIDs are compressed and the SID is uSID-shaped,
+     * also adds an entry to shift uSID containers carrying this SID as the
+     * active uSID.
+     * <p>
+     * Entries previously written and no longer configured, e.g. the uSID
+     * entry after disabling compression, or SRv6 functions removed from the
+     * network configuration, are removed from the device and from the desired
+     * state. After a take-over, the previous entries are the ones recorded in
+     * the desired state by the previous master.
      *
      * @param deviceId the device Id
      */
@@ -155,12 +313,98 @@ public class Srv6Component {
         PiTableAction action = PiAction.builder()
                 .withId(PiActionId.of("IngressPipeImpl.srv6_end"))
                 .build();
+
+        PiCriterion uSidMatch = PiCriterion.builder()
+                .matchLpm(
+                        PiMatchFieldId.of("hdr.ipv6.dst_addr"),
+                        mySid.toOctets(), Srv6Sids.USID_LOCATOR_BITS)
+                .build();
+
+        PiTableAction uSidAction = PiAction.builder()
+                .withId(PiActionId.of("IngressPipeImpl.srv6_usid_un"))
+                .build();
         // ---- END SOLUTION ----
 
         FlowRule myStationRule = Utils.buildFlowRule(
                 deviceId, appId, tableId, match, action);
 
-        flowRuleService.applyFlowRules(myStationRule);
+        List<FlowRule> rules = Lists.newArrayList(myStationRule);
+        Map<FlowId, Ip6Prefix> sidPrefixes = Maps.newHashMap();
+        sidPrefixes.put(myStationRule.id(), Ip6Prefix.valueOf(mySid, 128));
+
+        FlowRule uSidRule = Utils.buildFlowRule(
+                deviceId, appId, tableId, uSidMatch, uSidAction);
+        if (srv6CompressSids && Srv6Sids.isMicroSid(mySid)) {
+            // The /128 entry takes precedence when this is the last uSID of
+            // the container, i.e. when the next segment must be taken from
+            // the SRH.
+            rules.add(uSidRule);
+            sidPrefixes.put(uSidRule.id(), Ip6Prefix.valueOf(
+                    mySid, Srv6Sids.USID_LOCATOR_BITS));
+        }
+
+        getDeviceConfig(deviceId)
+                .map(FabricDeviceConfig::srv6Functions)
+                .orElse(ImmutableList.of())
+                .forEach(function -> {
+                    log.info("Adding {} rule on {} (sid {})...",
+                             function.type(), deviceId, function.sid());
+                    FlowRule functionRule = createSidFunctionRule(deviceId, function);
+                    rules.add(functionRule);
+                    sidPrefixes.put(functionRule.id(),
+                                    Ip6Prefix.valueOf(function.sid(), 128));
+                });
+
+        removeStaleMySidRules(deviceId, PiTableId.of(tableId), rules);
+        flowRuleService.applyFlowRules(rules.toArray(new FlowRule[0]));
+        desiredStateStore.recordFlowRules(rules);
+        sidIndex.put(deviceId, sidPrefixes);
+        mySidRules.put(deviceId, rules);
+        AppMetrics.counter(FLOW_RULES_INSTALLED).add(rules.size());
+    }
+
+    /**
+     * Creates a flow rule for the My SID table that applies the given SRv6
+     * function to packets destined to its SID.
+     *
+     * @param deviceId the device Id
+     * @param function SRv6 function
+     * @return flow rule
+     */
+    private FlowRule createSidFunctionRule(DeviceId deviceId, Srv6SidFunction function) {
+
+        // *** TODO EXERCISE 6
+        // Modify the table, field, action and action parameter ids to match
+        // your P4Info
+        // ---- START SOLUTION ----
+        String tableId = "IngressPipeImpl.srv6_my_sid";
+
+        PiCriterion match = PiCriterion.builder()
+                .matchLpm(
+                        PiMatchFieldId.of("hdr.ipv6.dst_addr"),
+                        function.sid().toOctets(), 128)
+                .build();
+
+        PiAction.Builder action = PiAction.builder();
+        switch (function.type()) {
+            case END_DX6:
+                action.withId(PiActionId.of("IngressPipeImpl.srv6_end_dx6"))
+                        .withParameter(new PiActionParam(
+                                PiActionParamId.of("dmac"),
+                                function.nextHopMac().toBytes()));
+                break;
+            case END_DT6:
+                action.withId(PiActionId.of("IngressPipeImpl.srv6_end_dt6"));
+                break;
+            case END:
+            default:
+                action.withId(PiActionId.of("IngressPipeImpl.srv6_end"));
+                break;
+        }
+        // ---- END SOLUTION ----
+
+        return Utils.buildFlowRule(
+                deviceId, appId, tableId, match, action.build());
     }
 
     /**
@@ -174,9 +418,436 @@ public class Srv6Component {
      */
     public void insertSrv6InsertRule(DeviceId deviceId, Ip6Address destIp, int prefixLength,
                                      List<Ip6Address> segmentList) {
-        if (segmentList.size() < 2 || segmentList.size() > 3) {
-            throw new RuntimeException("List of " + segmentList.size() + " segments is not supported");
+        applyPolicies(deviceId, Collections.singleton(new Srv6Policy(
+                deviceId, Ip6Prefix.valueOf(destIp, prefixLength), segmentList)));
+    }
+
+    /**
+     * Same as {@link #insertSrv6InsertRule(DeviceId, Ip6Address, int, List)},
+     * but returns a future completed when the device acknowledged the write.
+     *
+     * @param deviceId     device ID
+     * @param destIp       target IP address for the SRv6 policy
+     * @param prefixLength prefix length for the target IP
+     * @param segmentList  list of SRv6 SIDs that make up the path
+     * @return future completed with the number of policies added or modified
+     */
+    public CompletableFuture<Integer> insertSrv6InsertRuleAsync(
+            DeviceId deviceId, Ip6Address destIp, int prefixLength,
+            List<Ip6Address> segmentList) {
+        return applyPoliciesAsync(deviceId, Collections.singleton(new Srv6Policy(
+                deviceId, Ip6Prefix.valueOf(destIp, prefixLength), segmentList)));
+    }
+
+    /**
+     * Installs or updates the given SRv6 transit policies on the given device.
+     * Policies replace any existing one for the same destination prefix. All
+     * changes are programmed in a single batch of flow rule operations, while
+     * policies already installed with the same segment list are skipped.
+     * <p>
+     * Policies are validated before programming anything, hence if one is
+     * not supported none of them is applied.
+     *
+     * @param deviceId device ID
+     * @param policies SRv6 policies for the device
+     * @return number of policies that required a flow rule to be added or
+     * modified
+     */
+    public int applyPolicies(DeviceId deviceId, Collection<Srv6Policy> policies) {
+        return updatePolicies(deviceId, policies, false).count;
+    }
+
+    /**
+     * Same as {@link #applyPolicies(DeviceId, Collection)}, but returns a
+     * future completed when the device acknowledged all flow rule operations,
+     * or completed exceptionally if the policies are not valid or the device
+     * rejected any of the operations.
+     *
+     * @param deviceId device ID
+     * @param policies SRv6 policies for the device
+     * @return future completed with the number of policies that required a
+     * flow rule to be added or modified
+     */
+    public CompletableFuture<Integer> applyPoliciesAsync(DeviceId deviceId,
+                                                         Collection<Srv6Policy> policies) {
+        try {
+            return updatePolicies(deviceId, policies, false).future;
+        } catch (IllegalArgumentException e) {
+            return Tools.exceptionalFuture(e);
+        }
+    }
+
+    /**
+     * Replaces the whole set of SRv6 transit policies of the given device with
+     * the given one. The difference with the installed set (policies to add,
+     * modify and remove) is programmed in a single batch of flow rule
+     * operations, hence without removing policies that are kept or updated.
+     * <p>
+     * Policies are validated before programming anything, hence if one is
+     * not supported the installed set is left unchanged.
+     *
+     * @param deviceId device ID
+     * @param policies new SRv6 policies for the device
+     * @return number of policies that required a flow rule to be added,
+     * modified or removed
+     */
+    public int replacePolicies(DeviceId deviceId, Collection<Srv6Policy> policies) {
+        return updatePolicies(deviceId, policies, true).count;
+    }
+
+    /**
+     * Same as {@link #replacePolicies(DeviceId, Collection)}, but returns a
+     * future completed when the device acknowledged all flow rule operations.
+     *
+     * @param deviceId device ID
+     * @param policies new SRv6 policies for the device
+     * @return future completed with the number of policies that required a
+     * flow rule to be added, modified or removed
+     */
+    public CompletableFuture<Integer> replacePoliciesAsync(DeviceId deviceId,
+                                                           Collection<Srv6Policy> policies) {
+        try {
+            return updatePolicies(deviceId, policies, true).future;
+        } catch (IllegalArgumentException e) {
+            return Tools.exceptionalFuture(e);
+        }
+    }
+
+    /**
+     * Removes the SRv6 transit policies for the given destination prefixes
+     * from the given device, in a single batch of flow rule operations.
+     *
+     * @param deviceId device ID
+     * @param prefixes destination prefixes of the policies to remove
+     * @return number of policies removed
+     */
+    public int removePolicies(DeviceId deviceId, Collection<Ip6Prefix> prefixes) {
+        return removePolicyRules(deviceId, prefixes).count;
+    }
+
+    /**
+     * Same as {@link #removePolicies(DeviceId, Collection)}, but returns a
+     * future completed when the device acknowledged all flow rule operations.
+     *
+     * @param deviceId device ID
+     * @param prefixes destination prefixes of the policies to remove
+     * @return future completed with the number of policies removed
+     */
+    public CompletableFuture<Integer> removePoliciesAsync(DeviceId deviceId,
+                                                          Collection<Ip6Prefix> prefixes) {
+        return removePolicyRules(deviceId, prefixes).future;
+    }
+
+    private PolicyUpdate removePolicyRules(DeviceId deviceId,
+                                           Collection<Ip6Prefix> prefixes) {
+        final Map<Ip6Prefix, InstalledPolicy> installed = policyIndex.get(deviceId);
+        if (installed == null) {
+            return PolicyUpdate.NONE;
+        }
+        synchronized (installed) {
+            final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+            final List<FlowRule> removedRules = Lists.newArrayList();
+            for (Ip6Prefix prefix : prefixes) {
+                final InstalledPolicy current = installed.remove(prefix);
+                if (current != null) {
+                    ops.remove(current.rule);
+                    removedRules.add(current.rule);
+                }
+            }
+            if (removedRules.isEmpty()) {
+                return PolicyUpdate.NONE;
+            }
+            log.info("Removing {} SRv6 policies from {}...",
+                     removedRules.size(), deviceId);
+            final PolicyUpdate update = applyPolicyOps(
+                    deviceId, installed, ops, Collections.emptyMap(),
+                    removedRules.size());
+            desiredStateStore.forget(removedRules);
+            return update;
+        }
+    }
+
+    private PolicyUpdate updatePolicies(DeviceId deviceId, Collection<Srv6Policy> policies,
+                                        boolean replace) {
+        final Map<Ip6Prefix, InstalledPolicy> installed =
+                policyIndex.computeIfAbsent(deviceId, k -> Maps.newConcurrentMap());
+        final Map<Ip6Prefix, InstalledPolicy> toInstall = Maps.newHashMap();
+        for (Srv6Policy policy : policies) {
+            if (!policy.deviceId().equals(deviceId)) {
+                throw new IllegalArgumentException(
+                        "Policy " + policy + " is not for " + deviceId);
+            }
+            toInstall.put(policy.prefix(), new InstalledPolicy(
+                    policy, createTransitRule(policy, encodeSegments(policy))));
+        }
+
+        synchronized (installed) {
+            final FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
+            final Map<FlowId, InstalledPolicy> added = Maps.newHashMap();
+            final List<FlowRule> removedRules = Lists.newArrayList();
+            if (replace) {
+                final Iterator<InstalledPolicy> it = installed.values().iterator();
+                while (it.hasNext()) {
+                    final InstalledPolicy current = it.next();
+                    if (!toInstall.containsKey(current.policy.prefix())) {
+                        ops.remove(current.rule);
+                        removedRules.add(current.rule);
+                        it.remove();
+                    }
+                }
+            }
+            for (Map.Entry<Ip6Prefix, InstalledPolicy> entry : toInstall.entrySet()) {
+                final InstalledPolicy current = installed.get(entry.getKey());
+                if (current == null) {
+                    ops.add(entry.getValue().rule);
+                } else if (!current.rule.exactMatch(entry.getValue().rule)) {
+                    // Same match, hence same flow rule ID.
+                    ops.modify(entry.getValue().rule);
+                } else {
+                    continue;
+                }
+                installed.put(entry.getKey(), entry.getValue());
+                added.put(entry.getValue().rule.id(), entry.getValue());
+            }
+            if (added.isEmpty() && removedRules.isEmpty()) {
+                return PolicyUpdate.NONE;
+            }
+            log.info("Applying {} and removing {} SRv6 policies on {}...",
+                     added.size(), removedRules.size(), deviceId);
+            final PolicyUpdate update = applyPolicyOps(
+                    deviceId, installed, ops, added,
+                    added.size() + removedRules.size());
+            final List<FlowRule> addedRules = added.values().stream()
+                    .map(p -> p.rule)
+                    .collect(Collectors.toList());
+            desiredStateStore.forget(removedRules);
+            desiredStateStore.recordFlowRules(addedRules);
+            AppMetrics.counter(FLOW_RULES_INSTALLED).add(addedRules.size());
+            return update;
+        }
+    }
+
+    /**
+     * Applies the given batch of SRv6 policy flow rule operations. If the
+     * device rejects some of the operations, policies whose rules could not
+     * be added or modified are removed from the policy index, such that
+     * applying them again programs them again.
+     *
+     * @param deviceId  device ID
+     * @param installed policy index of the device
+     * @param ops       flow rule operations
+     * @param added     policies added or modified by the operations, by rule ID
+     * @param count     number of policies changed by the operations
+     * @return policy update
+     */
+    private PolicyUpdate applyPolicyOps(DeviceId deviceId,
+                                        Map<Ip6Prefix, InstalledPolicy> installed,
+                                        FlowRuleOperations.Builder ops,
+                                        Map<FlowId, InstalledPolicy> added,
+                                        int count) {
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        flowRuleService.apply(ops.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations succeeded) {
+                future.complete(count);
+            }
+
+            @Override
+            public void onError(FlowRuleOperations failed) {
+                final List<FlowRule> failedRules = failed.stages().stream()
+                        .flatMap(Set::stream)
+                        .map(FlowRuleOperation::rule)
+                        .collect(Collectors.toList());
+                final List<FlowRule> dropped = Lists.newArrayList();
+                synchronized (installed) {
+                    for (FlowRule rule : failedRules) {
+                        final InstalledPolicy policy = added.get(rule.id());
+                        // Unless superseded in the meantime.
+                        if (policy != null && installed.remove(policy.policy.prefix(), policy)) {
+                            dropped.add(rule);
+                        }
+                    }
+                }
+                desiredStateStore.forget(dropped);
+                log.warn("Device {} rejected {} SRv6 policy operations",
+                         deviceId, failedRules.size());
+                future.completeExceptionally(new IllegalStateException(
+                        deviceId + " rejected " + failedRules.size() +
+                                " SRv6 policy operations"));
+            }
+        }));
+        return new PolicyUpdate(count, future);
+    }
+
+    /**
+     * Imports the given SRv6 policies, possibly for many devices. Policies
+     * are validated against the devices and SIDs known from the network
+     * configuration, duplicates are ignored, and valid policies are applied
+     * with one batch of flow rule operations per device.
+     * <p>
+     * Among policies with the same device and destination prefix, only the
+     * first one is applied, the others are reported as duplicates if equal to
+     * it, or as failures otherwise.
+     * <p>
+     * When replacing, the imported policies become the whole set of policies
+     * of each device they refer to, while other devices are left untouched.
+     * In this case, devices with at least one failed policy are skipped, such
+     * that their policies are not partially replaced.
+     *
+     * @param policies SRv6 policies
+     * @param replace  whether to replace the policies of each device
+     * @return import report
+     */
+    public Srv6ImportReport importPolicies(Collection<Srv6Policy> policies,
+                                           boolean replace) {
+        final Srv6ImportReport.Builder report =
+                Srv6ImportReport.builder(policies.size());
+        final Set<Ip6Address> knownSids = getKnownSids();
+
+        final Map<DeviceId, Map<Ip6Prefix, Srv6Policy>> policiesByDevice =
+                Maps.newHashMap();
+        final Set<DeviceId> failedDevices = Sets.newHashSet();
+        for (Srv6Policy policy : policies) {
+            final String error = validatePolicy(policy, knownSids);
+            if (error != null) {
+                report.failed(policy, error);
+                failedDevices.add(policy.deviceId());
+                continue;
+            }
+            final Srv6Policy existing = policiesByDevice
+                    .computeIfAbsent(policy.deviceId(), k -> Maps.newHashMap())
+                    .putIfAbsent(policy.prefix(), policy);
+            if (existing == null) {
+                continue;
+            }
+            if (existing.equals(policy)) {
+                report.duplicate();
+            } else {
+                report.failed(policy, "conflicts with segments " + existing.segments());
+                failedDevices.add(policy.deviceId());
+            }
+        }
+
+        policiesByDevice.forEach((deviceId, devicePolicies) -> {
+            if (replace && failedDevices.contains(deviceId)) {
+                devicePolicies.values().forEach(p -> report.failed(
+                        p, "device skipped because of other failed policies"));
+                return;
+            }
+            try {
+                final int changed = replace
+                        ? replacePolicies(deviceId, devicePolicies.values())
+                        : applyPolicies(deviceId, devicePolicies.values());
+                report.applied(devicePolicies.size(), changed);
+            } catch (RuntimeException e) {
+                log.warn("Unable to apply SRv6 policies on {}: {}",
+                         deviceId, e.getMessage());
+                devicePolicies.values().forEach(p -> report.failed(p, e.getMessage()));
+            }
+        });
+
+        final Srv6ImportReport result = report.build();
+        log.info("Imported SRv6 policies: {}", result);
+        return result;
+    }
+
+    /**
+     * Returns the SRv6 transit policies installed on the given device.
+     *
+     * @param deviceId device ID
+     * @return SRv6 policies
+     */
+    public Collection<Srv6Policy> getPolicies(DeviceId deviceId) {
+        final Map<Ip6Prefix, InstalledPolicy> installed = policyIndex.get(deviceId);
+        if (installed == null) {
+            return ImmutableList.of();
+        }
+        return installed.values().stream()
+                .map(p -> p.policy)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Checks that the given policy can be applied, i.e. that the device is
+     * known and configured, that all segments but the last one are SIDs of
+     * fabric devices, and that the segment list has a supported length.
+     *
+     * @param policy    SRv6 policy
+     * @param knownSids SIDs of all fabric devices
+     * @return description of the error, or null if the policy is valid
+     */
+    private String validatePolicy(Srv6Policy policy, Set<Ip6Address> knownSids) {
+        if (deviceService.getDevice(policy.deviceId()) == null) {
+            return "unknown device";
+        }
+        if (!getDeviceConfig(policy.deviceId()).isPresent()) {
+            return "missing fabric device config";
         }
+        // The last segment is the final destination, typically a host.
+        final List<Ip6Address> segments = policy.segments();
+        for (Ip6Address sid : segments.subList(0, segments.size() - 1)) {
+            if (!knownSids.contains(sid)) {
+                return "unknown SID " + sid;
+            }
+        }
+        try {
+            encodeSegments(policy);
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the SIDs of all devices in the network configuration.
+     *
+     * @return set of SIDs
+     */
+    private Set<Ip6Address> getKnownSids() {
+        return networkConfigService.getSubjects(DeviceId.class, FabricDeviceConfig.class)
+                .stream()
+                .map(deviceId -> networkConfigService.getConfig(deviceId, FabricDeviceConfig.class))
+                .filter(Objects::nonNull)
+                .map(FabricDeviceConfig::mySid)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the segment list to insert for the given policy, compressed if
+     * enabled and if the compressed list can still be inserted with an SRH.
+     *
+     * @param policy SRv6 policy
+     * @return segment list
+     * @throws IllegalArgumentException if the number of segments is not
+     *                                  supported
+     */
+    private List<Ip6Address> encodeSegments(Srv6Policy policy) {
+        List<Ip6Address> segmentList = policy.segments();
+        if (srv6CompressSids) {
+            final List<Ip6Address> compressed = Srv6Sids.compress(segmentList);
+            if (compressed.size() >= SRV6_MIN_SEGMENTS) {
+                segmentList = compressed;
+            }
+        }
+        if (segmentList.size() < SRV6_MIN_SEGMENTS
+                || segmentList.size() > SRV6_MAX_SEGMENTS) {
+            throw new IllegalArgumentException(
+                    "List of " + segmentList.size() + " segments is not supported");
+        }
+        return segmentList;
+    }
+
+    /**
+     * Creates a flow rule for the SRv6 transit table that inserts the given
+     * segment list in packets matching the policy prefix.
+     *
+     * @param policy      SRv6 policy
+     * @param segmentList segment list to insert
+     * @return flow rule
+     */
+    private FlowRule createTransitRule(Srv6Policy policy, List<Ip6Address> segmentList) {
+        final Ip6Prefix prefix = policy.prefix();
 
         // *** TODO EXERCISE 6
         // Fill in the table ID for the SRv6 transit table.
@@ -188,7 +859,8 @@ public class Srv6Component {
         // Modify match field, action id, and action parameters to match your P4Info.
         // ---- START SOLUTION ----
         PiCriterion match = PiCriterion.builder()
-                .matchLpm(PiMatchFieldId.of("hdr.ipv6.dst_addr"), destIp.toOctets(), prefixLength)
+                .matchLpm(PiMatchFieldId.of("hdr.ipv6.dst_addr"),
+                          prefix.address().toOctets(), prefix.prefixLength())
                 .build();
 
         List<PiActionParam> actionParams = Lists.newArrayList();
@@ -205,34 +877,158 @@ public class Srv6Component {
                 .build();
         // ---- END SOLUTION ----
 
-        final FlowRule rule = Utils.buildFlowRule(
-                deviceId, appId, tableId, match, action);
-
-        flowRuleService.applyFlowRules(rule);
+        return Utils.buildFlowRule(
+                policy.deviceId(), appId, tableId, match, action);
     }
 
     /**
-     * Remove all SRv6 transit insert polices for the specified device.
+     * Remove all SRv6 transit insert polices for the specified device. Rules
+     * to remove are taken from the policy index, without scanning the flow
+     * entries of the device.
      *
      * @param deviceId device ID
      */
     public void clearSrv6InsertRules(DeviceId deviceId) {
-        // *** TODO EXERCISE 6
-        // Fill in the table ID for the SRv6 transit table
-        // ---- START SOLUTION ----
-        String tableId = "IngressPipeImpl.srv6_transit";
-        // ---- END SOLUTION ----
+        clearSrv6InsertRulesAsync(deviceId);
+    }
 
-        FlowRuleOperations.Builder ops = FlowRuleOperations.builder();
-        stream(flowRuleService.getFlowEntries(deviceId))
-                .filter(fe -> fe.appId() == appId.id())
-                .filter(fe -> fe.table().equals(PiTableId.of(tableId)))
-                .forEach(ops::remove);
-        flowRuleService.apply(ops.build());
+    /**
+     * Same as {@link #clearSrv6InsertRules(DeviceId)}, but returns a future
+     * completed when the device acknowledged the removal of all policies.
+     *
+     * @param deviceId device ID
+     * @return future completed with the number of policies removed
+     */
+    public CompletableFuture<Integer> clearSrv6InsertRulesAsync(DeviceId deviceId) {
+        final CompletableFuture<Integer> future =
+                replacePoliciesAsync(deviceId, Collections.emptyList());
+        // Policies from the network configuration will be applied again on
+        // the next configuration change.
+        configuredPolicies.remove(deviceId);
+        return future;
     }
 
     // ---------- END METHODS TO COMPLETE ----------------
 
+    /**
+     * Applies the SRv6 policies declared in the network configuration of the
+     * given device. Only the difference with the policies previously applied
+     * from the configuration is programmed: policies no longer declared are
+     * removed, new or modified ones are applied, each set in a single batch.
+     * Invalid policies are ignored.
+     *
+     * @param deviceId device ID
+     */
+    private void applyPolicyConfig(DeviceId deviceId) {
+        final Map<Ip6Prefix, Srv6Policy> desired = Maps.newHashMap();
+        final Srv6PolicyConfig config = networkConfigService.getConfig(
+                deviceId, Srv6PolicyConfig.class);
+        if (config != null) {
+            final Set<Ip6Address> knownSids = getKnownSids();
+            for (Srv6Policy policy : config.policies()) {
+                final String error = validatePolicy(policy, knownSids);
+                if (error != null) {
+                    log.warn("Ignoring SRv6 policy for {} on {} from netcfg: {}",
+                             policy.prefix(), deviceId, error);
+                } else if (desired.putIfAbsent(policy.prefix(), policy) != null) {
+                    log.warn("Ignoring duplicate SRv6 policy for {} on {} from netcfg",
+                             policy.prefix(), deviceId);
+                }
+            }
+        }
+
+        final Map<Ip6Prefix, Srv6Policy> previous = configuredPolicies.getOrDefault(
+                deviceId, Collections.emptyMap());
+        final List<Ip6Prefix> toRemove = previous.keySet().stream()
+                .filter(prefix -> !desired.containsKey(prefix))
+                .collect(Collectors.toList());
+        final List<Srv6Policy> toApply = desired.values().stream()
+                .filter(policy -> !policy.equals(previous.get(policy.prefix())))
+                .collect(Collectors.toList());
+        if (toRemove.isEmpty() && toApply.isEmpty()) {
+            return;
+        }
+
+        log.info("Updating SRv6 policies of {} from netcfg: {} to apply, {} to remove",
+                 deviceId, toApply.size(), toRemove.size());
+        removePolicies(deviceId, toRemove);
+        if (!toApply.isEmpty()) {
+            applyPolicies(deviceId, toApply);
+        }
+        if (desired.isEmpty()) {
+            configuredPolicies.remove(deviceId);
+        } else {
+            configuredPolicies.put(deviceId, desired);
+        }
+    }
+
+    /**
+     * Returns the latest traffic statistics of the SRv6 table entries of the
+     * given type, on all devices.
+     *
+     * @param type kind of table entry, policies or local SIDs
+     * @return traffic statistics, empty if polling is disabled
+     */
+    public List<Srv6TrafficStats> getTrafficStats(Srv6TrafficStats.Type type) {
+        return counterSamples.values().stream()
+                .map(sample -> sample.stats)
+                .filter(stats -> stats.type() == type)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Samples the counters of all SRv6 policies and local SIDs installed by
+     * this component, with a single read of the flow entries of the app, and
+     * updates the packet and byte rates.
+     */
+    private void pollTrafficStats() {
+        final Map<FlowId, Ip6Prefix> policyPrefixes = Maps.newHashMap();
+        policyIndex.values().forEach(installed -> installed.values().forEach(
+                p -> policyPrefixes.put(p.rule.id(), p.policy.prefix())));
+        final Map<FlowId, Ip6Prefix> sidPrefixes = Maps.newHashMap();
+        sidIndex.values().forEach(sidPrefixes::putAll);
+
+        final Map<FlowId, CounterSample> previousSamples = counterSamples;
+        final Map<FlowId, CounterSample> samples = Maps.newHashMap();
+        for (FlowEntry entry : flowRuleService.getFlowEntriesById(appId)) {
+            Srv6TrafficStats.Type type = Srv6TrafficStats.Type.POLICY;
+            Ip6Prefix prefix = policyPrefixes.get(entry.id());
+            if (prefix == null) {
+                type = Srv6TrafficStats.Type.SID;
+                prefix = sidPrefixes.get(entry.id());
+            }
+            if (prefix == null) {
+                // Not an SRv6 entry.
+                continue;
+            }
+            samples.put(entry.id(), CounterSample.next(
+                    previousSamples.get(entry.id()), type, prefix, entry));
+        }
+        counterSamples = samples;
+    }
+
+    private void scheduleStatsPoll() {
+        cancelStatsPoll();
+        if (srv6StatsPollIntervalSec == 0) {
+            counterSamples = Collections.emptyMap();
+            return;
+        }
+        statsPollTask = SharedScheduledExecutors.scheduleAtFixedRate(() -> {
+            try {
+                pollTrafficStats();
+            } catch (RuntimeException e) {
+                log.warn("Unable to poll SRv6 counters: {}", e.getMessage());
+            }
+        }, srv6StatsPollIntervalSec, srv6StatsPollIntervalSec, TimeUnit.SECONDS);
+    }
+
+    private void cancelStatsPoll() {
+        if (statsPollTask != null) {
+            statsPollTask.cancel(false);
+            statsPollTask = null;
+        }
+    }
+
     //--------------------------------------------------------------------------
     // EVENT LISTENERS
     //
@@ -266,20 +1062,178 @@ public class Srv6Component {
                 // A P4Runtime device is considered available in ONOS when there
                 // is a StreamChannel session open and the pipeline
                 // configuration has been set.
-                mainComponent.getExecutorService().execute(() -> {
+                mainComponent.submitDeviceTask(deviceId, MY_SID_TASK, () -> {
                     log.info("{} event! deviceId={}", event.type(), deviceId);
 
                     setUpMySidTable(event.subject().id());
+                    applyPolicyConfig(deviceId);
                 });
             }
         }
     }
 
+    /**
+     * Listener of network config events, reacting to changes of the SRv6
+     * policies of a device.
+     */
+    public class InternalConfigListener implements NetworkConfigListener {
+
+        @Override
+        public boolean isRelevant(NetworkConfigEvent event) {
+            switch (event.type()) {
+                case CONFIG_ADDED:
+                case CONFIG_UPDATED:
+                case CONFIG_REMOVED:
+                    break;
+                default:
+                    // Ignore other events.
+                    return false;
+            }
+            if (!event.configClass().equals(Srv6PolicyConfig.class)
+                    || !(event.subject() instanceof DeviceId)) {
+                return false;
+            }
+            // Process only if this controller instance is the master.
+            return mastershipService.isLocalMaster((DeviceId) event.subject());
+        }
+
+        @Override
+        public void event(NetworkConfigEvent event) {
+            final DeviceId deviceId = (DeviceId) event.subject();
+            // Tasks for the same device are coalesced, the policies to apply
+            // are computed against the latest config when the task executes.
+            mainComponent.submitDeviceTask(deviceId, POLICY_CONFIG_TASK, () -> {
+                log.info("{} event! deviceId={}", event.type(), deviceId);
+                applyPolicyConfig(deviceId);
+            });
+        }
+    }
+
+
+    /**
+     * Listener of mastership handoffs, which sets up the My SID table and the
+     * configured policies of the devices taken over by this instance.
+     */
+    public class InternalHandoffListener implements DeviceHandoffListener {
+
+        @Override
+        public void acquired(DeviceId deviceId) {
+            log.info("Taking over SRv6 of {}...", deviceId);
+            rebuildPolicyIndex(deviceId);
+            setUpMySidTable(deviceId);
+            applyPolicyConfig(deviceId);
+        }
+
+        @Override
+        public void released(DeviceId deviceId) {
+            sidIndex.remove(deviceId);
+            mySidRules.remove(deviceId);
+            policyIndex.remove(deviceId);
+            configuredPolicies.remove(deviceId);
+        }
+    }
 
     //--------------------------------------------------------------------------
     // UTILITY METHODS
     //--------------------------------------------------------------------------
 
+    /**
+     * Removes from the given device, and from its desired state, the My SID
+     * table rules previously written and not among the given ones.
+     *
+     * @param deviceId device ID
+     * @param tableId  My SID table ID
+     * @param rules    My SID table rules to keep
+     */
+    private void removeStaleMySidRules(DeviceId deviceId, PiTableId tableId,
+                                       List<FlowRule> rules) {
+        Collection<FlowRule> previousRules = mySidRules.get(deviceId);
+        if (previousRules == null) {
+            previousRules = desiredStateStore.get(deviceId).flowRules().stream()
+                    .filter(rule -> rule.table().equals(tableId))
+                    .collect(Collectors.toList());
+        }
+        final Set<FlowId> ruleIds = rules.stream()
+                .map(FlowRule::id)
+                .collect(Collectors.toSet());
+        final List<FlowRule> staleRules = previousRules.stream()
+                .filter(rule -> !ruleIds.contains(rule.id()))
+                .collect(Collectors.toList());
+        if (staleRules.isEmpty()) {
+            return;
+        }
+        log.info("Removing {} stale My SID rules from {}...",
+                 staleRules.size(), deviceId);
+        flowRuleService.removeFlowRules(staleRules.toArray(new FlowRule[0]));
+        desiredStateStore.forget(staleRules);
+    }
+
+    /**
+     * Rebuilds the policy index of the given device from the transit rules
+     * in its desired state, as recorded by the previous master, such that
+     * policies applied there can be listed, updated and removed here.
+     * <p>
+     * The segments of rebuilt policies are the ones inserted by the rules,
+     * i.e. compressed if SID compression was enabled on the previous master.
+     *
+     * @param deviceId device ID
+     */
+    private void rebuildPolicyIndex(DeviceId deviceId) {
+        final Map<Ip6Prefix, InstalledPolicy> installed = Maps.newConcurrentMap();
+        for (FlowRule rule : desiredStateStore.get(deviceId).flowRules()) {
+            final Srv6Policy policy = decodeTransitRule(rule);
+            if (policy != null) {
+                installed.put(policy.prefix(), new InstalledPolicy(policy, rule));
+            }
+        }
+        if (installed.isEmpty()) {
+            policyIndex.remove(deviceId);
+        } else {
+            policyIndex.put(deviceId, installed);
+        }
+        log.info("Rebuilt SRv6 policy index of {}: {} policies",
+                 deviceId, installed.size());
+    }
+
+    /**
+     * Returns the SRv6 policy implemented by the given flow rule, if it is a
+     * transit rule created by {@link #createTransitRule(Srv6Policy, List)}.
+     *
+     * @param rule flow rule
+     * @return SRv6 policy, or null if not a transit rule
+     */
+    private Srv6Policy decodeTransitRule(FlowRule rule) {
+        final PiAction action = rule.treatment().allInstructions().stream()
+                .filter(PiInstruction.class::isInstance)
+                .map(i -> ((PiInstruction) i).action())
+                .filter(PiAction.class::isInstance)
+                .map(PiAction.class::cast)
+                .findFirst()
+                .orElse(null);
+        final PiCriterion criterion = (PiCriterion) rule.selector()
+                .getCriterion(Criterion.Type.PROTOCOL_INDEPENDENT);
+        if (action == null || criterion == null ||
+                !action.id().id().startsWith(TRANSIT_ACTION_PREFIX)) {
+            return null;
+        }
+        final PiLpmFieldMatch dstMatch = criterion.fieldMatches().stream()
+                .filter(PiLpmFieldMatch.class::isInstance)
+                .map(PiLpmFieldMatch.class::cast)
+                .findFirst()
+                .orElse(null);
+        if (dstMatch == null || action.parameters().isEmpty()) {
+            return null;
+        }
+        // Parameters are named s1, s2, ... in segment list order.
+        final List<Ip6Address> segments = action.parameters().stream()
+                .sorted(Comparator.comparingInt(p -> Integer.parseInt(
+                        p.id().id().substring(1))))
+                .map(p -> Ip6Address.valueOf(p.value().asArray()))
+                .collect(Collectors.toList());
+        return new Srv6Policy(rule.deviceId(), Ip6Prefix.valueOf(
+                dstMatch.value().asArray(), dstMatch.prefixLength()), segments);
+    }
+
     /**
      * Sets up SRv6 My SID table on all devices known by ONOS and for which this
      * ONOS node instance is currently master.
@@ -292,9 +1246,81 @@ public class Srv6Component {
                 .forEach(deviceId -> {
                     log.info("*** SRV6 - Starting initial set up for {}...", deviceId);
                     this.setUpMySidTable(deviceId);
+                    this.applyPolicyConfig(deviceId);
                 });
     }
 
+    /**
+     * Update of the SRv6 policies of a device: the number of policies changed,
+     * known when the update is issued, and a future completed with the same
+     * number when the device acknowledged all flow rule operations.
+     */
+    private static final class PolicyUpdate {
+        private static final PolicyUpdate NONE =
+                new PolicyUpdate(0, CompletableFuture.completedFuture(0));
+
+        private final int count;
+        private final CompletableFuture<Integer> future;
+
+        private PolicyUpdate(int count, CompletableFuture<Integer> future) {
+            this.count = count;
+            this.future = future;
+        }
+    }
+
+    /**
+     * SRv6 policy installed on a device, with the corresponding flow rule.
+     */
+    private static final class InstalledPolicy {
+        private final Srv6Policy policy;
+        private final FlowRule rule;
+
+        private InstalledPolicy(Srv6Policy policy, FlowRule rule) {
+            this.policy = policy;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * Counter sample of an SRv6 table entry, with the rates computed from the
+     * previous sample of the same entry.
+     */
+    private static final class CounterSample {
+        private final Srv6TrafficStats stats;
+        // Time when the counters were last updated in the store.
+        private final long lastSeen;
+
+        private CounterSample(Srv6TrafficStats stats, long lastSeen) {
+            this.stats = stats;
+            this.lastSeen = lastSeen;
+        }
+
+        private static CounterSample next(CounterSample previous,
+                                          Srv6TrafficStats.Type type,
+                                          Ip6Prefix prefix, FlowEntry entry) {
+            double packetRate = 0;
+            double byteRate = 0;
+            if (previous != null) {
+                final long elapsedMillis = entry.lastSeen() - previous.lastSeen;
+                if (elapsedMillis <= 0) {
+                    // Counters not refreshed since the previous sample.
+                    packetRate = previous.stats.packetRate();
+                    byteRate = previous.stats.byteRate();
+                } else if (entry.packets() >= previous.stats.packets()) {
+                    // Otherwise the entry was re-installed and the counters
+                    // reset, wait for the next sample.
+                    packetRate = (entry.packets() - previous.stats.packets())
+                            * 1000.0 / elapsedMillis;
+                    byteRate = (entry.bytes() - previous.stats.bytes())
+                            * 1000.0 / elapsedMillis;
+                }
+            }
+            return new CounterSample(new Srv6TrafficStats(
+                    type, entry.deviceId(), prefix, entry.packets(),
+                    entry.bytes(), packetRate, byteRate), entry.lastSeen());
+        }
+    }
+
     /**
      * Returns the Srv6 config for the given device.
      *